@@ -0,0 +1,61 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Objects;
+
+/**
+ * the application started for benchmarks, with an embedded server on a random port and quiet logging
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * @param properties {@link String[]} additional properties as key=value
+     * @return {@link ConfigurableApplicationContext} started application
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(ApiDemoApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN", "spring.main.banner-mode=off")
+                .properties(properties)
+                .run();
+    }
+
+    /**
+     * insert employees with ids from 1 to rows by one statement, bypassing the service,
+     * then clear caches, including the second-level cache, so that they do not miss the rows
+     * the pool never auto-commits, so the insert is committed by a transaction of its own
+     *
+     * @param context {@link ConfigurableApplicationContext} started application
+     * @param rows {@link Integer} number of employees
+     */
+    static void seed(ConfigurableApplicationContext context, int rows) {
+        final JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).execute(status -> {
+            jdbcTemplate.update("insert into EMPLOYEE (ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION)" +
+                    " select X, 'name ' || X, 1000 + mod(X, 1000), 'department ' || mod(X, 10), 0" +
+                    " from system_range(1, ?)", rows);
+            jdbcTemplate.execute("alter sequence EMPLOYEE_SEQ restart with " + (rows + 1));
+            return null;
+        });
+        final Long seeded = jdbcTemplate.queryForObject("select count(*) from EMPLOYEE", Long.class);
+        if (seeded == null || seeded != rows) {
+            throw new IllegalStateException("seeded " + seeded + " employees instead of " + rows);
+        }
+
+        final CacheManager cacheManager = context.getBean(CacheManager.class);
+        Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+        Objects.requireNonNull(cacheManager.getCache(EmployeeIdIndex.CACHE_NAME)).clear();
+        context.getBean(EntityManagerFactory.class).getCache().evictAll();
+    }
+}
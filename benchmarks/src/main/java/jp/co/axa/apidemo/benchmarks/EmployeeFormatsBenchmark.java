@@ -0,0 +1,81 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import com.fasterxml.jackson.databind.JavaType;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import jp.co.axa.apidemo.format.EmployeeFormats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encoding and decoding of employee lists in every format negotiable by Accept, see {@link EmployeeFormat},
+ * with a JSON object mapper configured the way spring boot does
+ *
+ * bytes on the wire of each format are checked by EmployeeFormatsBenchmarkTest of the application,
+ * CPU time is measured here
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeFormatsBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR", "PROTOBUF"})
+    private EmployeeFormat format;
+
+    @Param({"10000"})
+    private int size;
+
+    private EmployeeFormats formats;
+    private JavaType type;
+    private List<Employee> employees;
+    private byte[] body;
+
+    @Setup
+    public void setup() throws IOException {
+        formats = new EmployeeFormats(Jackson2ObjectMapperBuilder.json().build(), Jackson2ObjectMapperBuilder.json());
+        type = formats.mapper(EmployeeFormat.JSON).getTypeFactory().constructCollectionType(List.class, Employee.class);
+        employees = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Employee employee = new Employee();
+            employee.setId((long) i + 1);
+            employee.setName("name " + i);
+            employee.setSalary(1000 + i);
+            employee.setDepartment("department " + i % 10);
+            employee.setVersion(0L);
+            employees.add(employee);
+        }
+        body = formats.write(employees, format);
+    }
+
+    @Benchmark
+    public byte[] writeList() {
+        return formats.write(employees, format);
+    }
+
+    @Benchmark
+    public Object readList() throws IOException {
+        if (format == EmployeeFormat.PROTOBUF) {
+            return formats.readProtobuf(type, new ByteArrayInputStream(body));
+        }
+        return formats.mapper(format).readValue(body, type);
+    }
+}
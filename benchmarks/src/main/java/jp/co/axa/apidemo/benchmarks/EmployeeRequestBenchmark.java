@@ -0,0 +1,101 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.json.JsonParserFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * the full request path through MockMvc: security filters with token verification,
+ * dispatching, the service with its cache and JSON serialization, without network and servlet container
+ * employees are cached up front, so single reads measure the steady state of cache hits
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class EmployeeRequestBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        context = BenchmarkApplication.start();
+        BenchmarkApplication.seed(context, ROWS);
+        final EmployeeService employeeService = context.getBean(EmployeeService.class);
+        for (long i = 1; i <= ROWS; i++) {
+            employeeService.getEmployee(i);
+        }
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .addFilters(context.getBean("springSecurityFilterChain", FilterChainProxy.class))
+                .build();
+        authorization = "bearer " + accessToken(context.getEnvironment());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult getEmployee() throws Exception {
+        final long id = ThreadLocalRandom.current().nextLong(1, ROWS + 1);
+        return mockMvc.perform(get("/api/v1/employees/" + id).header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getEmployees_page() throws Exception {
+        final long after = ThreadLocalRandom.current().nextLong(0, ROWS - 100);
+        return mockMvc.perform(get("/api/v1/employees?limit=100&after=" + after)
+                .header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn();
+    }
+
+    private String accessToken(Environment environment) throws Exception {
+        final String body = mockMvc.perform(post("/oauth/token")
+                .header(HttpHeaders.AUTHORIZATION, basic(environment.getProperty("customized.credential.clientId"),
+                        environment.getProperty("customized.credential.clientSecret")))
+                .param("grant_type", "password")
+                .param("username", environment.getProperty("customized.credential.username"))
+                .param("password", environment.getProperty("customized.credential.password")))
+                .andReturn().getResponse().getContentAsString();
+        return (String) JsonParserFactory.getJsonParser().parseMap(body).get("access_token");
+    }
+
+    private String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+}
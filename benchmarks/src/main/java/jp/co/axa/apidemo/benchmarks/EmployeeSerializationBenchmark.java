@@ -0,0 +1,61 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jp.co.axa.apidemo.entities.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of employee lists, with an object mapper configured the way spring boot does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeSerializationBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    private ObjectWriter writer;
+    private List<Employee> employees;
+
+    @Setup
+    public void setup() {
+        final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Employee.class));
+        employees = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Employee employee = new Employee();
+            employee.setId((long) i + 1);
+            employee.setName("name " + i);
+            employee.setSalary(1000 + i);
+            employee.setDepartment("department " + i % 10);
+            employee.setVersion(0L);
+            employees.add(employee);
+        }
+    }
+
+    @Benchmark
+    public byte[] writeList() throws JsonProcessingException {
+        return writer.writeValueAsBytes(employees);
+    }
+}
@@ -0,0 +1,90 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmployeeService.getEmployee through the cache proxy, on cache hit and on cache miss
+ * a miss includes the SELECT by primary key and putting the result into cache,
+ * the hibernate second-level cache is evicted as well, otherwise it would answer the miss without SQL
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class EmployeeServiceBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private EmployeeService employeeService;
+    private Cache cache;
+    private org.hibernate.Cache secondLevelCache;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start();
+        BenchmarkApplication.seed(context, ROWS);
+        employeeService = context.getBean(EmployeeService.class);
+        cache = Objects.requireNonNull(context.getBean(CacheManager.class).getCache("employees"));
+        secondLevelCache = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCache();
+        for (long i = 1; i <= ROWS; i++) {
+            employeeService.getEmployee(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Employee getEmployee_hit() {
+        // picking the id costs a few nanoseconds, much less than per-invocation setup would
+        return employeeService.getEmployee(ThreadLocalRandom.current().nextLong(1, ROWS + 1));
+    }
+
+    @Benchmark
+    public Employee getEmployee_miss(MissState miss) {
+        return employeeService.getEmployee(miss.id);
+    }
+
+    /**
+     * evicts the id from both caches before every invocation, so that every call loads from DB
+     */
+    @State(Scope.Thread)
+    public static class MissState {
+
+        private long id;
+
+        @Setup(Level.Invocation)
+        public void evict(EmployeeServiceBenchmark benchmark) {
+            id = ThreadLocalRandom.current().nextLong(1, ROWS + 1);
+            benchmark.cache.evict(id);
+            benchmark.secondLevelCache.evictEntityData(Employee.class, id);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmployeeService.retrieveEmployees with the cache configuration of application.properties
+ * beyond the weight bound of employees cache, part of every call is loaded from DB again
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RetrieveEmployeesBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private EmployeeService employeeService;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start();
+        BenchmarkApplication.seed(context, rows);
+        employeeService = context.getBean(EmployeeService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Employee> retrieveEmployees() {
+        return employeeService.retrieveEmployees();
+    }
+}
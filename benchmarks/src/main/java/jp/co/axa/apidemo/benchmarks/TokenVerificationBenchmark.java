@@ -0,0 +1,114 @@
+package jp.co.axa.apidemo.benchmarks;
+
+import jp.co.axa.apidemo.security.CachingTokenStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.security.web.FilterChainProxy;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * verification of access tokens, by token services alone and by the whole security filter chain,
+ * with tokens remembered by {@link CachingTokenStore} and verified by the JWT token store every time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class TokenVerificationBenchmark {
+
+    private static final String PATH = "/api/v1/employees/1";
+
+    private ConfigurableApplicationContext context;
+    private FilterChainProxy filterChain;
+    private CachingTokenStore tokenStore;
+    private DefaultTokenServices cachedTokenServices;
+    private DefaultTokenServices jwtTokenServices;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start();
+        filterChain = context.getBean("springSecurityFilterChain", FilterChainProxy.class);
+        tokenStore = context.getBean(CachingTokenStore.class);
+        final JwtAccessTokenConverter converter = context.getBean(JwtAccessTokenConverter.class);
+        cachedTokenServices = new DefaultTokenServices();
+        cachedTokenServices.setTokenStore(tokenStore);
+        jwtTokenServices = new DefaultTokenServices();
+        jwtTokenServices.setTokenStore(new JwtTokenStore(converter));
+        token = createToken(converter);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public OAuth2Authentication loadAuthentication_cached() {
+        return cachedTokenServices.loadAuthentication(token);
+    }
+
+    @Benchmark
+    public OAuth2Authentication loadAuthentication_jwt() {
+        return jwtTokenServices.loadAuthentication(token);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse filterChain_cached() throws Exception {
+        return filter();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse filterChain_jwt() throws Exception {
+        tokenStore.getVerified().invalidateAll();
+        return filter();
+    }
+
+    private MockHttpServletResponse filter() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", PATH);
+        request.setServletPath(PATH);
+        request.addHeader(HttpHeaders.AUTHORIZATION, "bearer " + token);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        filterChain.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private String createToken(JwtAccessTokenConverter converter) {
+        final DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+        final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "client id", null, true,
+                Collections.singleton("read"), null, null, null, null);
+        final UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken("user", null,
+                AuthorityUtils.commaSeparatedStringToAuthorityList("user"));
+        return converter.enhance(token, new OAuth2Authentication(request, user)).getValue();
+    }
+}
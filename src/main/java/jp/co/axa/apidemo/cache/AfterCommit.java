@@ -0,0 +1,42 @@
+package jp.co.axa.apidemo.cache;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * defers cache maintenance until the surrounding transaction commits,
+ * so that caches never refer to changes which are not visible yet or rolled back
+ *
+ * synchronizations registered while afterCommit callbacks are running would never be called,
+ * so runnables deferred from inside another runnable of this class are run right away
+ */
+public final class AfterCommit {
+
+    private static final ThreadLocal<Boolean> RUNNING = new ThreadLocal<>();
+
+    private AfterCommit() {
+    }
+
+    /**
+     * run after current transaction commits, or right now if there is no transaction
+     *
+     * @param runnable {@link Runnable}
+     */
+    public static void run(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive() || RUNNING.get() != null) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                RUNNING.set(Boolean.TRUE);
+                try {
+                    runnable.run();
+                } finally {
+                    RUNNING.remove();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package jp.co.axa.apidemo.cache;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * transport of encoded {@link InvalidationMessage} between nodes
+ *
+ * a message published by one node is delivered to every subscriber of every node, including the publisher itself,
+ * so receivers have to skip their own messages by origin
+ * delivery is best effort, a lost message is healed by expiry of the entry
+ */
+public interface CacheInvalidationBus extends Closeable {
+
+    /**
+     * @param message {@link byte[]} encoded message
+     */
+    void publish(byte[] message);
+
+    /**
+     * @param listener {@link Consumer<byte[]>} called with every message published on the bus
+     */
+    void subscribe(Consumer<byte[]> listener);
+
+    /**
+     * @return {@link Integer} max bytes of one message, larger batches are published as several messages
+     */
+    default int maxMessageSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,36 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * loader of employees cache, keyed by employee id
+ *
+ * it makes employees cache a loading cache, so that refreshAfterWrite in its spec reloads hot employees
+ * in background before they expire, callers keep getting the old value meanwhile instead of waiting for DB
+ * misses are not loaded by this loader but by the cached method itself, see {@link LoadingCaffeineCache}
+ */
+@Component
+@RequiredArgsConstructor
+public class EmployeeCacheLoader implements NamedCacheLoader {
+
+    private final EmployeeRepository employeeRepository;
+
+    @Override
+    public String getCacheName() {
+        return "employees";
+    }
+
+    /**
+     * @param key {@link Object} employee id
+     * @return {@link Object} employee, or null if it does not exist any more, then the entry would be removed
+     */
+    @Override
+    public Object load(Object key) {
+        if (!(key instanceof Long)) {
+            return null;
+        }
+        return employeeRepository.findById((Long) key).orElse(null);
+    }
+}
@@ -0,0 +1,44 @@
+package jp.co.axa.apidemo.cache;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * table level change counter of employees, the version of any collection of employees
+ *
+ * it's incremented after every committed write on this node and every invalidation of employees from other nodes,
+ * the epoch differs on every start, so versions of a restarted node never match ones handed out before
+ * versions of different nodes differ as well, which costs a full response when the balancer switches nodes
+ */
+@Component
+public class EmployeeChangeCounter {
+
+    private static final String CACHE_NAME = "employees";
+
+    private final String epoch = Long.toHexString(UUID.randomUUID().getMostSignificantBits());
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * @return {@link String} current version of employees, usable as an ETag
+     */
+    public String current() {
+        return epoch + "-" + counter.get();
+    }
+
+    /**
+     * increment the counter after current transaction commits
+     */
+    public void increment() {
+        AfterCommit.run(counter::incrementAndGet);
+    }
+
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.touches(CACHE_NAME) || event.touches(EmployeeIdIndex.CACHE_NAME)) {
+            counter.incrementAndGet();
+        }
+    }
+}
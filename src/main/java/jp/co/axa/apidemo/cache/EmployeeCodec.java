@@ -0,0 +1,112 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * compact binary form of {@link Employee}
+ *
+ * layout: flags(1) id(8) [salary(4)] [name length(4) name utf-8] [department length(4) department utf-8] [version(8)]
+ * each bit of flags tells whether the optional field next to it is present
+ * values of layout 1 had no version, they are still decoded, with version null
+ */
+public class EmployeeCodec implements ValueCodec {
+
+    /**
+     * current layout, 2 since version was added
+     */
+    public static final int LAYOUT = 2;
+
+    private static final int HAS_SALARY = 1;
+    private static final int HAS_NAME = 1 << 1;
+    private static final int HAS_DEPARTMENT = 1 << 2;
+    private static final int HAS_VERSION = 1 << 3;
+
+    @Override
+    public int layout() {
+        return LAYOUT;
+    }
+
+    @Override
+    public boolean supports(Object value) {
+        return value instanceof Employee && ((Employee) value).getId() != null;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        final Employee employee = (Employee) value;
+        final byte[] name = bytes(employee.getName());
+        final byte[] department = bytes(employee.getDepartment());
+
+        int flags = 0;
+        int length = 1 + Long.BYTES;
+        if (employee.getSalary() != null) {
+            flags |= HAS_SALARY;
+            length += Integer.BYTES;
+        }
+        if (name != null) {
+            flags |= HAS_NAME;
+            length += Integer.BYTES + name.length;
+        }
+        if (department != null) {
+            flags |= HAS_DEPARTMENT;
+            length += Integer.BYTES + department.length;
+        }
+        if (employee.getVersion() != null) {
+            flags |= HAS_VERSION;
+            length += Long.BYTES;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put((byte) flags).putLong(employee.getId());
+        if (employee.getSalary() != null) {
+            buffer.putInt(employee.getSalary());
+        }
+        put(buffer, name);
+        put(buffer, department);
+        if (employee.getVersion() != null) {
+            buffer.putLong(employee.getVersion());
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final int flags = buffer.get();
+
+        final Employee employee = new Employee();
+        employee.setId(buffer.getLong());
+        if ((flags & HAS_SALARY) != 0) {
+            employee.setSalary(buffer.getInt());
+        }
+        if ((flags & HAS_NAME) != 0) {
+            employee.setName(string(buffer));
+        }
+        if ((flags & HAS_DEPARTMENT) != 0) {
+            employee.setDepartment(string(buffer));
+        }
+        if ((flags & HAS_VERSION) != 0) {
+            employee.setVersion(buffer.getLong());
+        }
+        return employee;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void put(ByteBuffer buffer, byte[] value) {
+        if (value != null) {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String string(ByteBuffer buffer) {
+        final byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
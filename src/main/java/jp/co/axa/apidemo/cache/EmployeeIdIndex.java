@@ -0,0 +1,91 @@
+package jp.co.axa.apidemo.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ordered index of all employee ids, cached as one entry of {@value CACHE_NAME} cache
+ *
+ * the index is loaded once by an id-only scan and then maintained incrementally by write paths,
+ * so a single write does not force the next read to scan the whole table again
+ * employees themselves are cached one by one in employees cache and assembled by the index
+ *
+ * modifications are applied after the surrounding transaction commits,
+ * so that the index never refers to a row which is not visible yet
+ */
+@Component
+@RequiredArgsConstructor
+public class EmployeeIdIndex {
+
+    public static final String CACHE_NAME = "employeeIds";
+
+    private static final String KEY = "all";
+
+    private final CacheManager cacheManager;
+
+    /**
+     * retrieve the index, load it by loader if it's not cached yet
+     * concurrent callers would wait for one load instead of loading by themselves
+     *
+     * @param loader {@link Supplier<Collection<Long>>} to load all ids from DB
+     * @return {@link NavigableSet<Long>} ids in ascending order, read only
+     */
+    public NavigableSet<Long> getOrLoad(Supplier<Collection<Long>> loader) {
+        final NavigableSet<Long> ids = cache().get(KEY, () -> new ConcurrentSkipListSet<>(loader.get()));
+        return Collections.unmodifiableNavigableSet(Objects.requireNonNull(ids));
+    }
+
+    /**
+     * add ids to the index after current transaction commits
+     *
+     * @param ids {@link Collection<Long>} persisted ids
+     */
+    public void add(Collection<Long> ids) {
+        AfterCommit.run(() -> modify(index -> index.addAll(ids)));
+    }
+
+    /**
+     * remove id from the index after current transaction commits
+     *
+     * @param id {@link Long} deleted id
+     */
+    public void remove(Long id) {
+        AfterCommit.run(() -> modify(index -> index.remove(id)));
+    }
+
+    /**
+     * drop the whole index, it would be loaded again on next read
+     */
+    public void invalidate() {
+        cache().evict(KEY);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void modify(Consumer<NavigableSet<Long>> modification) {
+        final Cache.ValueWrapper wrapper = cache().get(KEY);
+        if (wrapper != null && wrapper.get() != null) {
+            final NavigableSet<Long> index = (NavigableSet<Long>) wrapper.get();
+            modification.accept(index);
+            // put it back, so that other nodes drop their index through cache invalidation
+            cache().put(KEY, index);
+        } else {
+            // the index may be loading right now from a snapshot taken before this write,
+            // evicting would wait for that load and drop it, so the next read loads a fresh one
+            invalidate();
+        }
+    }
+
+    private Cache cache() {
+        return Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+    }
+}
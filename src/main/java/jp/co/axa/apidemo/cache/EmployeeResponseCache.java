@@ -0,0 +1,132 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import jp.co.axa.apidemo.format.EmployeeFormats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * encoded bodies of employee responses, so that a read served from cache costs neither serialization nor compression
+ *
+ * an employee is cached by format and id in {@value CACHE_NAME}, a page by format, cursor and limit
+ * in {@value PAGES_CACHE_NAME}, writes evict the ids they touch in every format and all pages after commit
+ * entries are only served for the ETag they were encoded for, so a body encoded by a read racing with a write
+ * is never served after that write, even if it's cached after the eviction
+ *
+ * bodies are cached without telling other nodes, they are no change, only evictions by writes are published
+ *
+ * bodies of at least gzip min bytes are compressed once when encoded, and served as they are to clients accepting gzip
+ */
+@Component
+@RequiredArgsConstructor
+public class EmployeeResponseCache {
+
+    public static final String CACHE_NAME = "employeeResponses";
+    public static final String PAGES_CACHE_NAME = "employeePageResponses";
+
+    private final CacheManager cacheManager;
+    private final EmployeeFormats employeeFormats;
+
+    @Value("${customized.response.gzipMinBytes}")
+    private Integer gzipMinBytes;
+
+    /**
+     * @param employee {@link Employee} current state of employee
+     * @param format {@link EmployeeFormat}
+     * @return {@link EncodedResponse} cached for the version of employee, or encoded and cached now
+     */
+    public EncodedResponse employee(Employee employee, EmployeeFormat format) {
+        final String eTag = String.valueOf(employee.getVersion());
+        final String key = key(format, employee.getId());
+        final EncodedResponse cached = get(cache(CACHE_NAME), key, eTag);
+        if (cached != null) {
+            return cached;
+        }
+        final EncodedResponse encoded = encode(employee, eTag, null, format);
+        InvalidatingCache.populate(cache(CACHE_NAME), key, encoded);
+        return encoded;
+    }
+
+    /**
+     * @param after {@link Long} exclusive cursor, null from the beginning
+     * @param limit int page size
+     * @param eTag {@link String} change counter taken before read
+     * @param format {@link EmployeeFormat}
+     * @param read {@link Supplier<List<Employee>>} the page, called only if it's not cached for eTag
+     * @return {@link EncodedResponse} with cursor of the next page if the page is full
+     */
+    public EncodedResponse page(Long after, int limit, String eTag, EmployeeFormat format,
+                                Supplier<List<Employee>> read) {
+        final String key = key(format, after) + ":" + limit;
+        final EncodedResponse cached = get(cache(PAGES_CACHE_NAME), key, eTag);
+        if (cached != null) {
+            return cached;
+        }
+        final List<Employee> employees = read.get();
+        final String nextCursor = employees.size() == limit
+                ? String.valueOf(employees.get(limit - 1).getId())
+                : null;
+        final EncodedResponse encoded = encode(employees, eTag, nextCursor, format);
+        InvalidatingCache.populate(cache(PAGES_CACHE_NAME), key, encoded);
+        return encoded;
+    }
+
+    /**
+     * evict employees of ids and all pages after current transaction commits
+     *
+     * @param ids {@link Collection<Long>} written ids
+     */
+    public void evict(Collection<Long> ids) {
+        AfterCommit.run(() -> {
+            final Cache cache = cache(CACHE_NAME);
+            for (Long id : ids) {
+                for (EmployeeFormat format : EmployeeFormat.values()) {
+                    cache.evict(key(format, id));
+                }
+            }
+            cache(PAGES_CACHE_NAME).clear();
+        });
+    }
+
+    private EncodedResponse encode(Object value, String eTag, String nextCursor, EmployeeFormat format) {
+        final byte[] body = employeeFormats.write(value, format);
+        return new EncodedResponse(eTag, nextCursor, format, body, body.length < gzipMinBytes ? null : gzip(body));
+    }
+
+    private static String key(EmployeeFormat format, Long id) {
+        // string keys, so that evictions reach other nodes, see InvalidationMessage
+        return format.name() + ":" + id;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static EncodedResponse get(Cache cache, Object key, String eTag) {
+        final EncodedResponse cached = cache.get(key, EncodedResponse.class);
+        return cached != null && cached.getETag().equals(eTag) ? cached : null;
+    }
+
+    private Cache cache(String name) {
+        return Objects.requireNonNull(cacheManager.getCache(name));
+    }
+}
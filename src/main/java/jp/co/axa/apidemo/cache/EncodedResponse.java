@@ -0,0 +1,45 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * response body encoded once and written as it is to every request, see {@link EmployeeResponseCache}
+ */
+@AllArgsConstructor
+@Getter
+public class EncodedResponse {
+
+    /**
+     * ETag the body was encoded for, the version of an employee or the change counter of employees
+     */
+    private final String eTag;
+
+    /**
+     * cursor of the next page, null if none or not a page
+     */
+    private final String nextCursor;
+
+    /**
+     * format body is encoded in
+     */
+    private final EmployeeFormat format;
+
+    /**
+     * encoded body, UTF-8 for JSON
+     */
+    private final byte[] body;
+
+    /**
+     * gzip encoding of body, null if body is too small to pay for compression
+     */
+    private final byte[] gzipBody;
+
+    /**
+     * @return number of bytes held
+     */
+    public int size() {
+        return body.length + (gzipBody == null ? 0 : gzipBody.length);
+    }
+}
@@ -0,0 +1,38 @@
+package jp.co.axa.apidemo.cache;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.util.Collection;
+
+/**
+ * rough estimation of retained heap in bytes for cache entries,
+ * used with maximumWeight so that caches are bounded by memory instead of number of entries
+ */
+public class EntryWeigher implements Weigher<Object, Object> {
+
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int EMPLOYEE_OVERHEAD = 96;
+    private static final int COLLECTION_ELEMENT = 40;
+    private static final int ENCODED_OVERHEAD = 96;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        if (value instanceof Employee) {
+            final Employee employee = (Employee) value;
+            return ENTRY_OVERHEAD + EMPLOYEE_OVERHEAD + length(employee.getName()) + length(employee.getDepartment());
+        }
+        if (value instanceof EncodedResponse) {
+            return ENTRY_OVERHEAD + ENCODED_OVERHEAD + ((EncodedResponse) value).size();
+        }
+        if (value instanceof Collection) {
+            return ENTRY_OVERHEAD + COLLECTION_ELEMENT * ((Collection<?>) value).size();
+        }
+        return ENTRY_OVERHEAD;
+    }
+
+    private static int length(String value) {
+        // compact strings hold latin-1 in one byte per char, others in two
+        return value == null ? 0 : 40 + 2 * value.length();
+    }
+}
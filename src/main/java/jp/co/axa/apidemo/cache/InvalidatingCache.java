@@ -0,0 +1,105 @@
+package jp.co.axa.apidemo.cache;
+
+import lombok.Getter;
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * cache telling other nodes to evict keys written on this node, see {@link InvalidatingCacheManager}
+ *
+ * puts, evictions and clears are published, reads and loads are not
+ * a load is a get with a value loader, or a value read from DB and cached by {@link #populate}, which is no change,
+ * so only write paths put
+ * other nodes only evict the key, so they load the new value from DB on their next read
+ */
+public class InvalidatingCache implements Cache {
+
+    @Getter
+    private final Cache delegate;
+    private final InvalidatingCacheManager manager;
+
+    /**
+     * keys published to other nodes
+     */
+    @Getter
+    private final LongAdder sent = new LongAdder();
+    /**
+     * keys evicted by other nodes
+     */
+    @Getter
+    private final LongAdder received = new LongAdder();
+
+    InvalidatingCache(Cache delegate, InvalidatingCacheManager manager) {
+        this.delegate = delegate;
+        this.manager = manager;
+    }
+
+    /**
+     * cache a value read from DB without telling other nodes, on caches of any manager
+     *
+     * @param cache {@link Cache}
+     * @param key {@link Object}
+     * @param value {@link Object} as it is in DB
+     */
+    public static void populate(Cache cache, Object key, Object value) {
+        if (cache instanceof InvalidatingCache) {
+            ((InvalidatingCache) cache).delegate.put(key, value);
+        } else {
+            cache.put(key, value);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return delegate.get(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        manager.invalidate(this, key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        final ValueWrapper existing = delegate.putIfAbsent(key, value);
+        if (existing == null) {
+            manager.invalidate(this, key);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        manager.invalidate(this, key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        manager.invalidateAll(this);
+    }
+}
@@ -0,0 +1,190 @@
+package jp.co.axa.apidemo.cache;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cache manager keeping caches of several nodes consistent through a {@link CacheInvalidationBus}
+ *
+ * writes on caches of this manager are collected into a pending batch and published every flushMillis,
+ * so a burst of writes turns into a few messages, and repeated writes of one key into one eviction
+ * a batch larger than a message of the bus is split into several messages
+ * writes inside a transaction are collected after it commits, otherwise other nodes could reload the old row
+ *
+ * messages from other nodes are applied to caches of the delegate, so they are not published again,
+ * and then announced as {@link RemoteInvalidationEvent}
+ */
+@Slf4j
+public class InvalidatingCacheManager implements CacheManager, DisposableBean, ApplicationEventPublisherAware {
+
+    private final CacheManager delegate;
+    private final CacheInvalidationBus bus;
+    private final int maxBatchKeys;
+    private final ScheduledExecutorService flusher;
+    private final Map<String, InvalidatingCache> caches = new ConcurrentHashMap<>();
+
+    @Getter
+    private final UUID nodeId = UUID.randomUUID();
+
+    private final Object lock = new Object();
+    private Map<String, Set<Object>> pendingKeys = new HashMap<>();
+    private Set<String> pendingClears = new HashSet<>();
+    private int pendingSize;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * @param delegate {@link CacheManager} of local caches
+     * @param bus {@link CacheInvalidationBus} shared with other nodes
+     * @param flushMillis {@link Long} interval to publish pending invalidations
+     * @param maxBatchKeys {@link Integer} pending keys to publish without waiting for the interval
+     */
+    public InvalidatingCacheManager(CacheManager delegate, CacheInvalidationBus bus, long flushMillis, int maxBatchKeys) {
+        this.delegate = delegate;
+        this.bus = bus;
+        this.maxBatchKeys = maxBatchKeys;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "cache-invalidation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        bus.subscribe(this::apply);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        final Cache cache = delegate.getCache(name);
+        if (cache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> new InvalidatingCache(cache, this));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * publish pending invalidations right now
+     */
+    public void flush() {
+        final Map<String, Set<Object>> keys;
+        final Set<String> clears;
+        synchronized (lock) {
+            if (pendingSize == 0 && pendingClears.isEmpty()) {
+                return;
+            }
+            keys = pendingKeys;
+            clears = pendingClears;
+            pendingKeys = new HashMap<>();
+            pendingClears = new HashSet<>();
+            pendingSize = 0;
+        }
+        publish(new InvalidationMessage(nodeId, keys, clears));
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        flusher.shutdown();
+        flush();
+        bus.close();
+        if (delegate instanceof DisposableBean) {
+            ((DisposableBean) delegate).destroy();
+        }
+    }
+
+    void invalidate(InvalidatingCache cache, Object key) {
+        if (!InvalidationMessage.supports(key)) {
+            // other nodes could not find the key, drop the whole cache there instead
+            invalidateAll(cache);
+            return;
+        }
+        AfterCommit.run(() -> {
+            final boolean full;
+            synchronized (lock) {
+                if (pendingClears.contains(cache.getName())
+                        || !pendingKeys.computeIfAbsent(cache.getName(), name -> new HashSet<>()).add(key)) {
+                    return;
+                }
+                full = ++pendingSize >= maxBatchKeys;
+            }
+            cache.getSent().increment();
+            if (full) {
+                flusher.execute(this::flush);
+            }
+        });
+    }
+
+    void invalidateAll(InvalidatingCache cache) {
+        AfterCommit.run(() -> {
+            synchronized (lock) {
+                final Set<Object> keys = pendingKeys.remove(cache.getName());
+                pendingSize -= keys == null ? 0 : keys.size();
+                pendingClears.add(cache.getName());
+            }
+            cache.getSent().increment();
+        });
+    }
+
+    private void publish(InvalidationMessage message) {
+        final byte[] bytes = message.encode();
+        if (bytes.length > bus.maxMessageSize() && message.keyCount() > 1) {
+            // too large for one message of the bus, e.g. a datagram, halves are published on their own
+            message.split().forEach(this::publish);
+            return;
+        }
+        try {
+            bus.publish(bytes);
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule, entries of other nodes would still expire
+            log.warn("failed to publish cache invalidation of {}", message.getKeys().keySet(), e);
+        }
+    }
+
+    private void apply(byte[] bytes) {
+        final InvalidationMessage message = InvalidationMessage.decode(bytes);
+        if (nodeId.equals(message.getOrigin())) {
+            return;
+        }
+        message.getCleared().forEach(name -> {
+            final InvalidatingCache cache = caches.get(name);
+            if (cache != null) {
+                cache.getDelegate().clear();
+                cache.getReceived().increment();
+            }
+        });
+        message.getKeys().forEach((name, keys) -> {
+            final InvalidatingCache cache = caches.get(name);
+            if (cache != null) {
+                keys.forEach(cache.getDelegate()::evict);
+                cache.getReceived().add(keys.size());
+            }
+        });
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new RemoteInvalidationEvent(message));
+        }
+    }
+}
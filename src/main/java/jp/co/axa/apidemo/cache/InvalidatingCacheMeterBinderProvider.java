@@ -0,0 +1,48 @@
+package jp.co.axa.apidemo.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.actuate.metrics.cache.CacheMetricsRegistrar;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * metrics of {@link InvalidatingCache}, metrics of the decorated cache by other providers
+ * plus cache.invalidations sent to and received from other nodes
+ */
+public class InvalidatingCacheMeterBinderProvider implements CacheMeterBinderProvider<InvalidatingCache> {
+
+    private final ObjectProvider<CacheMeterBinderProvider<?>> providers;
+
+    /**
+     * @param providers {@link ObjectProvider} of all providers, to bind metrics of decorated caches
+     */
+    public InvalidatingCacheMeterBinderProvider(ObjectProvider<CacheMeterBinderProvider<?>> providers) {
+        this.providers = providers;
+    }
+
+    @Override
+    public MeterBinder getMeterBinder(InvalidatingCache cache, Iterable<Tag> tags) {
+        final Tags cacheTags = Tags.concat(tags, "cache", cache.getName());
+        return registry -> {
+            final List<CacheMeterBinderProvider<?>> others = providers.orderedStream()
+                    .filter(provider -> provider != this)
+                    .collect(Collectors.toList());
+            new CacheMetricsRegistrar(registry, others)
+                    .bindCacheToRegistry(cache.getDelegate(), Tags.of(tags).stream().toArray(Tag[]::new));
+            FunctionCounter.builder("cache.invalidations", cache, c -> c.getSent().sum())
+                    .tags(cacheTags).tag("direction", "sent")
+                    .description("The number of keys published to other nodes")
+                    .register(registry);
+            FunctionCounter.builder("cache.invalidations", cache, c -> c.getReceived().sum())
+                    .tags(cacheTags).tag("direction", "received")
+                    .description("The number of keys evicted by other nodes")
+                    .register(registry);
+        };
+    }
+}
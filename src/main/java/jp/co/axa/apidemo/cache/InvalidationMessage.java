@@ -0,0 +1,176 @@
+package jp.co.axa.apidemo.cache;
+
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * batch of invalidations published by one node, keys are grouped by cache and caches to clear carry no keys
+ *
+ * binary layout, big endian
+ * int magic, long origin most bits, long origin least bits, int number of caches
+ * then for each cache: utf name, boolean cleared, int number of keys, keys
+ * each key is a tag byte followed by the value, see {@link #supports(Object)} for types of keys
+ */
+@Getter
+public class InvalidationMessage {
+
+    private static final int MAGIC = 0x43494e31;
+
+    private static final byte LONG_KEY = 0;
+    private static final byte INTEGER_KEY = 1;
+    private static final byte STRING_KEY = 2;
+
+    private final UUID origin;
+    private final Map<String, Set<Object>> keys;
+    private final Set<String> cleared;
+
+    /**
+     * @param origin {@link UUID} node publishing the message
+     * @param keys {@link Map<String, Set<Object>>} keys to evict of each cache
+     * @param cleared {@link Set<String>} caches to clear
+     */
+    public InvalidationMessage(UUID origin, Map<String, Set<Object>> keys, Set<String> cleared) {
+        this.origin = origin;
+        this.keys = Collections.unmodifiableMap(keys);
+        this.cleared = Collections.unmodifiableSet(cleared);
+    }
+
+    /**
+     * @param key {@link Object} cache key
+     * @return {@link Boolean} true if the key could be encoded, long, integer and string keys are supported
+     */
+    public static boolean supports(Object key) {
+        return key instanceof Long || key instanceof Integer || key instanceof String;
+    }
+
+    /**
+     * @return {@link Integer} number of keys to evict over all caches
+     */
+    public int keyCount() {
+        return keys.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * @return {@link List<InvalidationMessage>} two messages of the same origin, each with half of the keys,
+     * caches to clear go to the first one
+     */
+    public List<InvalidationMessage> split() {
+        final int half = keyCount() / 2;
+        final Map<String, Set<Object>> first = new HashMap<>();
+        final Map<String, Set<Object>> second = new HashMap<>();
+        int count = 0;
+        for (Map.Entry<String, Set<Object>> entry : keys.entrySet()) {
+            for (Object key : entry.getValue()) {
+                (count++ < half ? first : second).computeIfAbsent(entry.getKey(), name -> new HashSet<>()).add(key);
+            }
+        }
+        return Arrays.asList(new InvalidationMessage(origin, first, cleared),
+                new InvalidationMessage(origin, second, Collections.emptySet()));
+    }
+
+    /**
+     * @return {@link byte[]} encoded message
+     */
+    public byte[] encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeLong(origin.getMostSignificantBits());
+            out.writeLong(origin.getLeastSignificantBits());
+            final Set<String> names = new HashSet<>(keys.keySet());
+            names.addAll(cleared);
+            out.writeInt(names.size());
+            for (String name : names) {
+                final boolean clear = cleared.contains(name);
+                final Set<Object> cacheKeys = clear ? Collections.emptySet() : keys.get(name);
+                out.writeUTF(name);
+                out.writeBoolean(clear);
+                out.writeInt(cacheKeys.size());
+                for (Object key : cacheKeys) {
+                    writeKey(out, key);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param message {@link byte[]} encoded message
+     * @return {@link InvalidationMessage}
+     * @throws IllegalArgumentException if the bytes are not a message
+     */
+    public static InvalidationMessage decode(byte[] message) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("not an invalidation message");
+            }
+            final UUID origin = new UUID(in.readLong(), in.readLong());
+            final Map<String, Set<Object>> keys = new HashMap<>();
+            final Set<String> cleared = new HashSet<>();
+            final int caches = in.readInt();
+            for (int i = 0; i < caches; i++) {
+                final String name = in.readUTF();
+                if (in.readBoolean()) {
+                    cleared.add(name);
+                }
+                final int size = in.readInt();
+                if (size == 0) {
+                    continue;
+                }
+                final Set<Object> cacheKeys = new HashSet<>(size * 2);
+                for (int j = 0; j < size; j++) {
+                    cacheKeys.add(readKey(in));
+                }
+                keys.put(name, cacheKeys);
+            }
+            return new InvalidationMessage(origin, keys, cleared);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("broken invalidation message", e);
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, Object key) throws IOException {
+        if (key instanceof Long) {
+            out.writeByte(LONG_KEY);
+            out.writeLong((Long) key);
+        } else if (key instanceof Integer) {
+            out.writeByte(INTEGER_KEY);
+            out.writeInt((Integer) key);
+        } else if (key instanceof String) {
+            out.writeByte(STRING_KEY);
+            out.writeUTF((String) key);
+        } else {
+            throw new IllegalArgumentException("unsupported key type: " + key.getClass().getName());
+        }
+    }
+
+    private static Object readKey(DataInputStream in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case LONG_KEY:
+                return in.readLong();
+            case INTEGER_KEY:
+                return in.readInt();
+            case STRING_KEY:
+                return in.readUTF();
+            default:
+                throw new IOException("unknown key tag: " + tag);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package jp.co.axa.apidemo.cache;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+/**
+ * spring cache on top of a caffeine loading cache, whose loader is only used for refreshing
+ *
+ * plain lookups never load, so callers like assembling a list could find out missing keys and load them in bulk,
+ * while {@link org.springframework.cache.annotation.Cacheable} with sync loads a missing key exactly once
+ * however many threads are waiting for it, and refreshAfterWrite reloads present keys in background
+ */
+public class LoadingCaffeineCache extends CaffeineCache {
+
+    public LoadingCaffeineCache(String name, LoadingCache<Object, Object> cache, boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return toValueWrapper(lookup(key));
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        return getNativeCache().getIfPresent(key);
+    }
+}
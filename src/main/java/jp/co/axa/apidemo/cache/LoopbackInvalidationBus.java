@@ -0,0 +1,24 @@
+package jp.co.axa.apidemo.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * in-JVM bus, messages are delivered synchronously on the publishing thread
+ * nodes sharing one instance behave like a cluster, which is enough for tests
+ */
+public class LoopbackInvalidationBus implements CacheInvalidationBus {
+
+    private final List<Consumer<byte[]>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(byte[] message) {
+        listeners.forEach(listener -> listener.accept(message));
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> listener) {
+        listeners.add(listener);
+    }
+}
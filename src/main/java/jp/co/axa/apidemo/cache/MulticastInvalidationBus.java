@@ -0,0 +1,112 @@
+package jp.co.axa.apidemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * bus over UDP multicast, one datagram for each message
+ *
+ * nodes joining the same group and port see each other without any registry,
+ * which fits instances started behind a load balancer in one network
+ */
+@Slf4j
+public class MulticastInvalidationBus implements CacheInvalidationBus {
+
+    /**
+     * max payload of an UDP datagram over IPv4
+     */
+    public static final int MAX_MESSAGE_SIZE = 65507;
+
+    private final InetAddress group;
+    private final int port;
+    private final MulticastSocket socket;
+    private final List<Consumer<byte[]>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean closed;
+
+    /**
+     * @param group {@link String} multicast address
+     * @param port {@link Integer}
+     * @param timeToLive {@link Integer} hops the datagrams could go through
+     * @throws IOException on failure of joining the group
+     */
+    public MulticastInvalidationBus(String group, int port, int timeToLive) throws IOException {
+        this.group = InetAddress.getByName(group);
+        this.port = port;
+        this.socket = new MulticastSocket(port);
+        this.socket.setTimeToLive(timeToLive);
+        this.socket.joinGroup(this.group);
+        final Thread receiver = new Thread(this::receive, "cache-invalidation-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @Override
+    public void publish(byte[] message) {
+        if (message.length > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("message of " + message.length + " bytes does not fit in a datagram");
+        }
+        try {
+            socket.send(new DatagramPacket(message, message.length, group, port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public int maxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            socket.leaveGroup(group);
+        } catch (IOException e) {
+            log.warn("failed to leave multicast group {}", group, e);
+        }
+        socket.close();
+    }
+
+    private void receive() {
+        final byte[] buffer = new byte[MAX_MESSAGE_SIZE];
+        while (!closed) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("failed to receive cache invalidation", e);
+                }
+                continue;
+            }
+            final byte[] message = Arrays.copyOfRange(packet.getData(), packet.getOffset(),
+                    packet.getOffset() + packet.getLength());
+            for (Consumer<byte[]> listener : listeners) {
+                try {
+                    listener.accept(message);
+                } catch (RuntimeException e) {
+                    log.warn("failed to apply cache invalidation", e);
+                }
+            }
+        }
+    }
+}
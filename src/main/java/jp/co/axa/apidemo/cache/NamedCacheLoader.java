@@ -0,0 +1,15 @@
+package jp.co.axa.apidemo.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+
+/**
+ * loader of one certain cache, register it as a bean to make that cache a loading cache
+ * a loading cache loads missing keys by itself and supports refreshAfterWrite in its spec
+ */
+public interface NamedCacheLoader extends CacheLoader<Object, Object> {
+
+    /**
+     * @return {@link String} name of the cache to load
+     */
+    String getCacheName();
+}
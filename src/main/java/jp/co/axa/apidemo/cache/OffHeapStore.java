@@ -0,0 +1,339 @@
+package jp.co.axa.apidemo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * key-value store of bytes in memory-mapped files, keyed by long
+ *
+ * values are appended as records to data files split into chunks, each chunk is mapped by its own buffer
+ * an open-addressing hash table in the index file maps keys to positions of their latest records
+ * neither keys nor values live in java heap, so the store could hold a large working set without GC pressure,
+ * and since everything is in files, the store is still there after restart
+ *
+ * as a cache, the store simply starts over when data files or the hash table are full instead of compacting,
+ * and records older than ttl are treated as absent
+ *
+ * files are only reused if they were written with the same layout of values, see {@link ValueCodec#layout()}
+ *
+ * layout of index file: header(64) slot(16) * capacity, slot = key(8) reference(8)
+ * reference is position of record + 1, 0 for empty slot, -1 for deleted slot
+ * layout of record: length(4) written at(8) value(length)
+ */
+@Slf4j
+public class OffHeapStore implements Closeable {
+
+    private static final int MAGIC = 0x4f484331;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final long EMPTY = 0L;
+    private static final long DELETED = -1L;
+
+    private static final int MAGIC_AT = 0;
+    private static final int CAPACITY_AT = 4;
+    private static final int CHUNK_SIZE_AT = 8;
+    private static final int MAX_CHUNKS_AT = 12;
+    private static final int WRITE_POSITION_AT = 16;
+    private static final int SIZE_AT = 24;
+    private static final int DELETED_AT = 28;
+    private static final int LAYOUT_AT = 32;
+
+    private final Path directory;
+    private final int capacity;
+    private final int chunkSize;
+    private final int maxChunks;
+    private final long ttlMillis;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer[] chunks;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long writePosition;
+    private int size;
+    private int deleted;
+
+    /**
+     * open the store in directory, reuse existing files if they were created with the same capacity, chunks and layout
+     *
+     * @param directory {@link Path} directory of files, would be created if absent
+     * @param capacity max number of keys, rounded up to power of two
+     * @param chunkSize bytes of one data file
+     * @param maxChunks max number of data files
+     * @param ttl {@link Duration} time to live of records
+     * @param layout layout of values
+     * @throws IOException if files could not be mapped
+     */
+    public OffHeapStore(Path directory, int capacity, int chunkSize, int maxChunks, Duration ttl, int layout)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+        this.ttlMillis = ttl.toMillis();
+        this.index = map(directory.resolve("index"), HEADER_SIZE + (long) this.capacity * SLOT_SIZE);
+        this.chunks = new MappedByteBuffer[maxChunks];
+
+        if (index.getInt(MAGIC_AT) == MAGIC
+                && index.getInt(CAPACITY_AT) == this.capacity
+                && index.getInt(CHUNK_SIZE_AT) == chunkSize
+                && index.getInt(MAX_CHUNKS_AT) == maxChunks
+                && index.getInt(LAYOUT_AT) == layout) {
+            writePosition = index.getLong(WRITE_POSITION_AT);
+            size = index.getInt(SIZE_AT);
+            deleted = index.getInt(DELETED_AT);
+            for (int i = 0; writePosition > 0 && i <= (writePosition - 1) / chunkSize; i++) {
+                chunk(i);
+            }
+            log.info("reopened off-heap store {} with {} entries", directory, size);
+        } else {
+            index.putInt(MAGIC_AT, MAGIC);
+            index.putInt(CAPACITY_AT, this.capacity);
+            index.putInt(CHUNK_SIZE_AT, chunkSize);
+            index.putInt(MAX_CHUNKS_AT, maxChunks);
+            index.putInt(LAYOUT_AT, layout);
+            reset();
+        }
+    }
+
+    /**
+     * @param key long
+     * @return value of key, or null if absent or expired
+     */
+    public byte[] get(long key) {
+        lock.readLock().lock();
+        try {
+            final int slot = findSlot(key);
+            if (slot < 0) {
+                return null;
+            }
+            final long position = reference(slot) - 1;
+            final MappedByteBuffer chunk = chunks[(int) (position / chunkSize)];
+            final int offset = (int) (position % chunkSize);
+            if (System.currentTimeMillis() - chunk.getLong(offset + Integer.BYTES) > ttlMillis) {
+                return null;
+            }
+
+            final byte[] value = new byte[chunk.getInt(offset)];
+            final ByteBuffer buffer = chunk.duplicate();
+            buffer.position(offset + RECORD_HEADER_SIZE);
+            buffer.get(value);
+            return value;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * store value of key, the value would be ignored if it's larger than one chunk
+     *
+     * @param key long
+     * @param value bytes
+     */
+    public void put(long key, byte[] value) {
+        final int recordSize = RECORD_HEADER_SIZE + value.length;
+        if (recordSize > chunkSize) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if ((size + deleted + 1L) * 4 > capacity * 3L) {
+                log.info("off-heap store {} reached capacity of keys, start over", directory);
+                reset();
+            }
+            final long position = reserve(recordSize);
+            final MappedByteBuffer chunk = chunk((int) (position / chunkSize));
+            final int offset = (int) (position % chunkSize);
+            chunk.putInt(offset, value.length);
+            chunk.putLong(offset + Integer.BYTES, System.currentTimeMillis());
+            final ByteBuffer buffer = chunk.duplicate();
+            buffer.position(offset + RECORD_HEADER_SIZE);
+            buffer.put(value);
+
+            final int slot = slotForInsert(key);
+            final long previous = reference(slot);
+            if (previous == EMPTY || previous == DELETED) {
+                size++;
+                if (previous == DELETED) {
+                    deleted--;
+                }
+            }
+            index.putLong(slotAt(slot), key);
+            index.putLong(slotAt(slot) + Long.BYTES, position + 1);
+            writeHeader();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param key long to remove
+     */
+    public void remove(long key) {
+        lock.writeLock().lock();
+        try {
+            final int slot = findSlot(key);
+            if (slot >= 0) {
+                index.putLong(slotAt(slot) + Long.BYTES, DELETED);
+                size--;
+                deleted++;
+                writeHeader();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * remove all keys
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return {@link Duration} time to live of records
+     */
+    public Duration getTtl() {
+        return Duration.ofMillis(ttlMillis);
+    }
+
+    /**
+     * @return number of keys, including expired ones not removed yet
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * write mapped buffers back to files
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            index.force();
+            for (MappedByteBuffer chunk : chunks) {
+                if (chunk != null) {
+                    chunk.force();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int findSlot(long key) {
+        final int mask = capacity - 1;
+        for (int slot = hash(key) & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            final long reference = reference(slot);
+            if (reference == EMPTY) {
+                return -1;
+            }
+            if (reference != DELETED && index.getLong(slotAt(slot)) == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int slotForInsert(long key) {
+        final int mask = capacity - 1;
+        int firstDeleted = -1;
+        for (int slot = hash(key) & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            final long reference = reference(slot);
+            if (reference == EMPTY) {
+                return firstDeleted >= 0 ? firstDeleted : slot;
+            }
+            if (reference == DELETED) {
+                if (firstDeleted < 0) {
+                    firstDeleted = slot;
+                }
+            } else if (index.getLong(slotAt(slot)) == key) {
+                return slot;
+            }
+        }
+        return firstDeleted;
+    }
+
+    private long reserve(int recordSize) {
+        long position = writePosition;
+        if (position % chunkSize + recordSize > chunkSize) {
+            position = (position / chunkSize + 1) * chunkSize;
+        }
+        if (position / chunkSize >= maxChunks) {
+            log.info("off-heap store {} reached capacity of data, start over", directory);
+            reset();
+            position = 0;
+        }
+        writePosition = position + recordSize;
+        return position;
+    }
+
+    private void reset() {
+        for (int slot = 0; slot < capacity; slot++) {
+            index.putLong(slotAt(slot) + Long.BYTES, EMPTY);
+        }
+        writePosition = 0;
+        size = 0;
+        deleted = 0;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        index.putLong(WRITE_POSITION_AT, writePosition);
+        index.putInt(SIZE_AT, size);
+        index.putInt(DELETED_AT, deleted);
+    }
+
+    private MappedByteBuffer chunk(int number) {
+        if (chunks[number] == null) {
+            try {
+                chunks[number] = map(directory.resolve("data-" + number), chunkSize);
+            } catch (IOException e) {
+                throw new IllegalStateException("failed to map chunk " + number + " of " + directory, e);
+            }
+        }
+        return chunks[number];
+    }
+
+    private long reference(int slot) {
+        return index.getLong(slotAt(slot) + Long.BYTES);
+    }
+
+    private static int slotAt(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int hash(long key) {
+        final long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package jp.co.axa.apidemo.cache;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * published after an {@link InvalidationMessage} of another node is applied to local caches,
+ * for state derived from cached data which has to be invalidated together
+ */
+public class RemoteInvalidationEvent extends ApplicationEvent {
+
+    /**
+     * @param message {@link InvalidationMessage} applied message
+     */
+    public RemoteInvalidationEvent(InvalidationMessage message) {
+        super(message);
+    }
+
+    /**
+     * @return {@link InvalidationMessage} applied message
+     */
+    public InvalidationMessage getMessage() {
+        return (InvalidationMessage) getSource();
+    }
+
+    /**
+     * @param cacheName {@link String}
+     * @return {@link Boolean} true if the message evicts any key of the cache or clears it
+     */
+    public boolean touches(String cacheName) {
+        return getMessage().getCleared().contains(cacheName) || getMessage().getKeys().containsKey(cacheName);
+    }
+}
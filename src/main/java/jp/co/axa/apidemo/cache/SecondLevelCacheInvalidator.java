@@ -0,0 +1,53 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.entities.Employee;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Set;
+
+/**
+ * evicts employees changed by other nodes from the hibernate second-level cache and query cache,
+ * which are local to each node, see {@link jp.co.axa.apidemo.config.SecondLevelCacheConfig}
+ *
+ * it runs before other listeners of {@link RemoteInvalidationEvent}, so that their reloads read the DB
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "customized.cache.secondLevel", name = "enabled", matchIfMissing = true)
+public class SecondLevelCacheInvalidator {
+
+    private static final String CACHE_NAME = "employees";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * @param event {@link RemoteInvalidationEvent}
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (!event.touches(CACHE_NAME) && !event.touches(EmployeeIdIndex.CACHE_NAME)) {
+            return;
+        }
+        final Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        if (event.getMessage().getCleared().contains(CACHE_NAME)) {
+            cache.evictEntityData(Employee.class);
+        } else {
+            final Set<Object> keys = event.getMessage().getKeys().get(CACHE_NAME);
+            if (keys != null) {
+                keys.stream()
+                        .filter(Long.class::isInstance)
+                        .forEach(id -> cache.evictEntityData(Employee.class, (Long) id));
+            }
+        }
+        cache.evictQueryRegions();
+    }
+}
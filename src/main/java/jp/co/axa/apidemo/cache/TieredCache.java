@@ -0,0 +1,150 @@
+package jp.co.axa.apidemo.cache;
+
+import lombok.Getter;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * two-tier cache, an on-heap cache in front of an {@link OffHeapStore}
+ *
+ * reads look into the first tier and then into the second one, values found in the second tier are promoted
+ * writes go to both tiers, so values evicted from the first tier by size are still served from the second one
+ * only values supported by codec with long keys are stored in the second tier, others stay in the first tier
+ */
+public class TieredCache implements Cache {
+
+    private final Cache first;
+    private final OffHeapStore second;
+    private final ValueCodec codec;
+
+    @Getter
+    private final LongAdder secondHits = new LongAdder();
+    @Getter
+    private final LongAdder secondMisses = new LongAdder();
+
+    public TieredCache(Cache first, OffHeapStore second, ValueCodec codec) {
+        this.first = first;
+        this.second = second;
+        this.codec = codec;
+    }
+
+    @Override
+    public String getName() {
+        return first.getName();
+    }
+
+    /**
+     * @return {@link Object} native cache of the first tier
+     */
+    @Override
+    public Object getNativeCache() {
+        return first.getNativeCache();
+    }
+
+    /**
+     * @return {@link Cache} the first tier
+     */
+    public Cache getFirst() {
+        return first;
+    }
+
+    /**
+     * @return {@link OffHeapStore} the second tier
+     */
+    public OffHeapStore getSecond() {
+        return second;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        final ValueWrapper wrapper = first.get(key);
+        if (wrapper != null) {
+            return wrapper;
+        }
+        final Object value = readSecond(key);
+        if (value == null) {
+            return null;
+        }
+        first.put(key, value);
+        return new SimpleValueWrapper(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        final ValueWrapper wrapper = get(key);
+        final Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    /**
+     * missing key is loaded once by the first tier, looking into the second tier before calling value loader
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return first.get(key, () -> {
+            final Object value = readSecond(key);
+            if (value != null) {
+                return (T) value;
+            }
+            final T loaded = valueLoader.call();
+            writeSecond(key, loaded);
+            return loaded;
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        first.put(key, value);
+        writeSecond(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        final ValueWrapper existing = first.putIfAbsent(key, value);
+        if (existing == null) {
+            writeSecond(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        first.evict(key);
+        if (key instanceof Long) {
+            second.remove((Long) key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        first.clear();
+        second.clear();
+    }
+
+    private Object readSecond(Object key) {
+        if (!(key instanceof Long)) {
+            return null;
+        }
+        final byte[] bytes = second.get((Long) key);
+        if (bytes == null) {
+            secondMisses.increment();
+            return null;
+        }
+        secondHits.increment();
+        return codec.decode(bytes);
+    }
+
+    private void writeSecond(Object key, Object value) {
+        if (key instanceof Long && codec.supports(value)) {
+            second.put((Long) key, codec.encode(value));
+        }
+    }
+}
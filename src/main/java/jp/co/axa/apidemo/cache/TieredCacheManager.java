@@ -0,0 +1,52 @@
+package jp.co.axa.apidemo.cache;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * cache manager putting {@link OffHeapStore} behind caches of another cache manager
+ * caches without store are returned as they are
+ */
+public class TieredCacheManager implements CacheManager, DisposableBean {
+
+    private final CacheManager delegate;
+    private final Map<String, OffHeapStore> stores;
+    private final ValueCodec codec;
+    private final Map<String, TieredCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate {@link CacheManager} of the first tier
+     * @param stores {@link Map<String, OffHeapStore>} second tier of each cache name
+     * @param codec {@link ValueCodec} to store values in second tier
+     */
+    public TieredCacheManager(CacheManager delegate, Map<String, OffHeapStore> stores, ValueCodec codec) {
+        this.delegate = delegate;
+        this.stores = stores;
+        this.codec = codec;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        final Cache cache = delegate.getCache(name);
+        final OffHeapStore store = stores.get(name);
+        if (cache == null || store == null) {
+            return cache;
+        }
+        return caches.computeIfAbsent(name, key -> new TieredCache(cache, store, codec));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    @Override
+    public void destroy() {
+        stores.values().forEach(OffHeapStore::close);
+    }
+}
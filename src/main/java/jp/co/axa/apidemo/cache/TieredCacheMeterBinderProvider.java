@@ -0,0 +1,39 @@
+package jp.co.axa.apidemo.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+
+/**
+ * metrics of {@link TieredCache}, cache.* metrics of the first tier plus cache.offheap.* metrics of the second tier
+ */
+public class TieredCacheMeterBinderProvider implements CacheMeterBinderProvider<TieredCache> {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public MeterBinder getMeterBinder(TieredCache cache, Iterable<Tag> tags) {
+        final Tags cacheTags = Tags.concat(tags, "cache", cache.getName());
+        return registry -> {
+            if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache) {
+                new CaffeineCacheMetrics((com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache(),
+                        cache.getName(), tags).bindTo(registry);
+            }
+            Gauge.builder("cache.offheap.size", cache.getSecond(), OffHeapStore::size)
+                    .tags(cacheTags)
+                    .description("The number of entries in the off-heap tier")
+                    .register(registry);
+            FunctionCounter.builder("cache.offheap.gets", cache, c -> c.getSecondHits().sum())
+                    .tags(cacheTags).tag("result", "hit")
+                    .description("The number of times the off-heap tier served a miss of the on-heap tier")
+                    .register(registry);
+            FunctionCounter.builder("cache.offheap.gets", cache, c -> c.getSecondMisses().sum())
+                    .tags(cacheTags).tag("result", "miss")
+                    .description("The number of times neither tier had the entry")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package jp.co.axa.apidemo.cache;
+
+/**
+ * binary form of cached values stored outside of java heap
+ */
+public interface ValueCodec {
+
+    /**
+     * @return version of the encoded form, to be changed whenever it changes,
+     * so that stores written in another layout are not decoded
+     */
+    int layout();
+
+    /**
+     * @param value {@link Object}
+     * @return true if value could be encoded by this codec
+     */
+    boolean supports(Object value);
+
+    /**
+     * @param value {@link Object} supported value
+     * @return encoded bytes
+     */
+    byte[] encode(Object value);
+
+    /**
+     * @param bytes encoded bytes
+     * @return {@link Object} decoded value
+     */
+    Object decode(byte[] bytes);
+}
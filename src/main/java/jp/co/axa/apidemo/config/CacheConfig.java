@@ -1,30 +1,134 @@
 package jp.co.axa.apidemo.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import jp.co.axa.apidemo.entities.Employee;
-import org.springframework.beans.factory.annotation.Value;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jp.co.axa.apidemo.cache.CacheInvalidationBus;
+import jp.co.axa.apidemo.cache.EmployeeCodec;
+import jp.co.axa.apidemo.cache.EntryWeigher;
+import jp.co.axa.apidemo.cache.InvalidatingCacheManager;
+import jp.co.axa.apidemo.cache.InvalidatingCacheMeterBinderProvider;
+import jp.co.axa.apidemo.cache.MulticastInvalidationBus;
+import jp.co.axa.apidemo.cache.LoadingCaffeineCache;
+import jp.co.axa.apidemo.cache.NamedCacheLoader;
+import jp.co.axa.apidemo.cache.OffHeapStore;
+import jp.co.axa.apidemo.cache.TieredCacheManager;
+import jp.co.axa.apidemo.cache.TieredCacheMeterBinderProvider;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * caffeine caches, each one is built from its own spec in {@link CustomizedCacheProperties}
+ *
+ * specs with maximumWeight are weighed by {@link EntryWeigher},
+ * caches with a {@link NamedCacheLoader} bean are built as loading caches, see {@link LoadingCaffeineCache}
+ * statistics recorded by recordStats are exposed as cache.* metrics through actuator
+ *
+ * if off-heap tier is enabled, caches listed there are backed by {@link OffHeapStore}, see {@link TieredCacheManager}
+ * if invalidation is enabled, writes evict the same keys on other nodes, see {@link InvalidatingCacheManager}
+ */
 @Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(CustomizedCacheProperties.class)
 public class CacheConfig {
 
-    @Value("${customized.cache.validSeconds}")
-    private Integer validSeconds;
+    private final CustomizedCacheProperties properties;
 
     @Bean
-    public Caffeine<Object, Object> caffeine() {
-        return Caffeine.newBuilder().expireAfterWrite(validSeconds, TimeUnit.SECONDS);
+    public CacheManager cacheManager(ObjectProvider<NamedCacheLoader> cacheLoaders,
+                                     ObjectProvider<CacheInvalidationBus> buses) throws IOException {
+        final Map<String, NamedCacheLoader> loaders = cacheLoaders.orderedStream()
+                .collect(Collectors.toMap(NamedCacheLoader::getCacheName, Function.identity()));
+
+        final CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected org.springframework.cache.Cache createCaffeineCache(String name) {
+                final Cache<Object, Object> cache = createNativeCaffeineCache(name);
+                if (cache instanceof LoadingCache) {
+                    return new LoadingCaffeineCache(name, (LoadingCache<Object, Object>) cache, isAllowNullValues());
+                }
+                return new CaffeineCache(name, cache, isAllowNullValues());
+            }
+
+            @Override
+            protected Cache<Object, Object> createNativeCaffeineCache(String name) {
+                return buildCache(name, loaders.get(name));
+            }
+        };
+        // create configured caches up front, so that their metrics are registered on startup
+        properties.getSpecs().keySet().forEach(cacheManager::getCache);
+
+        final CacheManager localCacheManager = withOffHeap(cacheManager);
+
+        final CustomizedCacheProperties.Invalidation invalidation = properties.getInvalidation();
+        if (!invalidation.isEnabled()) {
+            return localCacheManager;
+        }
+        CacheInvalidationBus bus = buses.getIfAvailable();
+        if (bus == null) {
+            bus = new MulticastInvalidationBus(invalidation.getGroup(), invalidation.getPort(), invalidation.getTimeToLive());
+        }
+        return new InvalidatingCacheManager(localCacheManager, bus,
+                invalidation.getFlushMillis(), invalidation.getMaxBatchKeys());
     }
 
     @Bean
-    public CacheManager cacheManager(Caffeine<Object, Object> caffeine) {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
-        cacheManager.setCaffeine(caffeine);
-        return cacheManager;
+    public TieredCacheMeterBinderProvider tieredCacheMeterBinderProvider() {
+        return new TieredCacheMeterBinderProvider();
+    }
+
+    @Bean
+    public InvalidatingCacheMeterBinderProvider invalidatingCacheMeterBinderProvider(
+            ObjectProvider<CacheMeterBinderProvider<?>> providers) {
+        return new InvalidatingCacheMeterBinderProvider(providers);
+    }
+
+    private CacheManager withOffHeap(CacheManager cacheManager) throws IOException {
+        final CustomizedCacheProperties.OffHeap offHeap = properties.getOffHeap();
+        if (!offHeap.isEnabled()) {
+            return cacheManager;
+        }
+        final EmployeeCodec codec = new EmployeeCodec();
+        final Map<String, OffHeapStore> stores = new HashMap<>();
+        for (String name : offHeap.getCaches()) {
+            Duration ttl = Duration.ofSeconds(offHeap.getTtlSeconds());
+            final Duration expireAfterWrite = properties.expireAfterWriteOf(name);
+            if (expireAfterWrite != null && expireAfterWrite.compareTo(ttl) < 0) {
+                ttl = expireAfterWrite;
+            }
+            stores.put(name, new OffHeapStore(Paths.get(offHeap.getDirectory(), name), offHeap.getCapacity(),
+                    offHeap.getChunkSize(), offHeap.getMaxChunks(), ttl, codec.layout()));
+        }
+        return new TieredCacheManager(cacheManager, stores, codec);
+    }
+
+    private Cache<Object, Object> buildCache(String name, NamedCacheLoader loader) {
+        final String spec = properties.specOf(name);
+        final Caffeine<Object, Object> builder = Caffeine.from(spec);
+        if (spec.contains("maximumWeight")) {
+            builder.weigher(new EntryWeigher());
+        }
+        if (loader != null) {
+            return builder.build(loader);
+        }
+        if (spec.contains("refreshAfterWrite")) {
+            throw new IllegalStateException("refreshAfterWrite of cache " + name + " requires a NamedCacheLoader bean");
+        }
+        return builder.build();
     }
 }
@@ -0,0 +1,185 @@
+package jp.co.axa.apidemo.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * properties of caches under customized.cache
+ *
+ * every cache could be tuned by its own caffeine spec, for example
+ * customized.cache.specs.employees=maximumWeight=67108864,expireAfterWrite=60s,recordStats
+ * caches without spec would expire after validSeconds and keep at most 10000 entries
+ *
+ * caches listed in customized.cache.offHeap.caches could have a second tier in memory-mapped files,
+ * see {@link OffHeap}
+ *
+ * caches of several nodes could be kept consistent by publishing invalidations, see {@link Invalidation}
+ *
+ * entities and queries are cached by hibernate as well, in regions of {@link SecondLevel}
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "customized.cache")
+public class CustomizedCacheProperties {
+
+    /**
+     * seconds to expire after write for caches without spec
+     */
+    private Integer validSeconds;
+
+    /**
+     * caffeine spec for each cache name, see {@link com.github.benmanes.caffeine.cache.CaffeineSpec}
+     */
+    private Map<String, String> specs = new HashMap<>();
+
+    private OffHeap offHeap = new OffHeap();
+
+    private Invalidation invalidation = new Invalidation();
+
+    private SecondLevel secondLevel = new SecondLevel();
+
+    /**
+     * @param cacheName {@link String}
+     * @return {@link String} configured spec of the cache, or default one
+     */
+    public String specOf(String cacheName) {
+        return specs.getOrDefault(cacheName, "maximumSize=10000,expireAfterWrite=" + validSeconds + "s,recordStats");
+    }
+
+    /**
+     * @param cacheName {@link String}
+     * @return {@link Duration} expireAfterWrite in spec of the cache, or null if it does not expire after write
+     */
+    public Duration expireAfterWriteOf(String cacheName) {
+        for (String option : specOf(cacheName).split(",")) {
+            final String[] keyAndValue = option.trim().split("=", 2);
+            if (keyAndValue.length < 2 || !keyAndValue[0].trim().equals("expireAfterWrite")) {
+                continue;
+            }
+            final String value = keyAndValue[1].trim().toLowerCase();
+            final long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            switch (value.charAt(value.length() - 1)) {
+                case 'd':
+                    return Duration.ofDays(amount);
+                case 'h':
+                    return Duration.ofHours(amount);
+                case 'm':
+                    return Duration.ofMinutes(amount);
+                case 's':
+                    return Duration.ofSeconds(amount);
+                default:
+                    throw new IllegalArgumentException("expireAfterWrite of cache " + cacheName + " has no unit: " + value);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * second tier of caches in memory-mapped files under directory, one sub directory for each cache
+     *
+     * it's disabled by default because entries survive restart, which is only right
+     * when the database outlives the application, unlike the embedded in-memory one
+     */
+    @Getter
+    @Setter
+    public static class OffHeap {
+
+        private boolean enabled = false;
+
+        private String directory = "cache";
+
+        private List<String> caches = Collections.singletonList("employees");
+
+        /**
+         * max number of entries of each cache
+         */
+        private int capacity = 1 << 21;
+
+        /**
+         * bytes of one data file
+         */
+        private int chunkSize = 64 * 1024 * 1024;
+
+        /**
+         * max number of data files of each cache
+         */
+        private int maxChunks = 16;
+
+        /**
+         * entries older than this are ignored, which bounds staleness of entries kept over restart
+         *
+         * it's capped by expireAfterWrite in spec of the cache, since entries promoted from the second tier
+         * are served as fresh by the first one, the second tier must not outlive it
+         */
+        private int ttlSeconds = 3600;
+    }
+
+    /**
+     * invalidations published to other nodes on writes, over UDP multicast unless
+     * a {@link jp.co.axa.apidemo.cache.CacheInvalidationBus} bean is defined
+     *
+     * it's disabled by default because a single node has nobody to tell
+     */
+    @Getter
+    @Setter
+    public static class Invalidation {
+
+        private boolean enabled = false;
+
+        /**
+         * interval to publish pending invalidations
+         */
+        private long flushMillis = 5;
+
+        /**
+         * pending keys to publish without waiting for the interval
+         */
+        private int maxBatchKeys = 1000;
+
+        private String group = "239.255.42.99";
+
+        private int port = 45588;
+
+        /**
+         * hops of multicast datagrams, 1 keeps them in the local network
+         */
+        private int timeToLive = 1;
+    }
+
+    /**
+     * hibernate second-level cache and query cache in caffeine backed JCache regions
+     *
+     * regions are local to the node, entries of other nodes expire after write,
+     * the update timestamps region is never evicted unless configured, otherwise cached queries could be stale
+     */
+    @Getter
+    @Setter
+    public static class SecondLevel {
+
+        private boolean enabled = true;
+
+        /**
+         * sizing of each region, for example customized.cache.secondLevel.regions.employee.maximumSize=10000
+         */
+        private Map<String, Region> regions = new HashMap<>();
+    }
+
+    /**
+     * unbounded and never expired unless given
+     */
+    @Getter
+    @Setter
+    public static class Region {
+
+        private Long maximumSize;
+
+        private Long expireAfterWriteSeconds;
+    }
+}
@@ -0,0 +1,65 @@
+package jp.co.axa.apidemo.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * properties of users and credential verification under customized.credential
+ *
+ * besides the user of customized.credential.username, more users could be given with precomputed bcrypt hashes,
+ * for example customized.credential.users.alice=$2a$10$...
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "customized.credential")
+public class CustomizedCredentialProperties {
+
+    /**
+     * bcrypt hash of password for each username
+     */
+    private Map<String, String> users = new HashMap<>();
+
+    /**
+     * seconds to remember a successfully verified credential
+     */
+    private int verifiedSeconds = 300;
+
+    /**
+     * max number of remembered credentials
+     */
+    private int verifiedMaxSize = 10000;
+
+    /**
+     * seconds to remember a verified access token without expiration, others are remembered until they expire
+     */
+    private int verifiedTokenMaxSeconds = 3600;
+
+    /**
+     * max number of remembered access tokens
+     */
+    private int verifiedTokenMaxSize = 10000;
+
+    /**
+     * seconds access and refresh tokens are valid
+     */
+    private int tokenValiditySeconds = 2000;
+
+    /**
+     * bits of RSA keys signing tokens
+     */
+    private int keySize = 2048;
+
+    /**
+     * seconds to replace the key signing tokens, never if zero
+     */
+    private int keyRotationSeconds = 86400;
+
+    /**
+     * JWK set to verify tokens with, instead of keys of this node
+     */
+    private String jwkSetUri;
+}
@@ -0,0 +1,127 @@
+package jp.co.axa.apidemo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * hikari connection pool of the datasource behind the repositories
+ *
+ * the pool size defaults to (cores * 2) + 1, one effective spindle for the database,
+ * a larger pool only makes connections wait on the database instead of on the pool
+ * every spring.datasource.hikari.* property, maximum-pool-size included, overrides the defaults set here
+ *
+ * active, idle and pending connections and acquire, usage and creation times
+ * are published by spring boot as hikaricp.connections.* metrics
+ *
+ * with customized.datasource.replica.enabled, read-only transactions not filling caches are routed to a replica pool,
+ * see {@link Replica}
+ */
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * @param properties {@link DataSourceProperties} of spring.datasource
+     * @return {@link HikariDataSource}
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return createDataSource(properties);
+    }
+
+    /**
+     * @param cores {@link Integer} available processors
+     * @return {@link Integer} default maximum pool size
+     */
+    static int defaultPoolSize(int cores) {
+        return cores * 2 + 1;
+    }
+
+    private static HikariDataSource createDataSource(DataSourceProperties properties) {
+        final HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        dataSource.setMaximumPoolSize(defaultPoolSize(Runtime.getRuntime().availableProcessors()));
+        return dataSource;
+    }
+
+    /**
+     * a second pool of customized.datasource.replica.* and customized.datasource.replica.hikari.*,
+     * with the same defaults as the primary one
+     *
+     * read-only transactions opting in by {@link ReadWriteRoutingDataSource#onReplica(Runnable)} run on the replica,
+     * all others including schema migrations and reads filling caches on the primary,
+     * so those reads may lag behind writes by the replication delay of the database
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "customized.datasource.replica", name = "enabled")
+    public static class Replica {
+
+        /**
+         * @param environment {@link Environment} to bind customized.datasource.replica from
+         * @param primary {@link HikariDataSource} to take auto-commit from
+         * @return {@link HikariDataSource}
+         * @throws Exception from {@link DataSourceProperties#afterPropertiesSet()}
+         */
+        @Bean
+        @ConfigurationProperties(prefix = "customized.datasource.replica.hikari")
+        public HikariDataSource replicaDataSource(Environment environment,
+                                                  @Qualifier("primaryDataSource") HikariDataSource primary) throws Exception {
+            // not a bean of its own, it would be ambiguous with spring.datasource
+            final DataSourceProperties properties = Binder.get(environment)
+                    .bind("customized.datasource.replica", DataSourceProperties.class)
+                    .get();
+            properties.afterPropertiesSet();
+            final HikariDataSource dataSource = createDataSource(properties);
+            dataSource.setPoolName(primary.getPoolName() + "-replica");
+            dataSource.setAutoCommit(primary.isAutoCommit());
+            return dataSource;
+        }
+
+        /**
+         * pools are injected lazily, creating a pool makes spring boot look up the primary datasource,
+         * which would be this one still in creation
+         * for the same reason defaults of connections are taken from properties instead of a connection
+         *
+         * @param primary {@link HikariDataSource}
+         * @param replica {@link HikariDataSource}
+         * @param environment {@link Environment}
+         * @return {@link DataSource} used by JPA and migrations
+         */
+        @Bean
+        @Primary
+        public DataSource dataSource(@Lazy @Qualifier("primaryDataSource") HikariDataSource primary,
+                                     @Lazy @Qualifier("replicaDataSource") HikariDataSource replica,
+                                     Environment environment) {
+            final Map<Object, Object> targets = new HashMap<>();
+            targets.put(ReadWriteRoutingDataSource.PRIMARY, primary);
+            targets.put(ReadWriteRoutingDataSource.REPLICA, replica);
+            final ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+            routing.setTargetDataSources(targets);
+            routing.setDefaultTargetDataSource(primary);
+            routing.afterPropertiesSet();
+
+            final LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+            dataSource.setTargetDataSource(routing);
+            dataSource.setDefaultAutoCommit(
+                    environment.getProperty("spring.datasource.hikari.auto-commit", Boolean.class, true));
+            dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            return dataSource;
+        }
+    }
+}
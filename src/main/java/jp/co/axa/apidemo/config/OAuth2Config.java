@@ -1,19 +1,23 @@
 package jp.co.axa.apidemo.config;
 
+import jp.co.axa.apidemo.controllers.JwkSetController;
+import jp.co.axa.apidemo.security.CachingTokenStore;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableResourceServer;
+import org.springframework.security.oauth2.config.annotation.web.configuration.ResourceServerConfigurer;
+import org.springframework.security.oauth2.config.annotation.web.configuration.ResourceServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
-import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
 
 @Configuration
 @RequiredArgsConstructor
@@ -25,28 +29,36 @@ public class OAuth2Config extends AuthorizationServerConfigurerAdapter {
     private String clientId;
     @Value("${customized.credential.clientSecret}")
     private String clientSecret;
-    @Value("${customized.credential.privateKey}")
-    private String privateKey;
 
     private final AuthenticationManager authenticationManager;
+    private final PasswordEncoder passwordEncoder;
+    private final JwtAccessTokenConverter tokenEnhancer;
+    private final CachingTokenStore tokenStore;
+    private final CustomizedCredentialProperties properties;
 
+    /**
+     * every resource requires a token, except public keys to verify tokens with
+     * static, since dependencies of this configuration are created with the resource server
+     *
+     * @return {@link ResourceServerConfigurer}
+     */
     @Bean
-    public JwtAccessTokenConverter tokenEnhancer() {
-        JwtAccessTokenConverter converter = new JwtAccessTokenConverter();
-        converter.setSigningKey(privateKey);
-        return converter;
-    }
-
-    @Bean
-    public JwtTokenStore jwtTokenStore() {
-        return new JwtTokenStore(tokenEnhancer());
+    public static ResourceServerConfigurer resourceServerConfigurer() {
+        return new ResourceServerConfigurerAdapter() {
+            @Override
+            public void configure(HttpSecurity http) throws Exception {
+                http.authorizeRequests()
+                        .antMatchers(JwkSetController.PATH).permitAll()
+                        .anyRequest().authenticated();
+            }
+        };
     }
 
     @Override
     public void configure(AuthorizationServerEndpointsConfigurer endpoints) {
         endpoints.authenticationManager(authenticationManager)
-                .tokenStore(jwtTokenStore())
-                .accessTokenConverter(tokenEnhancer());
+                .tokenStore(tokenStore)
+                .accessTokenConverter(tokenEnhancer);
     }
 
     @Override
@@ -58,11 +70,11 @@ public class OAuth2Config extends AuthorizationServerConfigurerAdapter {
     public void configure(ClientDetailsServiceConfigurer client) throws Exception {
         client.inMemory()
                 .withClient(clientId)
-                .secret(new BCryptPasswordEncoder().encode(clientSecret))
+                .secret(passwordEncoder.encode(clientSecret))
                 .scopes("read", "write")
                 .authorizedGrantTypes("password", "refresh_token")
-                .accessTokenValiditySeconds(2000)
-                .refreshTokenValiditySeconds(2000);
+                .accessTokenValiditySeconds(properties.getTokenValiditySeconds())
+                .refreshTokenValiditySeconds(properties.getTokenValiditySeconds());
     }
 
 }
@@ -0,0 +1,55 @@
+package jp.co.axa.apidemo.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * datasource sending connections of read-only transactions run by {@link #onReplica(Runnable)} to the replica,
+ * and all others to the primary
+ *
+ * reads filling caches, which are shared by all requests and published to other nodes, must not lag behind writes,
+ * or a stale row would be served until it expires, so only reads whose results are not cached opt in to the replica
+ *
+ * the transaction has to be marked read-only before the connection is taken,
+ * so this is only correct behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * which takes the connection on the first statement instead of at the beginning of the transaction
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * lookup key of the primary
+     */
+    public static final String PRIMARY = "primary";
+
+    /**
+     * lookup key of the replica
+     */
+    public static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> REPLICA_ALLOWED = new ThreadLocal<>();
+
+    /**
+     * run reads allowed to lag behind writes, connections taken by read-only transactions meanwhile
+     * are taken from the replica
+     *
+     * @param reads {@link Runnable} which must not cache what it reads
+     */
+    public static void onReplica(Runnable reads) {
+        if (REPLICA_ALLOWED.get() != null) {
+            reads.run();
+            return;
+        }
+        REPLICA_ALLOWED.set(Boolean.TRUE);
+        try {
+            reads.run();
+        } finally {
+            REPLICA_ALLOWED.remove();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && REPLICA_ALLOWED.get() != null
+                ? REPLICA : PRIMARY;
+    }
+}
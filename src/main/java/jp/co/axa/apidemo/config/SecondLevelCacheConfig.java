@@ -0,0 +1,84 @@
+package jp.co.axa.apidemo.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hibernate second-level cache and query cache, in JCache regions of caffeine
+ * sized by {@link CustomizedCacheProperties.SecondLevel}
+ *
+ * entities found by id and results of cacheable queries are served without SQL,
+ * writes through hibernate evict what they touch, bulk updates clear whole regions though,
+ * so single employees are updated by SQL evicting only themselves, see {@link jp.co.axa.apidemo.repositories.EmployeeRepositoryImpl}
+ * writes bypassing hibernate, such as plain JDBC, must evict regions themselves
+ * regions are local to each node, writes of other nodes are evicted by {@link jp.co.axa.apidemo.cache.SecondLevelCacheInvalidator}
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "customized.cache.secondLevel", name = "enabled", matchIfMissing = true)
+public class SecondLevelCacheConfig {
+
+    private final CustomizedCacheProperties properties;
+
+    /**
+     * a cache manager of its own for each application context, so contexts never share regions
+     * entries are stored by reference, hibernate already keeps them in its own disassembled form
+     *
+     * @return {@link CacheManager}
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager() {
+        final CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("hibernate-" + UUID.randomUUID()), getClass().getClassLoader());
+        properties.getSecondLevel().getRegions().forEach((name, region) -> cacheManager.createCache(name, configurationOf(region)));
+        if (cacheManager.getCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME) == null) {
+            cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                    configurationOf(new CustomizedCacheProperties.Region()));
+        }
+        return cacheManager;
+    }
+
+    /**
+     * @param secondLevelCacheManager {@link CacheManager} regions are taken from
+     * @return {@link HibernatePropertiesCustomizer}
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager secondLevelCacheManager) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            hibernateProperties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+            // regions without configuration are unbounded
+            hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "create-warn");
+        };
+    }
+
+    private CaffeineConfiguration<Object, Object> configurationOf(CustomizedCacheProperties.Region region) {
+        final CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        if (region.getMaximumSize() != null) {
+            configuration.setMaximumSize(OptionalLong.of(region.getMaximumSize()));
+        }
+        if (region.getExpireAfterWriteSeconds() != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(region.getExpireAfterWriteSeconds())));
+        }
+        return configuration;
+    }
+}
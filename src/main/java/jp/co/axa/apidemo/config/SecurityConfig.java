@@ -1,6 +1,10 @@
 package jp.co.axa.apidemo.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jp.co.axa.apidemo.security.CachingPasswordEncoder;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -10,18 +14,39 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
 
 @Configuration
 @EnableWebSecurity
 @RequiredArgsConstructor
+@EnableConfigurationProperties(CustomizedCredentialProperties.class)
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     private final UserDetailsService userDetailsService;
 
+    /**
+     * bcrypt remembering verified credentials, so repeated logins of a user cost one bcrypt round in a while
+     * static, since the user details service of this configuration depends on it
+     *
+     * @param properties {@link CustomizedCredentialProperties}
+     * @return {@link CachingPasswordEncoder}
+     */
+    @Bean
+    public static CachingPasswordEncoder passwordEncoder(CustomizedCredentialProperties properties) {
+        return new CachingPasswordEncoder(new BCryptPasswordEncoder(),
+                Duration.ofSeconds(properties.getVerifiedSeconds()), properties.getVerifiedMaxSize());
+    }
+
+    /**
+     * hit and miss of remembered credentials under /actuator/metrics/cache.*
+     *
+     * @param passwordEncoder {@link CachingPasswordEncoder}
+     * @return {@link MeterBinder}
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public MeterBinder verifiedCredentialsMetrics(CachingPasswordEncoder passwordEncoder) {
+        return registry -> CaffeineCacheMetrics.monitor(registry, passwordEncoder.getVerified(), "verifiedCredentials");
     }
 
     @Override
@@ -0,0 +1,76 @@
+package jp.co.axa.apidemo.config;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jp.co.axa.apidemo.security.CachingTokenStore;
+import jp.co.axa.apidemo.security.RotatingJwtAccessTokenConverter;
+import jp.co.axa.apidemo.security.SigningKeys;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.security.oauth2.provider.token.store.jwk.JwkTokenStore;
+import org.springframework.util.StringUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * signing and verification of access tokens, shared by authorization and resource server
+ *
+ * tokens are signed by rotated RSA keys, whose public keys are published as JWK set
+ * with customized.credential.jwkSetUri, tokens are verified by keys fetched from there instead,
+ * so nodes only validating tokens need no secret of the authorization server
+ *
+ * kept apart from {@link OAuth2Config}, whose dependencies reach the meter registry,
+ * which in turn needs the metrics of the token store
+ */
+@Configuration
+@RequiredArgsConstructor
+public class TokenConfig {
+
+    private final CustomizedCredentialProperties properties;
+
+    /**
+     * replaced keys verify tokens as long as the tokens are valid
+     *
+     * @return {@link SigningKeys}
+     */
+    @Bean
+    public SigningKeys signingKeys() {
+        return new SigningKeys(properties.getKeySize(), Duration.ofSeconds(properties.getKeyRotationSeconds()),
+                Duration.ofSeconds(properties.getTokenValiditySeconds()), Clock.systemUTC());
+    }
+
+    @Bean
+    public JwtAccessTokenConverter tokenEnhancer() {
+        return new RotatingJwtAccessTokenConverter(signingKeys());
+    }
+
+    /**
+     * JWT token store remembering verified tokens until they expire,
+     * so repeated calls with one token check its signature and parse it once
+     *
+     * @return {@link CachingTokenStore}
+     */
+    @Bean
+    public CachingTokenStore tokenStore() {
+        final TokenStore delegate = StringUtils.hasText(properties.getJwkSetUri())
+                ? new JwkTokenStore(properties.getJwkSetUri())
+                : new JwtTokenStore(tokenEnhancer());
+        return new CachingTokenStore(delegate,
+                Duration.ofSeconds(properties.getVerifiedTokenMaxSeconds()), properties.getVerifiedTokenMaxSize());
+    }
+
+    /**
+     * hit and miss of remembered tokens under /actuator/metrics/cache.*
+     *
+     * @return {@link MeterBinder}
+     */
+    @Bean
+    public MeterBinder verifiedTokensMetrics() {
+        return registry -> CaffeineCacheMetrics.monitor(registry, tokenStore().getVerified(), "verifiedTokens");
+    }
+}
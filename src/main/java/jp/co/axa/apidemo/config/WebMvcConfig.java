@@ -0,0 +1,35 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import jp.co.axa.apidemo.format.EmployeeFormats;
+import jp.co.axa.apidemo.format.EmployeeProtobufHttpMessageConverter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * binary representations chosen by Accept and Content-Type, see {@link EmployeeFormat}
+ *
+ * converters of Smile and CBOR added by spring use default mappers, they are replaced by ones of {@link EmployeeFormats}
+ * binary converters come after the JSON one, so that requests accepting anything are still answered by JSON
+ */
+@Configuration
+@RequiredArgsConstructor
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final EmployeeFormats employeeFormats;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2SmileHttpMessageConverter
+                || converter instanceof MappingJackson2CborHttpMessageConverter);
+        converters.add(new MappingJackson2SmileHttpMessageConverter(employeeFormats.mapper(EmployeeFormat.SMILE)));
+        converters.add(new MappingJackson2CborHttpMessageConverter(employeeFormats.mapper(EmployeeFormat.CBOR)));
+        converters.add(new EmployeeProtobufHttpMessageConverter(employeeFormats));
+    }
+}
@@ -0,0 +1,53 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.writebehind.EmployeeWriteBehind;
+import jp.co.axa.apidemo.writebehind.WriteAheadLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * write-behind of inserts and updates of employees, see {@link EmployeeWriteBehind}
+ *
+ * it's disabled by default: writes are acknowledged before they are in DB, so other nodes and
+ * paged queries see them only after the next flush, and the log directory has to outlive the node
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "customized.writeBehind", name = "enabled")
+public class WriteBehindConfig {
+
+    /**
+     * the entity manager factory is injected before the log is replayed, so migrations have run
+     *
+     * @param dataSource {@link DataSource}
+     * @param transactionManager {@link PlatformTransactionManager}
+     * @param entityManagerFactory {@link EntityManagerFactory}
+     * @param directory {@link String} directory of the write-ahead log
+     * @param logName {@link String} name of the checkpoint of the log, unique for each node
+     * @param flushMillis {@link Long} interval to write pending writes
+     * @param maxBatchSize {@link Integer} pending writes to write without waiting for the interval
+     * @param maxPending {@link Integer} employees with pending writes to refuse writes of other employees at
+     * @return {@link EmployeeWriteBehind}
+     * @throws IOException if the log could not be read
+     */
+    @Bean
+    public EmployeeWriteBehind employeeWriteBehind(DataSource dataSource,
+                                                   PlatformTransactionManager transactionManager,
+                                                   EntityManagerFactory entityManagerFactory,
+                                                   @Value("${customized.writeBehind.directory}") String directory,
+                                                   @Value("${customized.writeBehind.logName}") String logName,
+                                                   @Value("${customized.writeBehind.flushMillis}") long flushMillis,
+                                                   @Value("${customized.writeBehind.maxBatchSize}") int maxBatchSize,
+                                                   @Value("${customized.writeBehind.maxPending}") int maxPending)
+            throws IOException {
+        return new EmployeeWriteBehind(new WriteAheadLog(Paths.get(directory)), logName,
+                dataSource, transactionManager, entityManagerFactory, flushMillis, maxBatchSize, maxPending);
+    }
+}
@@ -0,0 +1,189 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.cache.EmployeeChangeCounter;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.BadRequestException;
+import jp.co.axa.apidemo.exception.GatewayTimeoutException;
+import jp.co.axa.apidemo.exception.PreconditionFailedException;
+import jp.co.axa.apidemo.exception.ServiceUnavailableException;
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import jp.co.axa.apidemo.services.EmployeeService;
+import jp.co.axa.apidemo.services.EmployeeServiceExecutor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * same operations on employees as {@link EmployeeController}, served asynchronously
+ *
+ * the servlet thread is released as soon as the call is queued on {@link EmployeeServiceExecutor},
+ * and the response is written when the call completes, so waiting for DB does not hold servlet threads
+ * a call is answered by 503 with Retry-After right away if the queue is full, or if it's still queued at the timeout,
+ * then it never runs, while a call which started but did not complete within the timeout is answered by 504
+ * without Retry-After, since it may have been applied
+ *
+ * GET requests carry the same ETags as {@link EmployeeController} and are answered by 304 if If-None-Match matches,
+ * a page before it's queued, an employee once its version is read
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/async")
+@RequiredArgsConstructor
+public class AsyncEmployeeController {
+
+    private final EmployeeServiceExecutor employeeServiceExecutor;
+    private final EmployeeChangeCounter employeeChangeCounter;
+
+    @Value("${customized.page.defaultLimit}")
+    private Integer defaultLimit;
+    @Value("${customized.page.maxLimit}")
+    private Integer maxLimit;
+    @Value("${customized.async.timeoutMillis}")
+    private Long timeoutMillis;
+
+    /**
+     * retrieve one page of employees ordered by id, see {@link EmployeeController#getEmployees}
+     *
+     * @param after {@link Long} exclusive cursor, retrieve from the beginning if absent
+     * @param limit {@link Integer} page size, default limit if absent and capped by max limit
+     * @param webRequest {@link WebRequest}
+     * @return {@link DeferredResult<ResponseEntity<List<Employee>>>}, null if not modified
+     * @throws {@link BadRequestException} if limit is not positive
+     * @throws {@link ServiceUnavailableException} if the queue is full
+     */
+    @GetMapping("/employees")
+    public DeferredResult<ResponseEntity<List<Employee>>> getEmployees(@RequestParam(name="after", required=false) Long after,
+                                                                       @RequestParam(name="limit", required=false) Integer limit,
+                                                                       WebRequest webRequest) {
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("limit: " + limit + " should be positive");
+        }
+        // taken before reading, and checked before queueing, ETag header is set by checkNotModified as well
+        final String eTag = EmployeeController.eTag(employeeChangeCounter.current(),
+                EmployeeFormat.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT)), false);
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        final int pageSize = limit == null ? defaultLimit : Math.min(limit, maxLimit);
+        return deferred(service -> {
+            final List<Employee> employees = service.retrieveEmployees(after, pageSize);
+            final ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+            if (employees.size() == pageSize) {
+                builder.header(EmployeeController.HEADER_NEXT_CURSOR, String.valueOf(employees.get(pageSize - 1).getId()));
+            }
+            return builder.body(employees);
+        });
+    }
+
+    /**
+     * retrieve certain employee by id, with the version as ETag
+     *
+     * @param employeeId {@link Long}
+     * @param webRequest {@link WebRequest}
+     * @return {@link DeferredResult<ResponseEntity<Employee>>}, 304 without body if not modified
+     * @throws {@link ServiceUnavailableException} if the queue is full
+     */
+    @GetMapping("/employees/{employeeId}")
+    public DeferredResult<ResponseEntity<Employee>> getEmployee(@PathVariable(name="employeeId")Long employeeId,
+                                                                WebRequest webRequest) {
+        final EmployeeFormat format = EmployeeFormat.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT));
+        return deferred(service -> {
+            final Employee employee = service.getEmployee(employeeId);
+            // the body is never gzip encoded here, so only the identity coding is a candidate
+            final String eTag = EmployeeController.eTag(String.valueOf(employee.getVersion()), format, false);
+            final ResponseEntity<Employee> notModified = EmployeeController.notModified(webRequest, eTag);
+            if (notModified != null) {
+                return notModified;
+            }
+            return ResponseEntity.ok().eTag(eTag).body(employee);
+        });
+    }
+
+    /**
+     * persist information of certain employee
+     *
+     * @param employee {@link Employee}
+     * @return {@link DeferredResult<ResponseEntity<Void>>}
+     * @throws {@link ServiceUnavailableException} if the queue is full
+     */
+    @PostMapping("/employees")
+    public DeferredResult<ResponseEntity<Void>> saveEmployee(@RequestBody Employee employee) {
+        return deferred(service -> {
+            service.saveEmployee(employee);
+            log.info("Employee Saved Successfully");
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    /**
+     * update certain employee by id, all fields are replaced, see {@link EmployeeController#updateEmployee}
+     *
+     * @param employee {@link Employee}
+     * @param employeeId {@link Long}
+     * @param ifMatch {@link String} ETag of the version to update
+     * @return {@link DeferredResult<ResponseEntity<Void>>} with ETag of the updated version if the version was given
+     * @throws {@link PreconditionFailedException} if If-Match is not a version
+     * @throws {@link ServiceUnavailableException} if the queue is full
+     */
+    @PutMapping("/employees/{employeeId}")
+    public DeferredResult<ResponseEntity<Void>> updateEmployee(@RequestBody Employee employee,
+                                                               @PathVariable(name="employeeId")Long employeeId,
+                                                               @RequestHeader(name=HttpHeaders.IF_MATCH, required=false) String ifMatch) {
+        final Employee versioned = EmployeeController.versioned(employee, employeeId, ifMatch);
+        return deferred(service -> EmployeeController.updated(service.updateEmployee(versioned)));
+    }
+
+    /**
+     * delete certain employee
+     *
+     * @param employeeId {@link Long}
+     * @return {@link DeferredResult<ResponseEntity<Void>>}
+     * @throws {@link ServiceUnavailableException} if the queue is full
+     */
+    @DeleteMapping("/employees/{employeeId}")
+    public DeferredResult<ResponseEntity<Void>> deleteEmployee(@PathVariable(name="employeeId")Long employeeId) {
+        return deferred(service -> {
+            service.deleteEmployee(employeeId);
+            log.info("Employee Deleted Successfully");
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    private <T> DeferredResult<T> deferred(Function<EmployeeService, T> call) {
+        final DeferredResult<T> result = new DeferredResult<>(timeoutMillis);
+        // claimed either by the call when it starts or by the timeout while it's queued, whichever comes first
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<T> future = employeeServiceExecutor.submit(service ->
+                claimed.compareAndSet(false, true) ? call.apply(service) : null);
+        result.onTimeout(() -> {
+            if (claimed.compareAndSet(false, true)) {
+                result.setErrorResult(new ServiceUnavailableException("not started within " + timeoutMillis + " ms"));
+            } else {
+                result.setErrorResult(new GatewayTimeoutException("not completed within " + timeoutMillis + " ms"));
+            }
+            // set first, cancelling completes the future at once, which would set CancellationException instead
+            // a call still queued is dropped, a running one completes but is not answered any more
+            future.cancel(false);
+        });
+        future.whenComplete((value, ex) -> {
+            if (ex == null) {
+                result.setResult(value);
+            } else {
+                // exceptions are handled like those of synchronous requests, see CustomizedExceptionHandler
+                result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+        return result;
+    }
+}
@@ -1,15 +1,48 @@
 package jp.co.axa.apidemo.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jp.co.axa.apidemo.cache.EmployeeChangeCounter;
+import jp.co.axa.apidemo.cache.EmployeeResponseCache;
+import jp.co.axa.apidemo.cache.EncodedResponse;
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.BadRequestException;
+import jp.co.axa.apidemo.exception.PreconditionFailedException;
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import jp.co.axa.apidemo.search.EmployeeQuery;
 import jp.co.axa.apidemo.services.EmployeeService;
+import jp.co.axa.apidemo.stats.EmployeeStatistics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * RESTful APIs to support operations on employees' information
+ *
+ * reads carry strong ETags, the version of an employee or the change counter of all employees,
+ * suffixed by format and coding other than JSON and identity, so that each representation has its own, see {@link #eTag}
+ * a request whose If-None-Match matches is answered by 304 without body
+ * updates with If-Match are applied only to the version given there, each update is one UPDATE statement
+ *
+ * identical reads in flight at the same time are run once through {@link EmployeeResponseCoalescer},
+ * and answered by the same body, encoded once and cached by {@link EmployeeResponseCache},
+ * large bodies are answered by their gzip encoding to clients accepting it
  */
 @Slf4j
 @RestController
@@ -17,27 +50,203 @@ import java.util.List;
 @RequiredArgsConstructor
 public class EmployeeController {
 
+    /**
+     * response header carrying the cursor of next page, absent on the last page
+     */
+    public static final String HEADER_NEXT_CURSOR = "X-Next-Cursor";
+
+    /**
+     * newline delimited JSON, one employee per line
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    /**
+     * strong ETag of an employee, see {@link #eTag}
+     */
+    private static final Pattern VERSION_ETAG = Pattern.compile("\"?(\\d+)(-smile|-cbor|-protobuf)?(-gzip)?\"?");
+
     private final EmployeeService employeeService;
+    private final EmployeeChangeCounter employeeChangeCounter;
+    private final EmployeeResponseCoalescer employeeResponseCoalescer;
+    private final EmployeeResponseCache employeeResponseCache;
+    private final ObjectMapper objectMapper;
+
+    @Value("${customized.page.defaultLimit}")
+    private Integer defaultLimit;
+    @Value("${customized.page.maxLimit}")
+    private Integer maxLimit;
+    @Value("${customized.batch.maxSize}")
+    private Integer batchMaxSize;
 
     /**
-     * retrieve all employees
+     * retrieve one page of employees ordered by id
+     * pass the value of {@value HEADER_NEXT_CURSOR} header as after to retrieve the next page
      *
-     * @return {@link List<Employee>}
+     * @param after {@link Long} exclusive cursor, retrieve from the beginning if absent
+     * @param limit {@link Integer} page size, default limit if absent and capped by max limit
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<byte[]>} employees in the format negotiated by Accept, null if not modified
+     * @throws {@link BadRequestException} if limit is not positive
      */
     @GetMapping("/employees")
-    public List<Employee> getEmployees() {
-        return employeeService.retrieveEmployees();
+    public ResponseEntity<byte[]> getEmployees(@RequestParam(name="after", required=false) Long after,
+                                               @RequestParam(name="limit", required=false) Integer limit,
+                                               WebRequest webRequest) {
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("limit: " + limit + " should be positive");
+        }
+        // taken before reading, so that a write in between leaves the ETag older than the body, never newer
+        final String eTag = employeeChangeCounter.current();
+        final EmployeeFormat format = EmployeeFormat.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT));
+        final ResponseEntity<byte[]> notModified = notModified(webRequest, eTag, format);
+        if (notModified != null) {
+            return notModified;
+        }
+        final int pageSize = limit == null ? defaultLimit : Math.min(limit, maxLimit);
+        final String key = "employees:" + format + ":" + eTag + ":" + after + ":" + pageSize;
+        final EncodedResponse response = employeeResponseCoalescer.coalesce(key, () -> employeeResponseCache.page(
+                after, pageSize, eTag, format, () -> employeeService.retrieveEmployees(after, pageSize)));
+        return encoded(response, webRequest);
+    }
+
+    /**
+     * search employees by words in name or department, exact department and inclusive salary range,
+     * all given filters have to match, results are ordered by id and paged like {@link #getEmployees}
+     *
+     * @param q {@link String} words to match, case insensitive
+     * @param department {@link String}
+     * @param minSalary {@link Integer}
+     * @param maxSalary {@link Integer}
+     * @param after {@link Long} exclusive cursor, search from the beginning if absent
+     * @param limit {@link Integer} page size, default limit if absent and capped by max limit
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<List<Employee>>}, null if not modified
+     * @throws {@link BadRequestException} if limit is not positive or salary range is reversed
+     */
+    @GetMapping("/employees/search")
+    public ResponseEntity<List<Employee>> searchEmployees(@RequestParam(name="q", required=false) String q,
+                                                          @RequestParam(name="department", required=false) String department,
+                                                          @RequestParam(name="minSalary", required=false) Integer minSalary,
+                                                          @RequestParam(name="maxSalary", required=false) Integer maxSalary,
+                                                          @RequestParam(name="after", required=false) Long after,
+                                                          @RequestParam(name="limit", required=false) Integer limit,
+                                                          WebRequest webRequest) {
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("limit: " + limit + " should be positive");
+        }
+        if (minSalary != null && maxSalary != null && minSalary > maxSalary) {
+            throw new BadRequestException("minSalary: " + minSalary + " exceeds maxSalary: " + maxSalary);
+        }
+        final String eTag = employeeChangeCounter.current();
+        if (webRequest.checkNotModified(eTag(eTag, EmployeeFormat.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT)), false))) {
+            return null;
+        }
+        final int pageSize = limit == null ? defaultLimit : Math.min(limit, maxLimit);
+        final List<Employee> employees = employeeService.searchEmployees(
+                new EmployeeQuery(q, department, minSalary, maxSalary, after, pageSize));
+
+        final ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (employees.size() == pageSize) {
+            builder.header(HEADER_NEXT_CURSOR, String.valueOf(employees.get(pageSize - 1).getId()));
+        }
+        return builder.body(employees);
+    }
+
+    /**
+     * headcount and salary figures of all employees, from running aggregates instead of a table scan
+     *
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<EmployeeStatistics>}, null if not modified
+     */
+    @GetMapping("/employees/stats")
+    public ResponseEntity<EmployeeStatistics> getStatistics(WebRequest webRequest) {
+        final String eTag = employeeChangeCounter.current();
+        if (webRequest.checkNotModified(eTag(eTag, EmployeeFormat.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT)), false))) {
+            return null;
+        }
+        return ResponseEntity.ok(employeeService.getStatistics());
+    }
+
+    /**
+     * headcount and salary figures per department ordered by department
+     *
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<List<EmployeeStatistics>>}, null if not modified
+     */
+    @GetMapping("/employees/stats/by-department")
+    public ResponseEntity<List<EmployeeStatistics>> getStatisticsByDepartment(WebRequest webRequest) {
+        final String eTag = employeeChangeCounter.current();
+        if (webRequest.checkNotModified(eTag(eTag, EmployeeFormat.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT)), false))) {
+            return null;
+        }
+        return ResponseEntity.ok(employeeService.getStatisticsByDepartment());
+    }
+
+    /**
+     * compute the aggregates again from DB and replace the running ones
+     *
+     * @return {@link List<String>} departments whose figures had drifted from DB, empty if none
+     */
+    @PostMapping("/employees/stats/recompute")
+    public List<String> recomputeStatistics() {
+        return employeeService.recomputeStatistics();
+    }
+
+    /**
+     * export all employees as newline delimited JSON ordered by id
+     * rows are written to response while being read from DB, so memory usage does not depend on table size
+     *
+     * @return {@link ResponseEntity<StreamingResponseBody>}
+     */
+    @GetMapping(value = "/employees/export", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportEmployees() {
+        final ObjectWriter writer = objectMapper.writerFor(Employee.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        final StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                // lines are separated explicitly, no extra separator between root values
+                generator.setRootValueSeparator(null);
+                employeeService.exportEmployees(employee -> {
+                    try {
+                        writer.writeValue(generator, employee);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            log.info("Employees Exported Successfully");
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
 
     /**
      * retrieve certain employee by id
+     * the employee usually comes from cache, so a matching If-None-Match costs neither DB nor serialization
      *
      * @param employeeId {@link Long}
-     * @return {@link Employee}
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<byte[]>} employee in the format negotiated by Accept, null if not modified
      */
     @GetMapping("/employees/{employeeId}")
-    public Employee getEmployee(@PathVariable(name="employeeId")Long employeeId) {
-        return employeeService.getEmployee(employeeId);
+    public ResponseEntity<byte[]> getEmployee(@PathVariable(name="employeeId")Long employeeId,
+                                              WebRequest webRequest) {
+        final EmployeeFormat format = EmployeeFormat.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT));
+        final Employee employee = employeeResponseCoalescer.coalesce(
+                "employee:" + employeeChangeCounter.current() + ":" + employeeId,
+                () -> employeeService.getEmployee(employeeId));
+        final String version = String.valueOf(employee.getVersion());
+        final ResponseEntity<byte[]> notModified = notModified(webRequest, version, format);
+        if (notModified != null) {
+            return notModified;
+        }
+        final EncodedResponse response = employeeResponseCoalescer.coalesce(
+                "employee:" + format + ":" + version + ":" + employeeId,
+                () -> employeeResponseCache.employee(employee, format));
+        return encoded(response, webRequest);
     }
 
     /**
@@ -51,6 +260,26 @@ public class EmployeeController {
         log.info("Employee Saved Successfully");
     }
 
+    /**
+     * persist employees in one transaction with JDBC batching
+     * employees with id would be updated, others would be inserted
+     *
+     * @param employees {@link List<Employee>}
+     * @return {@link List<Long>} ids of persisted employees in the same order as request
+     * @throws {@link BadRequestException} if size of employees exceeds batch max size
+     */
+    @PostMapping("/employees/batch")
+    public List<Long> saveEmployees(@RequestBody List<Employee> employees){
+        if (employees.size() > batchMaxSize) {
+            throw new BadRequestException("size: " + employees.size() + " exceeds " + batchMaxSize);
+        }
+        final List<Long> ids = employeeService.saveEmployees(employees).stream()
+                .map(Employee::getId)
+                .collect(Collectors.toList());
+        log.info("{} Employees Saved Successfully", ids.size());
+        return ids;
+    }
+
     /**
      * delete certain employee
      *
@@ -63,16 +292,162 @@ public class EmployeeController {
     }
 
     /**
-     * update certain employee by id
+     * update certain employee by id, all fields are replaced
+     * the version to update is taken from If-Match, or from version of the employee if absent
      *
      * @param employee {@link Employee}
      * @param employeeId {@link Long}
+     * @param ifMatch {@link String} ETag of the version to update
+     * @return {@link ResponseEntity<Void>} with ETag of the updated version if the version was given
+     * @throws {@link PreconditionFailedException} if the version is not the current one
      */
     @PutMapping("/employees/{employeeId}")
-    public void updateEmployee(@RequestBody Employee employee,
-                               @PathVariable(name="employeeId")Long employeeId){
+    public ResponseEntity<Void> updateEmployee(@RequestBody Employee employee,
+                                               @PathVariable(name="employeeId")Long employeeId,
+                                               @RequestHeader(name=HttpHeaders.IF_MATCH, required=false) String ifMatch){
+        return updated(employeeService.updateEmployee(versioned(employee, employeeId, ifMatch)));
+    }
+
+    /**
+     * update certain employee by id, only fields present in the request are changed
+     * the version to update is taken from If-Match, or from version of the employee if absent
+     *
+     * @param changes {@link Employee}
+     * @param employeeId {@link Long}
+     * @param ifMatch {@link String} ETag of the version to update
+     * @return {@link ResponseEntity<Void>} with ETag of the updated version if the version was given
+     * @throws {@link PreconditionFailedException} if the version is not the current one
+     */
+    @PatchMapping("/employees/{employeeId}")
+    public ResponseEntity<Void> patchEmployee(@RequestBody Employee changes,
+                                              @PathVariable(name="employeeId")Long employeeId,
+                                              @RequestHeader(name=HttpHeaders.IF_MATCH, required=false) String ifMatch){
+        return updated(employeeService.patchEmployee(versioned(changes, employeeId, ifMatch)));
+    }
+
+    static Employee versioned(Employee employee, Long employeeId, String ifMatch) {
         employee.setId(employeeId);
-        employeeService.updateEmployee(employee);
+        if (ifMatch != null && !"*".equals(ifMatch.trim())) {
+            employee.setVersion(parseVersion(ifMatch));
+        }
+        return employee;
+    }
+
+    static ResponseEntity<Void> updated(Employee employee) {
+        log.info("Employee Updated Successfully");
+        // the new version is only known when the update was based on a version
+        if (employee.getVersion() == null) {
+            return ResponseEntity.ok().build();
+        }
+        return ResponseEntity.ok().eTag(String.valueOf(employee.getVersion())).build();
+    }
+
+    /**
+     * strong ETag of one representation, different formats and codings of the same version are different bodies,
+     * so they must not share an ETag, or a cache holding one would revalidate it for another
+     * JSON in identity coding keeps the bare tag, and If-Match only looks at the version in front
+     *
+     * @param tag {@link String} version of an employee or change counter of all employees
+     * @param format {@link EmployeeFormat} of the body
+     * @param gzip whether the body is gzip encoded
+     * @return {@link String} ETag, for example 3-protobuf-gzip
+     */
+    static String eTag(String tag, EmployeeFormat format, boolean gzip) {
+        final StringBuilder builder = new StringBuilder(tag);
+        if (format != EmployeeFormat.JSON) {
+            builder.append('-').append(format.name().toLowerCase());
+        }
+        if (gzip) {
+            builder.append("-gzip");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * check If-None-Match before reading or encoding a body
+     * whether the body would be gzip encoded is only known once encoded, so both codings are candidates
+     *
+     * @param webRequest {@link WebRequest}
+     * @param tag {@link String} version of an employee or change counter of all employees
+     * @param format {@link EmployeeFormat} negotiated by Accept
+     * @return {@link ResponseEntity<byte[]>} 304 with the matching ETag, null if none matches
+     */
+    static ResponseEntity<byte[]> notModified(WebRequest webRequest, String tag, EmployeeFormat format) {
+        return acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING))
+                ? notModified(webRequest, eTag(tag, format, false), eTag(tag, format, true))
+                : notModified(webRequest, eTag(tag, format, false));
+    }
+
+    /**
+     * If-None-Match is compared weakly, like spring does, with any of the candidates
+     *
+     * @param webRequest {@link WebRequest}
+     * @param eTags {@link String} ETags of representations the request could be answered by
+     * @param <T> type of the body the request would be answered by
+     * @return {@link ResponseEntity<T>} 304 with the matching ETag, null if none matches
+     */
+    static <T> ResponseEntity<T> notModified(WebRequest webRequest, String... eTags) {
+        final String ifNoneMatch = webRequest.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            for (String eTag : eTags) {
+                if (value.equals("*") || value.equals("\"" + eTag + "\"")) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static ResponseEntity<byte[]> encoded(EncodedResponse response, WebRequest webRequest) {
+        final ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(response.getFormat().getMediaType());
+        if (response.getNextCursor() != null) {
+            builder.header(HEADER_NEXT_CURSOR, response.getNextCursor());
+        }
+        if (response.getGzipBody() == null) {
+            return builder.eTag(eTag(response.getETag(), response.getFormat(), false))
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(response.getBody());
+        }
+        builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (!acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return builder.eTag(eTag(response.getETag(), response.getFormat(), false)).body(response.getBody());
+        }
+        return builder.eTag(eTag(response.getETag(), response.getFormat(), true))
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip").body(response.getGzipBody());
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+                // gzip;q=0 refuses it explicitly
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static Long parseVersion(String eTag) {
+        final String value = eTag.trim();
+        try {
+            // weak ETags never match for updates, format and coding after the version do not matter
+            final Matcher matcher = VERSION_ETAG.matcher(value);
+            if (matcher.matches()) {
+                return Long.valueOf(matcher.group(1));
+            }
+        } catch (NumberFormatException e) {
+            // fall through, an ETag this API did not issue
+        }
+        throw new PreconditionFailedException("If-Match: " + eTag + " does not match any version");
     }
 
 }
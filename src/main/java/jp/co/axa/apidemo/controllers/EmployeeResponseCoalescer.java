@@ -0,0 +1,105 @@
+package jp.co.axa.apidemo.controllers;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jp.co.axa.apidemo.cache.EncodedResponse;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * single-flight layer between {@link EmployeeController} and {@link EmployeeService} for reads
+ *
+ * the first request of a key runs the read, usually encoding its result as well, in its own thread,
+ * identical requests arriving meanwhile wait for the same {@link CompletableFuture} instead of reading again,
+ * and all of them are answered by the same result, or by the same exception
+ * the flight is over as soon as it completes, encoded bodies are kept by {@link jp.co.axa.apidemo.cache.EmployeeResponseCache}
+ *
+ * keys carry the change counter of employees, so a request arriving after a write never joins a read started before it
+ * reads, joins and flights in progress are published as coalescer.* metrics
+ */
+@Component
+public class EmployeeResponseCoalescer implements MeterBinder {
+
+    /**
+     * name of the coalescer in metrics
+     */
+    public static final String NAME = "employeeResponses";
+
+    private final Map<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+
+    /**
+     * run read unless an identical one is in flight, in which case wait for its result
+     *
+     * @param key {@link String} identity of the request, including the change counter, distinct for each type of result
+     * @param read {@link Supplier<T>} read, and encode if the result is an {@link EncodedResponse}
+     * @param <T> type of the result
+     * @return {@link T} shared by all requests of the flight, read only
+     * @throws RuntimeException thrown by read, to every request of the flight
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T coalesce(String key, Supplier<T> read) {
+        final CompletableFuture<Object> flight = new CompletableFuture<>();
+        final CompletableFuture<Object> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            joins.increment();
+            try {
+                return (T) inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        reads.increment();
+        try {
+            final T result = read.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return number of reads run, one per flight
+     */
+    public long reads() {
+        return reads.sum();
+    }
+
+    /**
+     * @return number of requests answered by a read of another request
+     */
+    public long joins() {
+        return joins.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("coalescer.reads", reads, LongAdder::sum)
+                .tag("name", NAME)
+                .description("reads run, one per flight")
+                .register(registry);
+        FunctionCounter.builder("coalescer.joins", joins, LongAdder::sum)
+                .tag("name", NAME)
+                .description("requests answered by a read of another request")
+                .register(registry);
+        Gauge.builder("coalescer.flights", flights, Map::size)
+                .tag("name", NAME)
+                .description("reads in progress")
+                .register(registry);
+    }
+}
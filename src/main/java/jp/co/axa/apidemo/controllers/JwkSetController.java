@@ -0,0 +1,59 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.security.SigningKeys;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * public keys verifying access tokens as JWK set (RFC 7517), open to anyone
+ *
+ * resource servers cache keys by kid and come back only for a kid they have not seen
+ */
+@RestController
+@RequiredArgsConstructor
+public class JwkSetController {
+
+    public static final String PATH = "/.well-known/jwks.json";
+
+    private final SigningKeys signingKeys;
+
+    /**
+     * @return {@link Map} of keys
+     */
+    @GetMapping(PATH)
+    public ResponseEntity<Map<String, List<Map<String, String>>>> getKeys() {
+        final List<Map<String, String>> keys = signingKeys.all().stream().map(key -> {
+            final Map<String, String> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("kid", key.getKid());
+            jwk.put("use", "sig");
+            jwk.put("alg", "RS256");
+            jwk.put("n", base64Url(key.getPublicKey().getModulus()));
+            jwk.put("e", base64Url(key.getPublicKey().getPublicExponent()));
+            return jwk;
+        }).collect(Collectors.toList());
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES))
+                .body(Collections.singletonMap("keys", keys));
+    }
+
+    private String base64Url(BigInteger value) {
+        final byte[] bytes = value.toByteArray();
+        // unsigned big-endian, without the sign byte
+        final byte[] unsigned = bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsigned);
+    }
+}
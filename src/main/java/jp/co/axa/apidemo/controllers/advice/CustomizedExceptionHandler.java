@@ -1,20 +1,29 @@
 package jp.co.axa.apidemo.controllers.advice;
 
 import jp.co.axa.apidemo.controllers.ControllerScanBase;
+import jp.co.axa.apidemo.exception.BadRequestException;
+import jp.co.axa.apidemo.exception.GatewayTimeoutException;
+import jp.co.axa.apidemo.exception.PreconditionFailedException;
 import jp.co.axa.apidemo.exception.ResourceNotFoundException;
+import jp.co.axa.apidemo.exception.ServiceUnavailableException;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.http.HttpServletRequest;
+import java.sql.SQLTransientConnectionException;
 
 /**
  * global exception handler
@@ -31,6 +40,7 @@ import javax.servlet.http.HttpServletRequest;
 public class CustomizedExceptionHandler {
 
     private static final HttpHeaders httpHeaders = new HttpHeaders();
+    private static final String RETRY_AFTER_SECONDS = "1";
 
     static {
         httpHeaders.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
@@ -50,9 +60,85 @@ public class CustomizedExceptionHandler {
         return responseEntity(HttpStatus.NOT_FOUND, ex);
     }
 
+    /**
+     * handler for BadRequestException
+     * response status would be 400
+     *
+     * @param ex {@link BadRequestException}
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<Object>}
+     */
+    @ExceptionHandler({ BadRequestException.class })
+    public ResponseEntity<Object> badRequest(BadRequestException ex, WebRequest webRequest) {
+        log.warn(formLog(HttpStatus.BAD_REQUEST, webRequest), ex);
+        return responseEntity(HttpStatus.BAD_REQUEST, ex);
+    }
+
+    /**
+     * handler for PreconditionFailedException and failures of optimistic locking
+     * response status would be 412
+     *
+     * @param ex {@link Exception}
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<Object>}
+     */
+    @ExceptionHandler({ PreconditionFailedException.class, OptimisticLockingFailureException.class })
+    public ResponseEntity<Object> preconditionFailed(Exception ex, WebRequest webRequest) {
+        log.warn(formLog(HttpStatus.PRECONDITION_FAILED, webRequest), ex);
+        return responseEntity(HttpStatus.PRECONDITION_FAILED, ex);
+    }
+
+    /**
+     * handler for HttpMediaTypeNotAcceptableException, mostly protobuf asked for a response without a message
+     * response status would be 406, the message is in JSON as every error
+     *
+     * @param ex {@link HttpMediaTypeNotAcceptableException}
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<Object>}
+     */
+    @ExceptionHandler({ HttpMediaTypeNotAcceptableException.class })
+    public ResponseEntity<Object> notAcceptable(HttpMediaTypeNotAcceptableException ex, WebRequest webRequest) {
+        log.warn(formLog(HttpStatus.NOT_ACCEPTABLE, webRequest), ex);
+        return responseEntity(HttpStatus.NOT_ACCEPTABLE, ex);
+    }
+
+    /**
+     * handler for failures to get a connection, mostly the pool running out of connections
+     * within its connection timeout, and for ServiceUnavailableException of async requests not started yet
+     * response status would be 503, with Retry-After
+     *
+     * @param ex {@link Exception}
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<Object>}
+     */
+    @ExceptionHandler({ ServiceUnavailableException.class,
+            CannotCreateTransactionException.class, DataAccessResourceFailureException.class })
+    public ResponseEntity<Object> serviceUnavailable(Exception ex, WebRequest webRequest) {
+        log.warn(formLog(HttpStatus.SERVICE_UNAVAILABLE, webRequest), ex);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .headers(httpHeaders)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(new Msg(ex.getMessage()));
+    }
+
+    /**
+     * handler for GatewayTimeoutException of async requests whose call started but did not complete in time
+     * response status would be 504 without Retry-After, since the call may have been applied
+     *
+     * @param ex {@link GatewayTimeoutException}
+     * @param webRequest {@link WebRequest}
+     * @return {@link ResponseEntity<Object>}
+     */
+    @ExceptionHandler({ GatewayTimeoutException.class })
+    public ResponseEntity<Object> gatewayTimeout(GatewayTimeoutException ex, WebRequest webRequest) {
+        log.warn(formLog(HttpStatus.GATEWAY_TIMEOUT, webRequest), ex);
+        return responseEntity(HttpStatus.GATEWAY_TIMEOUT, ex);
+    }
+
     /**
      * handler for other exceptions
-     * response status would be 500
+     * response status would be 500, or 503 if a connection was not available,
+     * which surfaces as a failed rollback when the connection is first needed to flush
      *
      * @param ex {@link Exception}
      * @param webRequest {@link WebRequest}
@@ -60,6 +146,9 @@ public class CustomizedExceptionHandler {
      */
     @ExceptionHandler({ Exception.class })
     public ResponseEntity<Object> internalError(Exception ex, WebRequest webRequest) {
+        if (causedBy(ex, SQLTransientConnectionException.class)) {
+            return serviceUnavailable(ex, webRequest);
+        }
         log.error(formLog(HttpStatus.INTERNAL_SERVER_ERROR, webRequest), ex);
         return responseEntity(HttpStatus.INTERNAL_SERVER_ERROR, ex);
     }
@@ -71,6 +160,15 @@ public class CustomizedExceptionHandler {
                 .body(new Msg(ex.getMessage()));
     }
 
+    private static boolean causedBy(Throwable ex, Class<? extends Throwable> type) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String formLog(HttpStatus status, WebRequest webRequest) {
         final HttpServletRequest request = ((ServletWebRequest) webRequest).getRequest();
         return status.toString() + " : [" + request.getMethod() + "] " + request.getRequestURI();
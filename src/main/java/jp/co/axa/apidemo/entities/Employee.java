@@ -2,25 +2,62 @@ package jp.co.axa.apidemo.entities;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 /**
  * entity class mapped to the table of EMPLOYEE
+ *
+ * id is allocated from a pooled sequence instead of an identity column,
+ * so hibernate knows ids before insert and is able to batch inserts
+ *
+ * version is incremented by every update, which makes updates optimistic
+ * and serves as ETag of the employee
+ *
+ * updates of managed employees only write changed columns
+ *
+ * employees are kept in the second-level cache region of REGION, read-write so that
+ * a transaction never reads an entry being changed by another
+ *
+ * the table and its indexes are created by migrations in db/migration, indexes are declared here
+ * only to document them, since hibernate neither creates nor validates them
  */
 @Entity
-@Table(name="EMPLOYEE")
+@DynamicUpdate
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Employee.REGION)
+@Table(name="EMPLOYEE", indexes = {
+        @Index(name = "IDX_EMPLOYEE_DEPARTMENT", columnList = "DEPARTMENT"),
+        @Index(name = "IDX_EMPLOYEE_DEPARTMENT_SALARY", columnList = "DEPARTMENT, EMPLOYEE_SALARY"),
+        @Index(name = "IDX_EMPLOYEE_NAME", columnList = "EMPLOYEE_NAME")
+})
 public class Employee {
 
+    /**
+     * number of ids reserved by one sequence call, should equal to increment of EMPLOYEE_SEQ
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * second-level cache region of employees
+     */
+    public static final String REGION = "employee";
+
     @Getter
     @Setter
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator = "employee_seq")
+    @SequenceGenerator(name = "employee_seq", sequenceName = "EMPLOYEE_SEQ", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Getter
@@ -38,4 +75,10 @@ public class Employee {
     @Column(name="DEPARTMENT")
     private String department;
 
+    @Getter
+    @Setter
+    @Version
+    @Column(name="VERSION")
+    private Long version;
+
 }
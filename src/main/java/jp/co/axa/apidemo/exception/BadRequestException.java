@@ -0,0 +1,25 @@
+package jp.co.axa.apidemo.exception;
+
+/**
+ * customized exception, would be thrown if request parameters are invalid
+ */
+public class BadRequestException extends BaseException {
+    public BadRequestException() {
+    }
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+
+    public BadRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public BadRequestException(Throwable cause) {
+        super(cause);
+    }
+
+    public BadRequestException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,26 @@
+package jp.co.axa.apidemo.exception;
+
+/**
+ * customized exception, would be thrown if a request started being served but did not complete in time,
+ * unlike {@link ServiceUnavailableException} it may have taken effect, so it is not safe to retry blindly
+ */
+public class GatewayTimeoutException extends BaseException {
+    public GatewayTimeoutException() {
+    }
+
+    public GatewayTimeoutException(String message) {
+        super(message);
+    }
+
+    public GatewayTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public GatewayTimeoutException(Throwable cause) {
+        super(cause);
+    }
+
+    public GatewayTimeoutException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,25 @@
+package jp.co.axa.apidemo.exception;
+
+/**
+ * customized exception, would be thrown if the version a request is based on is not the current one
+ */
+public class PreconditionFailedException extends BaseException {
+    public PreconditionFailedException() {
+    }
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+
+    public PreconditionFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public PreconditionFailedException(Throwable cause) {
+        super(cause);
+    }
+
+    public PreconditionFailedException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,25 @@
+package jp.co.axa.apidemo.exception;
+
+/**
+ * customized exception, would be thrown if a request could not be served in time or at all because of load
+ */
+public class ServiceUnavailableException extends BaseException {
+    public ServiceUnavailableException() {
+    }
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ServiceUnavailableException(Throwable cause) {
+        super(cause);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
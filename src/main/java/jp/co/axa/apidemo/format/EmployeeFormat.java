@@ -0,0 +1,58 @@
+package jp.co.axa.apidemo.format;
+
+import lombok.Getter;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+/**
+ * representations of employees chosen by Accept, JSON unless a binary one is asked for
+ *
+ * Smile and CBOR are binary JSON, so they carry every response a JSON one does,
+ * protobuf only carries employees and lists of employees, see proto/employee.proto
+ */
+@Getter
+public enum EmployeeFormat {
+
+    JSON(MediaType.APPLICATION_JSON_UTF8),
+    SMILE(new MediaType("application", "x-jackson-smile")),
+    CBOR(new MediaType("application", "cbor")),
+    PROTOBUF(new MediaType("application", "x-protobuf"));
+
+    private final MediaType mediaType;
+
+    EmployeeFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * the most preferred format by quality and specificity, JSON for wildcards, unknown types or no Accept
+     *
+     * @param accept {@link String} value of Accept header, nullable
+     * @return {@link EmployeeFormat}
+     */
+    public static EmployeeFormat negotiate(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        final List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            if (mediaType.getQualityValue() == 0) {
+                continue;
+            }
+            for (EmployeeFormat format : values()) {
+                if (mediaType.includes(format.mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+}
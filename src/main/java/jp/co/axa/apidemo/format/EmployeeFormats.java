@@ -0,0 +1,142 @@
+package jp.co.axa.apidemo.format;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jp.co.axa.apidemo.entities.Employee;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * encoders and decoders of employees in every {@link EmployeeFormat}
+ *
+ * JSON is written by the object mapper of spring boot, Smile and CBOR by mappers built like it,
+ * protobuf by a mapper bound to messages of {@value SCHEMA}, where a list is wrapped in EmployeeList
+ */
+@Component
+public class EmployeeFormats {
+
+    /**
+     * classpath resource of the protobuf schema
+     */
+    public static final String SCHEMA = "proto/employee.proto";
+
+    private final Map<EmployeeFormat, ObjectMapper> mappers = new EnumMap<>(EmployeeFormat.class);
+    private final ObjectWriter employeeWriter;
+    private final ObjectWriter employeeListWriter;
+    private final ObjectReader employeeReader;
+    private final ObjectReader employeeListReader;
+
+    /**
+     * @param objectMapper {@link ObjectMapper} of JSON
+     * @param builder {@link Jackson2ObjectMapperBuilder} to build mappers of binary formats like the JSON one
+     * @throws IOException if the protobuf schema could not be read
+     */
+    public EmployeeFormats(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder builder) throws IOException {
+        mappers.put(EmployeeFormat.JSON, objectMapper);
+        mappers.put(EmployeeFormat.SMILE, builder.factory(new SmileFactory()).build());
+        mappers.put(EmployeeFormat.CBOR, builder.factory(new CBORFactory()).build());
+        final ObjectMapper protobufMapper = builder.factory(new ProtobufFactory()).build();
+        mappers.put(EmployeeFormat.PROTOBUF, protobufMapper);
+
+        final URL schemaUrl = Objects.requireNonNull(getClass().getClassLoader().getResource(SCHEMA), SCHEMA);
+        final NativeProtobufSchema schema = ProtobufSchemaLoader.std.loadNative(schemaUrl);
+        employeeWriter = protobufMapper.writerFor(Employee.class).with(schema.forType("Employee"));
+        employeeListWriter = protobufMapper.writerFor(EmployeeList.class).with(schema.forType("EmployeeList"));
+        employeeReader = protobufMapper.readerFor(Employee.class).with(schema.forType("Employee"));
+        employeeListReader = protobufMapper.readerFor(EmployeeList.class).with(schema.forType("EmployeeList"));
+    }
+
+    /**
+     * @param format {@link EmployeeFormat} other than protobuf, which needs a schema for each type
+     * @return {@link ObjectMapper} of format
+     */
+    public ObjectMapper mapper(EmployeeFormat format) {
+        return mappers.get(format);
+    }
+
+    /**
+     * @param value {@link Object} to encode, an {@link Employee} or a collection of them for protobuf
+     * @param format {@link EmployeeFormat}
+     * @return {@link byte[]} encoded value
+     * @throws IllegalArgumentException if protobuf has no message for value
+     */
+    public byte[] write(Object value, EmployeeFormat format) {
+        try {
+            if (format != EmployeeFormat.PROTOBUF) {
+                return mappers.get(format).writeValueAsBytes(value);
+            }
+            if (value instanceof Employee) {
+                return employeeWriter.writeValueAsBytes(value);
+            }
+            if (isEmployees(value)) {
+                @SuppressWarnings("unchecked")
+                final Collection<Employee> employees = (Collection<Employee>) value;
+                return employeeListWriter.writeValueAsBytes(new EmployeeList(new ArrayList<>(employees)));
+            }
+            throw new IllegalArgumentException(value.getClass() + " has no protobuf message");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param type {@link JavaType} {@link Employee} or a collection of them
+     * @param input {@link InputStream} an Employee or EmployeeList message
+     * @return {@link Object} decoded employee, or {@link List<Employee>}
+     * @throws IOException if input is not a message of type
+     */
+    public Object readProtobuf(JavaType type, InputStream input) throws IOException {
+        if (type.isCollectionLikeType()) {
+            final EmployeeList list = employeeListReader.readValue(input);
+            return list.getEmployees() == null ? new ArrayList<Employee>() : list.getEmployees();
+        }
+        return employeeReader.readValue(input);
+    }
+
+    /**
+     * @param type {@link JavaType}
+     * @return true if protobuf has a message for type
+     */
+    public static boolean hasProtobufMessage(JavaType type) {
+        return Employee.class.isAssignableFrom(type.getRawClass())
+                || (type.isCollectionLikeType() && Employee.class.isAssignableFrom(type.getContentType().getRawClass()));
+    }
+
+    private static boolean isEmployees(Object value) {
+        return value instanceof Collection
+                && ((Collection<?>) value).stream().allMatch(element -> element instanceof Employee);
+    }
+
+    /**
+     * message EmployeeList of {@value SCHEMA}
+     */
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Getter
+    @Setter
+    static class EmployeeList {
+        private List<Employee> employees;
+    }
+}
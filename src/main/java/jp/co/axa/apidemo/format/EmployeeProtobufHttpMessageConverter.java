@@ -0,0 +1,74 @@
+package jp.co.axa.apidemo.format;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * reads and writes employees and lists of employees as application/x-protobuf, see {@link EmployeeFormats}
+ *
+ * other types have no message in the schema, so requests for them in protobuf are not acceptable
+ */
+public class EmployeeProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    private final EmployeeFormats employeeFormats;
+
+    /**
+     * @param employeeFormats {@link EmployeeFormats}
+     */
+    public EmployeeProtobufHttpMessageConverter(EmployeeFormats employeeFormats) {
+        super(EmployeeFormat.PROTOBUF.getMediaType());
+        this.employeeFormats = employeeFormats;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Employee.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return canRead(mediaType) && EmployeeFormats.hasProtobufMessage(javaType(type, contextClass));
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return canWrite(mediaType) && EmployeeFormats.hasProtobufMessage(javaType(type == null ? clazz : type, null));
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return read(javaType(type, contextClass), inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(javaType(clazz, null), inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(employeeFormats.write(value, EmployeeFormat.PROTOBUF));
+    }
+
+    private Object read(JavaType type, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return employeeFormats.readProtobuf(type, inputMessage.getBody());
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("invalid protobuf message: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    private static JavaType javaType(Type type, Class<?> contextClass) {
+        return TypeFactory.defaultInstance().constructType(GenericTypeResolver.resolveType(type, contextClass));
+    }
+}
@@ -1,12 +1,102 @@
 package jp.co.axa.apidemo.repositories;
 
 import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 /**
  * repository layer, entrust implementation to JPA
  */
 @Repository
-public interface EmployeeRepository extends JpaRepository<Employee,Long> {
+public interface EmployeeRepository extends JpaRepository<Employee,Long>, EmployeeRepositoryCustom {
+
+    /**
+     * number of rows fetched from JDBC driver per round trip when streaming
+     */
+    int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * keyset pagination on primary key
+     * only the rows after the given id would be read by walking the primary key index,
+     * so the cost does not depend on how deep the page is
+     * pages are kept in the query cache until employees change
+     *
+     * @param id {@link Long} exclusive lower bound of id
+     * @param pageable {@link Pageable} only page size is used, page number should always be 0
+     * @return {@link List<Employee>} at most page size employees ordered by id
+     */
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<Employee> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * retrieve all ids in ascending order, which only needs to read the primary key index
+     * kept in the query cache until employees change
+     *
+     * @return {@link List<Long>}
+     */
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select e.id from Employee e order by e.id")
+    List<Long> findAllIds();
+
+    /**
+     * keyset pagination of one department, rows of the department are looked up in IDX_EMPLOYEE_DEPARTMENT
+     *
+     * @param department {@link String}
+     * @param id {@link Long} exclusive lower bound of id
+     * @param pageable {@link Pageable} only page size is used, page number should always be 0
+     * @return {@link List<Employee>} at most page size employees of the department ordered by id
+     */
+    List<Employee> findByDepartmentAndIdGreaterThanOrderByIdAsc(String department, Long id, Pageable pageable);
+
+    /**
+     * employees of one department within an inclusive salary range, one range scan of IDX_EMPLOYEE_DEPARTMENT_SALARY
+     *
+     * @param department {@link String}
+     * @param minSalary {@link Integer}
+     * @param maxSalary {@link Integer}
+     * @return {@link List<Employee>} ordered by salary
+     */
+    List<Employee> findByDepartmentAndSalaryBetweenOrderBySalaryAsc(String department, Integer minSalary, Integer maxSalary);
+
+    /**
+     * employees whose name starts with prefix, one range scan of IDX_EMPLOYEE_NAME
+     *
+     * @param prefix {@link String} case sensitive
+     * @param pageable {@link Pageable}
+     * @return {@link List<Employee>} ordered by name
+     */
+    List<Employee> findByNameStartingWithOrderByNameAsc(String prefix, Pageable pageable);
+
+    /**
+     * count employees of one department from IDX_EMPLOYEE_DEPARTMENT without reading their rows
+     *
+     * @param department {@link String}
+     * @return {@link Long}
+     */
+    long countByDepartment(String department);
+
+    /**
+     * stream all employees ordered by id
+     * rows are fetched lazily from an open cursor, the caller must consume the stream
+     * inside a transaction and close it afterwards
+     *
+     * @return {@link Stream<Employee>}
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select e from Employee e order by e.id")
+    Stream<Employee> streamAllByOrderByIdAsc();
 }
@@ -0,0 +1,34 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+/**
+ * repository methods which can not be derived or declared by a query, see {@link EmployeeRepositoryImpl}
+ */
+public interface EmployeeRepositoryCustom {
+
+    /**
+     * replace all fields of the employee with one UPDATE statement and increment its version,
+     * without loading it first, the number of updated rows tells whether it exists
+     * if version is given, only the row at that version is updated
+     *
+     * persistence context is not aware of this update, so it must not hold the employee
+     *
+     * @param id {@link Long}
+     * @param version {@link Long} expected current version, null to update any version
+     * @param name {@link String}
+     * @param salary {@link Integer}
+     * @param department {@link String}
+     * @return {@link Integer} number of updated rows, 0 if there is no such row at such version
+     */
+    int updateById(Long id, Long version, String name, Integer salary, String department);
+
+    /**
+     * update only non-null fields of the employee with one UPDATE statement and increment its version
+     * if version is given, only the row at that version is updated
+     *
+     * @param changes {@link Employee} id, optional version and fields to change
+     * @return {@link Integer} number of updated rows, 0 if there is no such row at such version
+     */
+    int updatePartially(Employee changes);
+}
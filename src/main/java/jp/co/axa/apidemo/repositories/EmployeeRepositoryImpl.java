@@ -0,0 +1,106 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.cache.AfterCommit;
+import jp.co.axa.apidemo.entities.Employee;
+import org.hibernate.Cache;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * implementation of {@link EmployeeRepositoryCustom}, mixed into {@link EmployeeRepository} by spring data
+ *
+ * UPDATEs are plain SQL statements run through the session instead of bulk JPQL,
+ * since hibernate clears the whole employee region and all cached queries on any bulk update,
+ * here only the updated employee and the cached queries are evicted, once right away for this transaction
+ * and once more after commit, for readers which cached the old row meanwhile
+ *
+ * the partial UPDATE is built per call, so that columns absent from the request are neither bound nor written
+ */
+public class EmployeeRepositoryImpl implements EmployeeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int updateById(Long id, Long version, String name, Integer salary, String department) {
+        final List<Object> values = new ArrayList<>();
+        values.add(name);
+        values.add(salary);
+        values.add(department);
+        return update("update EMPLOYEE set EMPLOYEE_NAME = ?, EMPLOYEE_SALARY = ?, DEPARTMENT = ?,", values, id, version);
+    }
+
+    @Override
+    @Transactional
+    public int updatePartially(Employee changes) {
+        final StringBuilder sql = new StringBuilder("update EMPLOYEE set");
+        final List<Object> values = new ArrayList<>();
+        if (changes.getName() != null) {
+            sql.append(" EMPLOYEE_NAME = ?,");
+            values.add(changes.getName());
+        }
+        if (changes.getSalary() != null) {
+            sql.append(" EMPLOYEE_SALARY = ?,");
+            values.add(changes.getSalary());
+        }
+        if (changes.getDepartment() != null) {
+            sql.append(" DEPARTMENT = ?,");
+            values.add(changes.getDepartment());
+        }
+        return update(sql.toString(), values, changes.getId(), changes.getVersion());
+    }
+
+    /**
+     * @param set {@link String} UPDATE up to assignments of changed columns, each followed by a comma
+     * @param values {@link List<Object>} values of changed columns
+     * @param id {@link Long}
+     * @param version {@link Long} expected current version, null to update any version
+     * @return {@link Integer} number of updated rows
+     */
+    private int update(String set, List<Object> values, Long id, Long version) {
+        // pending changes of this session are flushed first, as hibernate does before bulk updates
+        entityManager.flush();
+        final String sql = set + " VERSION = VERSION + 1 where ID = ?" + (version == null ? "" : " and VERSION = ?");
+        final SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        final JdbcCoordinator jdbc = session.getJdbcCoordinator();
+        final int updated;
+        // prepared by hibernate, so that the statement is logged and counted by statistics like others
+        final PreparedStatement statement = jdbc.getStatementPreparer().prepareStatement(sql);
+        try {
+            int index = 1;
+            for (Object value : values) {
+                statement.setObject(index++, value);
+            }
+            statement.setLong(index++, id);
+            if (version != null) {
+                statement.setLong(index, version);
+            }
+            updated = jdbc.getResultSetReturn().executeUpdate(statement);
+        } catch (SQLException e) {
+            throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "could not update employee", sql);
+        } finally {
+            jdbc.getLogicalConnection().getResourceRegistry().release(statement);
+            jdbc.afterStatementExecution();
+        }
+        if (updated > 0) {
+            final Cache cache = session.getFactory().getCache();
+            evict(cache, id);
+            AfterCommit.run(() -> evict(cache, id));
+        }
+        return updated;
+    }
+
+    private static void evict(Cache cache, Long id) {
+        cache.evictEntityData(Employee.class, id);
+        cache.evictQueryRegions();
+    }
+}
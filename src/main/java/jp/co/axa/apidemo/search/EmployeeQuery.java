@@ -0,0 +1,64 @@
+package jp.co.axa.apidemo.search;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * filters of employee search, all given filters have to match
+ *
+ * text matches employees having every word of it in their name or department, case insensitive,
+ * department matches exactly, salary range is inclusive
+ * results are ordered by id, after and limit page them like the list of employees
+ */
+@Getter
+public class EmployeeQuery {
+
+    private final String[] terms;
+    private final String department;
+    private final Integer minSalary;
+    private final Integer maxSalary;
+    private final long after;
+    private final int limit;
+
+    /**
+     * @param text {@link String} words to match, null or blank for any
+     * @param department {@link String} null for any
+     * @param minSalary {@link Integer} null for no lower bound
+     * @param maxSalary {@link Integer} null for no upper bound
+     * @param after {@link Long} exclusive cursor, null from the beginning
+     * @param limit {@link Integer} max number of results
+     */
+    public EmployeeQuery(String text, String department, Integer minSalary, Integer maxSalary, Long after, int limit) {
+        this.terms = tokenize(text);
+        this.department = department;
+        this.minSalary = minSalary;
+        this.maxSalary = maxSalary;
+        this.after = after == null ? 0L : after;
+        this.limit = limit;
+    }
+
+    /**
+     * @return {@link Boolean} true if there is a salary bound
+     */
+    public boolean hasSalaryRange() {
+        return minSalary != null || maxSalary != null;
+    }
+
+    /**
+     * split text into distinct lower case words of letters and digits
+     *
+     * @param text {@link String} nullable
+     * @return {@link String[]}
+     */
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,402 @@
+package jp.co.axa.apidemo.search;
+
+import jp.co.axa.apidemo.cache.AfterCommit;
+import jp.co.axa.apidemo.cache.RemoteInvalidationEvent;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * in-memory inverted index of employees for {@link EmployeeQuery}
+ *
+ * words of name and department, and departments, map to ascending postings lists of ids,
+ * salaries map to postings lists in a sorted map, so a salary range is a sub map
+ * a query walks the shortest postings list matching one of its filters from the cursor on,
+ * and checks the other filters on the indexed fields of each candidate until the page is full
+ * ids of a salary range are spread over many lists and have to be sorted before walking,
+ * so the range drives the walk only if it holds a few pages of ids at most
+ *
+ * the index is built from DB on startup and maintained incrementally by write paths after commit,
+ * writes of other nodes are reloaded from DB on their cache invalidations
+ * changes during a rebuild are applied to both the old and the new index, so none of them is lost
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmployeeSearchIndex {
+
+    private static final String CACHE_NAME = "employees";
+    /**
+     * pages of ids a salary range could hold at most to be sorted and walked instead of the shortest postings list
+     */
+    private static final int RANGE_WALK_PAGES = 16;
+
+    private final EmployeeRepository employeeRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Inverted inverted = new Inverted();
+    private List<Consumer<Inverted>> pending;
+
+    /**
+     * @param query {@link EmployeeQuery}
+     * @return {@link List<Long>} ids of matching employees in ascending order, at most limit of query
+     */
+    public List<Long> search(EmployeeQuery query) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return inverted.search(query);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * index employees as they are after current transaction commits, replacing what was indexed for them
+     *
+     * @param employees {@link Collection<Employee>} inserted or fully updated employees
+     */
+    public void put(Collection<Employee> employees) {
+        final List<Document> documents = employees.stream().map(Document::new).collect(Collectors.toList());
+        AfterCommit.run(() -> change(index -> documents.forEach(index::put)));
+    }
+
+    /**
+     * change indexed fields given by changes after current transaction commits, others stay as they are
+     *
+     * @param changes {@link Employee} id and fields to change, null fields are not changed
+     */
+    public void patch(Employee changes) {
+        final Document patch = new Document(changes);
+        AfterCommit.run(() -> change(index -> index.patch(patch)));
+    }
+
+    /**
+     * remove the employee from the index after current transaction commits
+     *
+     * @param id {@link Long} deleted id
+     */
+    public void remove(Long id) {
+        AfterCommit.run(() -> change(index -> index.remove(id)));
+    }
+
+    /**
+     * build the index on startup, a failure leaves it empty instead of stopping the application
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.error("failed to build search index", e);
+        }
+    }
+
+    /**
+     * build the index again from all employees in DB, searches are served by the old one meanwhile
+     */
+    public synchronized void rebuild() {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            writeLock.unlock();
+        }
+
+        final Inverted rebuilt = new Inverted();
+        try {
+            new TransactionTemplate(transactionManager).execute(status -> {
+                try (Stream<Employee> employees = employeeRepository.streamAllByOrderByIdAsc()) {
+                    employees.forEach(employee -> rebuilt.put(new Document(employee)));
+                }
+                return null;
+            });
+            writeLock.lock();
+            try {
+                pending.forEach(change -> change.accept(rebuilt));
+                inverted = rebuilt;
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            writeLock.lock();
+            try {
+                pending = null;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        log.info("search index of {} employees built", rebuilt.size());
+    }
+
+    /**
+     * employees changed by other nodes are loaded again
+     *
+     * @param event {@link RemoteInvalidationEvent}
+     */
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.getMessage().getCleared().contains(CACHE_NAME)) {
+            rebuild();
+            return;
+        }
+        final Set<Object> keys = event.getMessage().getKeys().get(CACHE_NAME);
+        if (keys == null) {
+            return;
+        }
+        final Set<Long> ids = keys.stream()
+                .filter(Long.class::isInstance)
+                .map(Long.class::cast)
+                .collect(Collectors.toSet());
+        final List<Employee> employees = employeeRepository.findAllById(ids);
+        final Set<Long> removed = new HashSet<>(ids);
+        employees.forEach(employee -> removed.remove(employee.getId()));
+        put(employees);
+        removed.forEach(this::remove);
+    }
+
+    private void change(Consumer<Inverted> change) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            change.accept(inverted);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * indexed fields of one employee
+     */
+    private static class Document {
+        private final long id;
+        private final String name;
+        private final String department;
+        private final Integer salary;
+        private String[] terms;
+
+        Document(Employee employee) {
+            this(employee.getId(), employee.getName(), employee.getDepartment(), employee.getSalary());
+        }
+
+        Document(long id, String name, String department, Integer salary) {
+            this.id = id;
+            this.name = name;
+            this.department = department;
+            this.salary = salary;
+        }
+
+        String[] terms() {
+            if (terms == null) {
+                terms = Stream.of(EmployeeQuery.tokenize(name), EmployeeQuery.tokenize(department))
+                        .flatMap(Arrays::stream)
+                        .distinct()
+                        .toArray(String[]::new);
+            }
+            return terms;
+        }
+
+        boolean matches(EmployeeQuery query) {
+            for (String term : query.getTerms()) {
+                if (!contains(terms(), term)) {
+                    return false;
+                }
+            }
+            if (query.getDepartment() != null && !query.getDepartment().equals(department)) {
+                return false;
+            }
+            if (query.hasSalaryRange()) {
+                if (salary == null) {
+                    return false;
+                }
+                return (query.getMinSalary() == null || salary >= query.getMinSalary())
+                        && (query.getMaxSalary() == null || salary <= query.getMaxSalary());
+            }
+            return true;
+        }
+
+        private static boolean contains(String[] terms, String term) {
+            for (String candidate : terms) {
+                if (candidate.equals(term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * the index itself, guarded by the lock
+     */
+    private static class Inverted {
+        private final Map<Long, Document> documents = new HashMap<>();
+        private final LongPostings all = new LongPostings();
+        private final Map<String, LongPostings> terms = new HashMap<>();
+        private final Map<String, LongPostings> departments = new HashMap<>();
+        private final NavigableMap<Integer, LongPostings> salaries = new TreeMap<>();
+
+        int size() {
+            return documents.size();
+        }
+
+        void put(Document document) {
+            remove(document.id);
+            documents.put(document.id, document);
+            all.add(document.id);
+            for (String term : document.terms()) {
+                terms.computeIfAbsent(term, key -> new LongPostings()).add(document.id);
+            }
+            if (document.department != null) {
+                departments.computeIfAbsent(document.department, key -> new LongPostings()).add(document.id);
+            }
+            if (document.salary != null) {
+                salaries.computeIfAbsent(document.salary, key -> new LongPostings()).add(document.id);
+            }
+        }
+
+        void patch(Document patch) {
+            final Document existing = documents.get(patch.id);
+            if (existing == null) {
+                return;
+            }
+            put(new Document(patch.id,
+                    patch.name != null ? patch.name : existing.name,
+                    patch.department != null ? patch.department : existing.department,
+                    patch.salary != null ? patch.salary : existing.salary));
+        }
+
+        void remove(Long id) {
+            final Document document = documents.remove(id);
+            if (document == null) {
+                return;
+            }
+            all.remove(id);
+            for (String term : document.terms()) {
+                removePosting(terms, term, id);
+            }
+            if (document.department != null) {
+                removePosting(departments, document.department, id);
+            }
+            if (document.salary != null) {
+                removePosting(salaries, document.salary, id);
+            }
+        }
+
+        List<Long> search(EmployeeQuery query) {
+            // the shortest postings list of all filters drives the walk, a missing one means no result
+            LongPostings shortest = all;
+            for (String term : query.getTerms()) {
+                shortest = shorter(shortest, terms.get(term));
+            }
+            if (query.getDepartment() != null) {
+                shortest = shorter(shortest, departments.get(query.getDepartment()));
+            }
+            if (shortest == null) {
+                return Collections.emptyList();
+            }
+            if (query.hasSalaryRange()) {
+                final NavigableMap<Integer, LongPostings> range = salaryRange(query);
+                final int bound = (int) Math.min(shortest.size(), (long) query.getLimit() * RANGE_WALK_PAGES + 1);
+                if (count(range, bound) < bound) {
+                    return walk(range, query);
+                }
+            }
+            return walk(shortest, query);
+        }
+
+        private List<Long> walk(LongPostings postings, EmployeeQuery query) {
+            final List<Long> ids = new ArrayList<>(Math.min(query.getLimit(), postings.size()));
+            for (int i = postings.indexAfter(query.getAfter()); i < postings.size() && ids.size() < query.getLimit(); i++) {
+                final long id = postings.get(i);
+                if (documents.get(id).matches(query)) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+
+        private List<Long> walk(NavigableMap<Integer, LongPostings> range, EmployeeQuery query) {
+            long[] candidates = new long[16];
+            int size = 0;
+            for (LongPostings postings : range.values()) {
+                for (int i = postings.indexAfter(query.getAfter()); i < postings.size(); i++) {
+                    if (size == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, size * 2);
+                    }
+                    candidates[size++] = postings.get(i);
+                }
+            }
+            Arrays.sort(candidates, 0, size);
+            final List<Long> ids = new ArrayList<>(Math.min(query.getLimit(), size));
+            for (int i = 0; i < size && ids.size() < query.getLimit(); i++) {
+                if (documents.get(candidates[i]).matches(query)) {
+                    ids.add(candidates[i]);
+                }
+            }
+            return ids;
+        }
+
+        private NavigableMap<Integer, LongPostings> salaryRange(EmployeeQuery query) {
+            final int min = query.getMinSalary() == null ? Integer.MIN_VALUE : query.getMinSalary();
+            final int max = query.getMaxSalary() == null ? Integer.MAX_VALUE : query.getMaxSalary();
+            return min > max ? Collections.emptyNavigableMap() : salaries.subMap(min, true, max, true);
+        }
+
+        /**
+         * @return {@link Integer} number of ids in range, counting stops once it reaches bound
+         */
+        private int count(NavigableMap<Integer, LongPostings> range, int bound) {
+            int count = 0;
+            for (LongPostings postings : range.values()) {
+                count += postings.size();
+                if (count >= bound) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        private static LongPostings shorter(LongPostings shortest, LongPostings postings) {
+            if (shortest == null || postings == null) {
+                return null;
+            }
+            return postings.size() < shortest.size() ? postings : shortest;
+        }
+
+        private static <K> void removePosting(Map<K, LongPostings> map, K key, long id) {
+            final LongPostings postings = map.get(key);
+            if (postings != null && postings.remove(id) && postings.size() == 0) {
+                map.remove(key);
+            }
+        }
+    }
+}
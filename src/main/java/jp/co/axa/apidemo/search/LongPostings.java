@@ -0,0 +1,84 @@
+package jp.co.axa.apidemo.search;
+
+import java.util.Arrays;
+
+/**
+ * ascending set of ids in a growable primitive array, the postings list of one term
+ *
+ * ids mostly arrive in ascending order, which appends without moving anything,
+ * others are inserted by binary search
+ * not thread safe, guarded by the lock of {@link EmployeeSearchIndex}
+ */
+class LongPostings {
+
+    private long[] ids = new long[1];
+    private int size;
+
+    /**
+     * @param id {@link Long}
+     * @return {@link Boolean} true if it was not there
+     */
+    boolean add(long id) {
+        if (size == 0 || ids[size - 1] < id) {
+            grow();
+            ids[size++] = id;
+            return true;
+        }
+        final int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            return false;
+        }
+        final int insertion = -index - 1;
+        grow();
+        System.arraycopy(ids, insertion, ids, insertion + 1, size - insertion);
+        ids[insertion] = id;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param id {@link Long}
+     * @return {@link Boolean} true if it was there
+     */
+    boolean remove(long id) {
+        final int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long get(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @param id {@link Long}
+     * @return {@link Integer} index of the first id greater than the given one
+     */
+    int indexAfter(long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (ids[middle] <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void grow() {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package jp.co.axa.apidemo.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * password encoder remembering successful verifications of a slow delegate, such as bcrypt
+ *
+ * a credential verified once is matched again by an HMAC-SHA256 digest of the raw and encoded password
+ * instead of another bcrypt round, until it expires
+ * the HMAC key is random for each process, so remembered digests are useless outside of it
+ * failed verifications are never remembered, guessing passwords stays as slow as the delegate
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final PasswordEncoder delegate;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    @Getter
+    private final Cache<String, Boolean> verified;
+
+    /**
+     * number of verifications done by the delegate
+     */
+    @Getter
+    private final LongAdder delegateMatches = new LongAdder();
+
+    /**
+     * @param delegate {@link PasswordEncoder} slow encoder to remember verifications of
+     * @param expiry {@link Duration} to remember a verification
+     * @param maxSize {@link Long} max number of remembered verifications
+     */
+    public CachingPasswordEncoder(PasswordEncoder delegate, Duration expiry, long maxSize) {
+        this.delegate = delegate;
+        final byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.verified = Caffeine.newBuilder()
+                .expireAfterWrite(expiry)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+        final String digest = digest(rawPassword, encodedPassword);
+        if (verified.getIfPresent(digest) != null) {
+            return true;
+        }
+        delegateMatches.increment();
+        final boolean matches = delegate.matches(rawPassword, encodedPassword);
+        if (matches) {
+            verified.put(digest, Boolean.TRUE);
+        }
+        return matches;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private String digest(CharSequence rawPassword, String encodedPassword) {
+        final Mac mac = macs.get();
+        mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return Base64.getEncoder().encodeToString(mac.doFinal(rawPassword.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
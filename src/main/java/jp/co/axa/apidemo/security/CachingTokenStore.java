@@ -0,0 +1,179 @@
+package jp.co.axa.apidemo.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * token store remembering access tokens verified by its delegate, such as a JWT token store
+ *
+ * the delegate checks the signature and parses the token on every read,
+ * here a verified token and its authentication are kept under a SHA-256 digest of the token until the token expires,
+ * so repeated calls with the same token skip both
+ * invalid tokens are never remembered
+ */
+public class CachingTokenStore implements TokenStore {
+
+    private final TokenStore delegate;
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(CachingTokenStore::newDigest);
+
+    @Getter
+    private final Cache<String, Verified> verified;
+
+    /**
+     * @param delegate {@link TokenStore} verifying tokens
+     * @param maxAge {@link Duration} to remember a token without expiration at most
+     * @param maxSize {@link Long} max number of remembered tokens
+     */
+    public CachingTokenStore(TokenStore delegate, Duration maxAge, long maxSize) {
+        this.delegate = delegate;
+        this.verified = Caffeine.newBuilder()
+                .expireAfter(new UntilExpiration(maxAge.toNanos()))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return verify(tokenValue).getAccessToken();
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    /**
+     * @param token {@link String}
+     * @return {@link OAuth2Authentication} a copy, since callers set request details on it
+     */
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        final OAuth2Authentication authentication = verify(token).getAuthentication();
+        return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        delegate.storeAccessToken(token, authentication);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        verified.invalidate(digest(token.getValue()));
+        delegate.removeAccessToken(token);
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        delegate.storeRefreshToken(refreshToken, authentication);
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return delegate.readRefreshToken(tokenValue);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        return delegate.readAuthenticationForRefreshToken(token);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        delegate.removeRefreshToken(token);
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        return delegate.getAccessToken(authentication);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return delegate.findTokensByClientIdAndUserName(clientId, userName);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return delegate.findTokensByClientId(clientId);
+    }
+
+    private Verified verify(String tokenValue) {
+        // the delegate throws on invalid tokens, nothing is cached then
+        return verified.get(digest(tokenValue), key -> {
+            final OAuth2AccessToken accessToken = delegate.readAccessToken(tokenValue);
+            return new Verified(accessToken, delegate.readAuthentication(accessToken));
+        });
+    }
+
+    private String digest(String tokenValue) {
+        return Base64.getEncoder().encodeToString(digests.get().digest(tokenValue.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * an access token and its authentication, both verified by the delegate
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Verified {
+        private final OAuth2AccessToken accessToken;
+        private final OAuth2Authentication authentication;
+    }
+
+    /**
+     * expire each token at its own expiration, or after max age
+     */
+    @RequiredArgsConstructor
+    private static class UntilExpiration implements Expiry<String, Verified> {
+
+        private final long maxAgeNanos;
+
+        @Override
+        public long expireAfterCreate(String key, Verified value, long currentTime) {
+            if (value.getAccessToken().getExpiration() == null) {
+                return maxAgeNanos;
+            }
+            final long millis = value.getAccessToken().getExpiration().getTime() - System.currentTimeMillis();
+            return Math.max(0, Math.min(maxAgeNanos, TimeUnit.MILLISECONDS.toNanos(millis)));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Verified value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Verified value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package jp.co.axa.apidemo.security;
+
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JWT converter signing with the current key of {@link SigningKeys} by RS256,
+ * the kid header of a token tells which key verifies it
+ */
+public class RotatingJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+    private static final String KID = "kid";
+
+    private final SigningKeys signingKeys;
+    private final JsonParser jsonParser = JsonParserFactory.create();
+
+    /**
+     * @param signingKeys {@link SigningKeys}
+     */
+    public RotatingJwtAccessTokenConverter(SigningKeys signingKeys) {
+        this.signingKeys = signingKeys;
+    }
+
+    @Override
+    protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        final String content;
+        try {
+            content = jsonParser.formatMap(getAccessTokenConverter().convertAccessToken(accessToken, authentication));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot convert access token to JSON", e);
+        }
+        final SigningKeys.SigningKey key = signingKeys.current();
+        return JwtHelper.encode(content, key.getSigner(), Collections.singletonMap(KID, key.getKid())).getEncoded();
+    }
+
+    @Override
+    protected Map<String, Object> decode(String token) {
+        final SigningKeys.SigningKey key;
+        try {
+            key = signingKeys.get(JwtHelper.headers(token).get(KID));
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot read headers of token", e);
+        }
+        if (key == null) {
+            throw new InvalidTokenException("Token is signed by unknown or retired key");
+        }
+        try {
+            final Jwt jwt = JwtHelper.decodeAndVerify(token, key.getVerifier());
+            final Map<String, Object> claims = jsonParser.parseMap(jwt.getClaims());
+            if (claims.get(AccessTokenConverter.EXP) instanceof Integer) {
+                claims.put(AccessTokenConverter.EXP, ((Integer) claims.get(AccessTokenConverter.EXP)).longValue());
+            }
+            getJwtClaimsSetVerifier().verify(claims);
+            return claims;
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    /**
+     * the current public key for /oauth/token_key, older keys are in the JWK set
+     */
+    @Override
+    public Map<String, String> getKey() {
+        final SigningKeys.SigningKey key = signingKeys.current();
+        final Map<String, String> result = new HashMap<>();
+        result.put("alg", key.getSigner().algorithm());
+        result.put(KID, key.getKid());
+        result.put("value", "-----BEGIN PUBLIC KEY-----\n"
+                + Base64.getMimeEncoder().encodeToString(key.getPublicKey().getEncoded())
+                + "\n-----END PUBLIC KEY-----");
+        return result;
+    }
+
+    @Override
+    public boolean isPublic() {
+        return true;
+    }
+}
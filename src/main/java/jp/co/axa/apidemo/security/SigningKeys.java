@@ -0,0 +1,157 @@
+package jp.co.axa.apidemo.security;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RSA key pairs signing access tokens, identified by kid
+ *
+ * tokens are signed by the current key, which is replaced by a new one every rotation interval
+ * a replaced key keeps verifying tokens for the retention, at least the validity of tokens,
+ * so rotation does not reject tokens in flight
+ * private keys never leave the process, public keys are published as JWK set
+ */
+@Slf4j
+public class SigningKeys implements DisposableBean {
+
+    private final int keySize;
+    private final Duration retention;
+    private final Clock clock;
+    private final Map<String, SigningKey> keys = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService rotator;
+
+    private volatile SigningKey current;
+
+    /**
+     * @param keySize {@link Integer} bits of RSA keys
+     * @param rotation {@link Duration} to replace the current key, keys are never replaced if zero
+     * @param retention {@link Duration} to keep verifying with a replaced key
+     * @param clock {@link Clock}
+     */
+    public SigningKeys(int keySize, Duration rotation, Duration retention, Clock clock) {
+        this.keySize = keySize;
+        this.retention = retention;
+        this.clock = clock;
+        rotate();
+        if (rotation.isZero()) {
+            this.rotator = null;
+            return;
+        }
+        this.rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "signing-key-rotator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rotator.scheduleAtFixedRate(this::rotate, rotation.toMillis(), rotation.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@link SigningKey} to sign new tokens with
+     */
+    public SigningKey current() {
+        return current;
+    }
+
+    /**
+     * @param kid {@link String}
+     * @return {@link SigningKey} to verify a token signed under the kid, null if unknown or beyond retention
+     */
+    public SigningKey get(String kid) {
+        final SigningKey key = kid == null ? null : keys.get(kid);
+        return key == null || key.isExpired(clock.instant()) ? null : key;
+    }
+
+    /**
+     * @return {@link List} of keys still verifying tokens, the current one first
+     */
+    public List<SigningKey> all() {
+        final Instant now = clock.instant();
+        final List<SigningKey> all = new ArrayList<>(keys.size());
+        final SigningKey signing = current;
+        all.add(signing);
+        keys.values().stream().filter(key -> key != signing && !key.isExpired(now)).forEach(all::add);
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * replace the current key by a new one, and drop keys beyond retention
+     *
+     * @return {@link SigningKey} the new current key
+     */
+    public synchronized SigningKey rotate() {
+        final Instant now = clock.instant();
+        final SigningKey key = new SigningKey(UUID.randomUUID().toString(), generate());
+        keys.put(key.getKid(), key);
+        final SigningKey previous = current;
+        current = key;
+        if (previous != null) {
+            previous.expiresAt = now.plus(retention);
+        }
+        keys.values().removeIf(retired -> retired.isExpired(now));
+        log.info("signing key rotated to {}", key.getKid());
+        return key;
+    }
+
+    @Override
+    public void destroy() {
+        if (rotator != null) {
+            rotator.shutdownNow();
+        }
+    }
+
+    private KeyPair generate() {
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(keySize);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA is not available", e);
+        }
+    }
+
+    /**
+     * one RSA key pair with its signer and verifier
+     */
+    @Getter
+    public static class SigningKey {
+        private final String kid;
+        private final RSAPublicKey publicKey;
+        private final RsaSigner signer;
+        private final RsaVerifier verifier;
+
+        private volatile Instant expiresAt;
+
+        SigningKey(String kid, KeyPair keyPair) {
+            this.kid = kid;
+            this.publicKey = (RSAPublicKey) keyPair.getPublic();
+            this.signer = new RsaSigner((RSAPrivateKey) keyPair.getPrivate());
+            this.verifier = new RsaVerifier(publicKey);
+        }
+
+        boolean isExpired(Instant now) {
+            final Instant expiresAt = this.expiresAt;
+            return expiresAt != null && !now.isBefore(expiresAt);
+        }
+    }
+}
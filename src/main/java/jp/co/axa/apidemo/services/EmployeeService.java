@@ -1,8 +1,11 @@
 package jp.co.axa.apidemo.services;
 
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.search.EmployeeQuery;
+import jp.co.axa.apidemo.stats.EmployeeStatistics;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * service layer interface
@@ -11,11 +14,27 @@ public interface EmployeeService {
 
     public List<Employee> retrieveEmployees();
 
+    public List<Employee> retrieveEmployees(Long after, int limit);
+
+    public List<Employee> searchEmployees(EmployeeQuery query);
+
+    public EmployeeStatistics getStatistics();
+
+    public List<EmployeeStatistics> getStatisticsByDepartment();
+
+    public List<String> recomputeStatistics();
+
+    public void exportEmployees(Consumer<Employee> consumer);
+
     public Employee getEmployee(Long employeeId);
 
     public Employee saveEmployee(Employee employee);
 
+    public List<Employee> saveEmployees(List<Employee> employees);
+
     public void deleteEmployee(Long employeeId);
 
     public Employee updateEmployee(Employee employee);
+
+    public Employee patchEmployee(Employee changes);
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package jp.co.axa.apidemo.services;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jp.co.axa.apidemo.exception.ServiceUnavailableException;
+import lombok.Getter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * runs calls of {@link EmployeeService} on threads of its own instead of the caller's,
+ * so servlet threads are free while the calls wait for DB
+ *
+ * there are as many threads as the primary pool has connections, more threads would only wait for connections,
+ * and a bounded queue, a call arriving at a full queue is rejected right away instead of piling up
+ * pool size, active threads, queued and completed calls are published as executor.* metrics
+ *
+ * not an {@link java.util.concurrent.Executor} itself, which would replace the task executor of spring boot
+ */
+@Component
+public class EmployeeServiceExecutor implements MeterBinder, DisposableBean {
+
+    /**
+     * name of the executor in metrics and thread names
+     */
+    public static final String NAME = "employeeServiceExecutor";
+
+    private final EmployeeService employeeService;
+
+    @Getter
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param employeeService {@link EmployeeService}
+     * @param dataSource {@link HikariDataSource} primary pool to size threads by
+     * @param queueCapacity {@link Integer} calls waiting for a thread at most
+     */
+    public EmployeeServiceExecutor(EmployeeService employeeService,
+                                   @Qualifier("primaryDataSource") HikariDataSource dataSource,
+                                   @Value("${customized.async.queueCapacity}") int queueCapacity) {
+        this.employeeService = employeeService;
+        final int threads = dataSource.getMaximumPoolSize();
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    final Thread thread = new Thread(runnable, NAME + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @param call {@link Function} of {@link EmployeeService}
+     * @param <T> result of call
+     * @return {@link CompletableFuture} completed by the result of call, or exceptionally by what it threw
+     * @throws {@link ServiceUnavailableException} if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Function<EmployeeService, T> call) {
+        try {
+            return CompletableFuture.supplyAsync(() -> call.apply(employeeService), executor);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException(executor.getQueue().size() + " calls are already waiting", e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new ExecutorServiceMetrics(executor, NAME, Tags.empty()).bindTo(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
@@ -1,20 +1,62 @@
 package jp.co.axa.apidemo.services;
 
+import jp.co.axa.apidemo.cache.AfterCommit;
+import jp.co.axa.apidemo.cache.EmployeeChangeCounter;
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
+import jp.co.axa.apidemo.cache.EmployeeResponseCache;
+import jp.co.axa.apidemo.cache.InvalidatingCache;
+import jp.co.axa.apidemo.config.ReadWriteRoutingDataSource;
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.PreconditionFailedException;
 import jp.co.axa.apidemo.exception.ResourceNotFoundException;
 import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.search.EmployeeQuery;
+import jp.co.axa.apidemo.search.EmployeeSearchIndex;
+import jp.co.axa.apidemo.stats.EmployeeAggregates;
+import jp.co.axa.apidemo.stats.EmployeeStatistics;
+import jp.co.axa.apidemo.writebehind.EmployeeWriteBehind;
+import jp.co.axa.apidemo.writebehind.StaleEmployeesEvent;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * service layer to support CRUD for employees' information
+ *
+ * reads run in read-only transactions: hibernate neither keeps snapshots of loaded employees
+ * nor flushes at commit, with a replica configured only the export is routed to it, since other reads fill caches,
+ * see {@link ReadWriteRoutingDataSource}
+ *
+ * with {@link EmployeeWriteBehind}, inserts and updates are only acknowledged here and written to DB later,
+ * they are visible through cache meanwhile, other writes write pending ones first
+ * writes it could not apply as acknowledged are undone here, see {@link #onStaleEmployees}
  */
 @Service
 @RequiredArgsConstructor
@@ -22,29 +64,146 @@ import java.util.List;
 public class EmployeeServiceImpl implements EmployeeService {
 
     private static final String NOT_FOUND_MSG = "id: %d does not exist";
+    private static final String VERSION_MISMATCH_MSG = "id: %d is at version %d, not %d";
+    private static final String STALE_VERSION_MSG = "id: %d is not at version %d";
+
+    /**
+     * max number of ids in one IN clause when loading employees missing from cache
+     */
+    private static final int LOAD_CHUNK_SIZE = 1000;
 
     private final EmployeeRepository employeeRepository;
+    private final CacheManager cacheManager;
+    private final EmployeeIdIndex employeeIdIndex;
+    private final EmployeeChangeCounter employeeChangeCounter;
+    private final EmployeeResponseCache employeeResponseCache;
+    private final EmployeeSearchIndex employeeSearchIndex;
+    private final EmployeeAggregates employeeAggregates;
+    private final Optional<EmployeeWriteBehind> employeeWriteBehind;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+    private Integer batchSize;
 
     /**
-     * retrieve all employees and cache them with key all
+     * retrieve all employees in order of id
+     *
+     * the result is assembled from employees cached one by one, following the cached index of ids,
+     * only employees missing from cache are loaded from DB and then cached
+     * so a write only costs the next read the changed rows instead of a full table scan
      *
      * @return {@link List<Employee>}
      */
-    @Cacheable(value = "employees", key="'all'")
+    @Transactional(readOnly = true)
     public List<Employee> retrieveEmployees() {
-        return employeeRepository.findAll();
+        return fetch(employeeIdIndex.getOrLoad(this::findAllIds));
+    }
+
+    /**
+     * retrieve at most limit employees whose id is greater than after, ordered by id
+     * result is not cached, since each page is a cheap range scan on primary key
+     * and caching every cursor would only fill the cache with overlapping lists
+     *
+     * @param after {@link Long} exclusive cursor, null means from the beginning
+     * @param limit page size
+     * @return {@link List<Employee>}
+     */
+    @Transactional(readOnly = true)
+    public List<Employee> retrieveEmployees(Long after, int limit) {
+        return employeeRepository.findByIdGreaterThanOrderByIdAsc(
+                after == null ? 0L : after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * search employees by the in-memory {@link EmployeeSearchIndex}, which only yields ids,
+     * the employees are assembled from cache like {@link #retrieveEmployees()}
+     *
+     * @param query {@link EmployeeQuery}
+     * @return {@link List<Employee>} matching employees ordered by id
+     */
+    @Transactional(readOnly = true)
+    public List<Employee> searchEmployees(EmployeeQuery query) {
+        return fetch(employeeSearchIndex.search(query));
+    }
+
+    /**
+     * headcount and salary figures of all employees, merged from the running {@link EmployeeAggregates}
+     * without touching DB, so no transaction is started
+     *
+     * @return {@link EmployeeStatistics}
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public EmployeeStatistics getStatistics() {
+        return employeeAggregates.total();
+    }
+
+    /**
+     * headcount and salary figures per department, see {@link #getStatistics()}
+     *
+     * @return {@link List<EmployeeStatistics>} ordered by department
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<EmployeeStatistics> getStatisticsByDepartment() {
+        return employeeAggregates.byDepartment();
+    }
+
+    /**
+     * compute the aggregates again from all employees in DB, to check the running ones for drift
+     *
+     * @return {@link List<String>} departments whose figures had drifted, empty if none
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<String> recomputeStatistics() {
+        return employeeAggregates.recompute();
+    }
+
+    /**
+     * pass every employee to consumer one by one in order of id without materializing the whole table
+     * persistence context is cleared every {@link EmployeeRepository#STREAM_FETCH_SIZE} rows,
+     * so memory usage does not depend on table size
+     * nothing is cached here, because caching the whole table is exactly what should be avoided,
+     * which is also why it may be served by the replica, rows are kept out of the second-level cache as well
+     *
+     * @param consumer {@link Consumer<Employee>} would be called in the caller's thread
+     */
+    @Transactional(readOnly = true)
+    public void exportEmployees(Consumer<Employee> consumer) {
+        ReadWriteRoutingDataSource.onReplica(() -> {
+            // set on the session, since hint of the query only applies until its cursor is open
+            entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+            try (Stream<Employee> employees = employeeRepository.streamAllByOrderByIdAsc()) {
+                int count = 0;
+                for (Employee employee : (Iterable<Employee>) employees::iterator) {
+                    consumer.accept(employee);
+                    if (++count % EmployeeRepository.STREAM_FETCH_SIZE == 0) {
+                        entityManager.clear();
+                    }
+                }
+            }
+        });
     }
 
     /**
      * retrieve one certain employee according to employee id
      * use employee id as cache key
      *
+     * on concurrent misses of the same id only one caller loads it from DB and the others wait for that result,
+     * once cached it would be refreshed in background by {@link jp.co.axa.apidemo.cache.EmployeeCacheLoader}
+     * before expiry as long as it's read, so a hot employee never makes callers wait for DB
+     *
      * @param employeeId {@link Long}
      * @return {@link Employee} retrieve employee
      * @throws {@link ResourceNotFoundException} if employee does not exist
      */
-    @Cacheable(value = "employees", key = "#employeeId")
+    @Transactional(readOnly = true)
+    @Cacheable(value = "employees", key = "#employeeId", sync = true)
     public Employee getEmployee(Long employeeId) {
+        final Employee pending = employeeWriteBehind.map(writeBehind -> writeBehind.pending(employeeId)).orElse(null);
+        if (pending != null) {
+            return pending;
+        }
         return employeeRepository.findById(employeeId).orElseThrow(
                 () -> new ResourceNotFoundException(String.format(NOT_FOUND_MSG, employeeId))
         );
@@ -53,46 +212,253 @@ public class EmployeeServiceImpl implements EmployeeService {
     /**
      * persist employee to DB, cache the result
      * cache key would be employee id which would be issued and returned after insert
-     * since added new employee, it's necessary to invalidate cache for the result of retrieving all employees
+     * since added new employee, its id is added to the index of ids
+     * employee with id is updated like {@link #updateEmployee(Employee)}, and cached only if its version is known
      *
      * @param employee {@link Employee} to persist
      * @return {@link Employee} persisted one
+     * @throws {@link ResourceNotFoundException} if employee to update does not exist
+     * @throws {@link PreconditionFailedException} if version of employee to update is not the current one
      */
-    @CachePut(value = "employees", key = "#result.id")
-    @CacheEvict(value = "employees", key = "'all'")
+    @CachePut(value = "employees", key = "#result.id", unless = "#result.version == null")
     public Employee saveEmployee(Employee employee) {
-        return employeeRepository.save(employee);
+        if (employee.getId() != null) {
+            return updateEmployee(employee);
+        }
+        final Employee saved = employeeWriteBehind.isPresent()
+                ? employeeWriteBehind.get().insert(employee)
+                : employeeRepository.save(employee);
+        employeeIdIndex.add(Collections.singleton(saved.getId()));
+        employeeSearchIndex.put(Collections.singleton(saved));
+        employeeAggregates.put(Collections.singleton(saved));
+        employeeResponseCache.evict(Collections.singleton(saved.getId()));
+        employeeChangeCounter.increment();
+        return saved;
+    }
+
+    /**
+     * persist employees to DB in JDBC batches within one transaction
+     * employees with id are updated, others are inserted with ids allocated from the pooled sequence
+     * every chunk of batch size is flushed and cleared, so persistence context does not grow with input size
+     *
+     * cache is maintained once for the whole batch: all ids are added to the index of ids at once,
+     * updated employees are evicted and would be cached again on next read, inserted ones are not cached
+     *
+     * @param employees {@link List<Employee>} to persist
+     * @return {@link List<Employee>} persisted ones in the same order as input
+     * @throws {@link ResourceNotFoundException} if any employee to update does not exist
+     * @throws {@link PreconditionFailedException} if version of any employee to update is not the current one
+     */
+    public List<Employee> saveEmployees(List<Employee> employees) {
+        employeeWriteBehind.ifPresent(EmployeeWriteBehind::flush);
+        final List<Employee> saved = new ArrayList<>(employees.size());
+        final List<Long> updatedIds = new ArrayList<>();
+
+        for (int from = 0; from < employees.size(); from += batchSize) {
+            final List<Employee> chunk = employees.subList(from, Math.min(from + batchSize, employees.size()));
+            final Set<Long> ids = chunk.stream()
+                    .map(Employee::getId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+
+            final Map<Long, Employee> existing = new HashMap<>();
+            if (!ids.isEmpty()) {
+                // load existing rows with one query, instead of selecting them one by one
+                employeeRepository.findAllById(ids).forEach(employee -> existing.put(employee.getId(), employee));
+                if (existing.size() != ids.size()) {
+                    ids.removeAll(existing.keySet());
+                    throw new ResourceNotFoundException(String.format(NOT_FOUND_MSG, ids.iterator().next()));
+                }
+                updatedIds.addAll(ids);
+            }
+
+            for (Employee employee : chunk) {
+                if (employee.getId() == null) {
+                    saved.add(employeeRepository.save(employee));
+                } else {
+                    saved.add(copy(employee, existing.get(employee.getId())));
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+        }
+
+        final Cache cache = employeeCache();
+        updatedIds.forEach(cache::evict);
+        employeeIdIndex.add(saved.stream().map(Employee::getId).collect(Collectors.toList()));
+        employeeSearchIndex.put(saved);
+        employeeAggregates.put(saved);
+        employeeResponseCache.evict(updatedIds);
+        employeeChangeCounter.increment();
+        return saved;
     }
 
     /**
      * delete certain employee according to employee id
      * since deleted certain employee, it's necessary to invalidate cache
-     * for that certain one and the result of retrieving all employees
+     * for that certain one and remove its id from the index of ids
      *
      * @param employeeId {@link Long}
      */
-    @Caching(evict = {
-            @CacheEvict(value = "employees", key = "#employeeId"),
-            @CacheEvict(value = "employees", key = "'all'")
-    })
+    @CacheEvict(value = "employees", key = "#employeeId")
     public void deleteEmployee(Long employeeId) {
+        employeeWriteBehind.ifPresent(EmployeeWriteBehind::flush);
         employeeRepository.deleteById(employeeId);
+        employeeIdIndex.remove(employeeId);
+        employeeSearchIndex.remove(employeeId);
+        employeeAggregates.remove(employeeId);
+        employeeResponseCache.evict(Collections.singleton(employeeId));
+        employeeChangeCounter.increment();
     }
 
     /**
-     * update certain employee according to employee id and cache updated one
-     * since updated certain employee, it's necessary to invalidate cache for retrieving all employees
+     * replace all fields of certain employee according to employee id with one conditional UPDATE,
+     * see {@link EmployeeRepository#updateById}
+     * the cached employee is evicted after commit and would be cached again on next read,
+     * the index of ids does not change, since id of the employee stays the same
+     *
+     * if version is given, the update is optimistic: it fails unless the row is still at that version
+     *
+     * with write-behind, the update is checked against pending writes and cached as it is instead,
+     * and its new version is always known
      *
      * @param employee {@link Employee} to update
-     * @return {@link Employee} updated one
+     * @return {@link Employee} the given employee, with its new version if version was given
+     * @throws {@link ResourceNotFoundException} if employee does not exist
+     * @throws {@link PreconditionFailedException} if version of employee is not the current one
      */
-    @CachePut(value = "employees", key = "#result.id")
-    @CacheEvict(value = "employees", key = "'all'")
     public Employee updateEmployee(Employee employee) {
-        employeeRepository.findById(employee.getId()).orElseThrow(
-                () -> new ResourceNotFoundException(String.format(NOT_FOUND_MSG, employee.getId()))
-        );
+        if (employeeWriteBehind.isPresent()) {
+            final Employee updated = employeeWriteBehind.get().update(employee);
+            AfterCommit.run(() -> employeeCache().put(updated.getId(), updated));
+            employeeResponseCache.evict(Collections.singleton(updated.getId()));
+            employeeChangeCounter.increment();
+            employeeSearchIndex.put(Collections.singleton(updated));
+            employeeAggregates.put(Collections.singleton(updated));
+            return updated;
+        }
+        final int updated = employeeRepository.updateById(employee.getId(), employee.getVersion(),
+                employee.getName(), employee.getSalary(), employee.getDepartment());
+        afterUpdate(employee, updated);
+        employeeSearchIndex.put(Collections.singleton(employee));
+        employeeAggregates.put(Collections.singleton(employee));
+        return employee;
+    }
+
+    /**
+     * update only non-null fields of certain employee according to employee id with one UPDATE,
+     * see {@link EmployeeRepository#updatePartially}, otherwise the same as {@link #updateEmployee(Employee)}
+     *
+     * @param changes {@link Employee} id, optional version and fields to change
+     * @return {@link Employee} the given changes, with new version if version was given
+     * @throws {@link ResourceNotFoundException} if employee does not exist
+     * @throws {@link PreconditionFailedException} if version of employee is not the current one
+     */
+    public Employee patchEmployee(Employee changes) {
+        employeeWriteBehind.ifPresent(EmployeeWriteBehind::flush);
+        afterUpdate(changes, employeeRepository.updatePartially(changes));
+        employeeSearchIndex.patch(changes);
+        employeeAggregates.patch(changes);
+        return changes;
+    }
+
+    /**
+     * employees whose acknowledged writes were dead-lettered or written over by write-behind
+     * are evicted and loaded again from DB, with everything derived from them
+     *
+     * @param event {@link StaleEmployeesEvent}
+     */
+    @EventListener
+    public void onStaleEmployees(StaleEmployeesEvent event) {
+        final Collection<Long> ids = event.getIds();
+        final Cache cache = employeeCache();
+        ids.forEach(cache::evict);
+        final List<Employee> employees = employeeRepository.findAllById(ids);
+        final Set<Long> removed = new HashSet<>(ids);
+        employees.forEach(employee -> removed.remove(employee.getId()));
+        employeeSearchIndex.put(employees);
+        employeeAggregates.put(employees);
+        removed.forEach(id -> {
+            employeeIdIndex.remove(id);
+            employeeSearchIndex.remove(id);
+            employeeAggregates.remove(id);
+        });
+        employeeResponseCache.evict(ids);
+        employeeChangeCounter.increment();
+    }
+
+    private void afterUpdate(Employee employee, int updated) {
+        final Long id = employee.getId();
+        if (updated == 0) {
+            // only failures pay for telling a missing row from a stale version
+            if (employee.getVersion() != null && employeeRepository.existsById(id)) {
+                throw new PreconditionFailedException(String.format(STALE_VERSION_MSG, id, employee.getVersion()));
+            }
+            throw new ResourceNotFoundException(String.format(NOT_FOUND_MSG, id));
+        }
+        AfterCommit.run(() -> employeeCache().evict(id));
+        employeeResponseCache.evict(Collections.singleton(id));
+        employeeChangeCounter.increment();
+        if (employee.getVersion() != null) {
+            employee.setVersion(employee.getVersion() + 1);
+        }
+    }
+
+    private Collection<Long> findAllIds() {
+        final List<Long> ids = new ArrayList<>(employeeRepository.findAllIds());
+        // pending inserts are not in DB yet, the index would miss them until it's loaded again
+        employeeWriteBehind.ifPresent(writeBehind -> ids.addAll(writeBehind.pendingIds()));
+        return ids;
+    }
+
+    /**
+     * assemble employees of ids in the same order from cache,
+     * only employees missing from cache are loaded from DB and then cached, without telling other nodes
+     */
+    private List<Employee> fetch(Collection<Long> ids) {
+        final Cache cache = employeeCache();
+
+        final Map<Long, Employee> employees = new HashMap<>(ids.size() * 2);
+        final List<Long> missingIds = new ArrayList<>();
+        for (Long id : ids) {
+            final Cache.ValueWrapper wrapper = cache.get(id);
+            final Employee cached = wrapper != null && wrapper.get() != null
+                    ? (Employee) wrapper.get()
+                    : employeeWriteBehind.map(writeBehind -> writeBehind.pending(id)).orElse(null);
+            if (cached != null) {
+                employees.put(id, cached);
+            } else {
+                missingIds.add(id);
+            }
+        }
+
+        for (int from = 0; from < missingIds.size(); from += LOAD_CHUNK_SIZE) {
+            final List<Long> chunk = missingIds.subList(from, Math.min(from + LOAD_CHUNK_SIZE, missingIds.size()));
+            employeeRepository.findAllById(chunk).forEach(employee -> {
+                InvalidatingCache.populate(cache, employee.getId(), employee);
+                employees.put(employee.getId(), employee);
+            });
+        }
+
+        // ids whose rows are gone would simply be skipped, they'd be removed from index by delete path
+        return ids.stream()
+                .map(employees::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private Employee copy(Employee source, Employee target) {
+        if (source.getVersion() != null && !source.getVersion().equals(target.getVersion())) {
+            throw new PreconditionFailedException(String.format(VERSION_MISMATCH_MSG,
+                    target.getId(), target.getVersion(), source.getVersion()));
+        }
+        target.setName(source.getName());
+        target.setSalary(source.getSalary());
+        target.setDepartment(source.getDepartment());
+        return target;
+    }
 
-        return employeeRepository.save(employee);
+    private Cache employeeCache() {
+        return Objects.requireNonNull(cacheManager.getCache("employees"));
     }
 }
\ No newline at end of file
@@ -1,33 +1,56 @@
 package jp.co.axa.apidemo.services;
 
+import jp.co.axa.apidemo.config.CustomizedCredentialProperties;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * according to username, retrieve certain user to authenticate and authorize
  *
  * here we don't persist user info, just use in-memory info
+ * passwords are hashed once on startup, users of customized.credential.users come with precomputed hashes,
+ * so that looking up a user costs a map lookup instead of a bcrypt round
  */
 @Service
 public class UserDetailServiceImpl implements UserDetailsService {
 
-    @Value("${customized.credential.username}")
-    private String username;
-    @Value("${customized.credential.password}")
-    private String password;
+    private static final List<GrantedAuthority> AUTHORITIES = AuthorityUtils.commaSeparatedStringToAuthorityList("user");
+
+    private final Map<String, UserDetails> users;
+
+    public UserDetailServiceImpl(@Value("${customized.credential.username}") String username,
+                                 @Value("${customized.credential.password}") String password,
+                                 CustomizedCredentialProperties properties,
+                                 PasswordEncoder passwordEncoder) {
+        final Map<String, UserDetails> users = new HashMap<>();
+        properties.getUsers().forEach((name, hash) -> users.put(name, new User(name, hash, AUTHORITIES)));
+        users.put(username, new User(username, passwordEncoder.encode(password), AUTHORITIES));
+        this.users = Collections.unmodifiableMap(users);
+    }
 
+    /**
+     * @param username {@link String}
+     * @return {@link UserDetails} a copy, since spring security erases credentials of authenticated users
+     * @throws UsernameNotFoundException if there is no such user
+     */
     @Override
-    public UserDetails loadUserByUsername(String s) throws UsernameNotFoundException {
-        return new User(
-                username
-                , new BCryptPasswordEncoder().encode(password)
-                , AuthorityUtils.commaSeparatedStringToAuthorityList("user")
-        );
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        final UserDetails user = users.get(username);
+        if (user == null) {
+            throw new UsernameNotFoundException("username: " + username + " does not exist");
+        }
+        return User.withUserDetails(user).build();
     }
 }
@@ -0,0 +1,350 @@
+package jp.co.axa.apidemo.stats;
+
+import jp.co.axa.apidemo.cache.AfterCommit;
+import jp.co.axa.apidemo.cache.RemoteInvalidationEvent;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * running aggregates of employees per department, for {@link EmployeeStatistics} without scanning the table
+ *
+ * each department keeps its headcount, salary count and sum, salaries with their counts for exact min and max,
+ * and a {@link SalarySketch} for percentiles, figures of all employees are merged from departments on read,
+ * so a read costs the number of departments
+ * department and salary of each employee are kept as well, updates subtract what was added for the employee
+ *
+ * like {@link jp.co.axa.apidemo.search.EmployeeSearchIndex}, aggregates are built from DB on startup,
+ * maintained by write paths after commit and reloaded on cache invalidations of other nodes
+ * {@link #recompute()} builds them again from DB and reports departments that had drifted
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmployeeAggregates {
+
+    private static final String CACHE_NAME = "employees";
+    private static final int[] PERCENTILES = {50, 90, 95, 99};
+
+    private final EmployeeRepository employeeRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Aggregates aggregates = new Aggregates();
+    private List<Consumer<Aggregates>> pending;
+    private boolean built;
+
+    /**
+     * @return {@link EmployeeStatistics} of all employees
+     */
+    public EmployeeStatistics total() {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final Department total = new Department();
+            aggregates.departments.values().forEach(total::merge);
+            return total.toStatistics(null);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@link List<EmployeeStatistics>} one per department ordered by name, employees without one first
+     */
+    public List<EmployeeStatistics> byDepartment() {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return aggregates.departments.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey(Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .map(entry -> entry.getValue().toStatistics(entry.getKey()))
+                    .collect(Collectors.toList());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * count employees as they are after current transaction commits, replacing what was counted for them
+     *
+     * @param employees {@link Collection<Employee>} inserted or fully updated employees
+     */
+    public void put(Collection<Employee> employees) {
+        final Map<Long, Row> rows = new LinkedHashMap<>();
+        employees.forEach(employee -> rows.put(employee.getId(), new Row(employee.getDepartment(), employee.getSalary())));
+        AfterCommit.run(() -> change(target -> rows.forEach(target::put)));
+    }
+
+    /**
+     * change department and salary given by changes after current transaction commits, null ones stay as they are
+     *
+     * @param changes {@link Employee} id and fields to change
+     */
+    public void patch(Employee changes) {
+        final Long id = changes.getId();
+        final Row patch = new Row(changes.getDepartment(), changes.getSalary());
+        AfterCommit.run(() -> change(target -> target.patch(id, patch)));
+    }
+
+    /**
+     * stop counting the employee after current transaction commits
+     *
+     * @param id {@link Long} deleted id
+     */
+    public void remove(Long id) {
+        AfterCommit.run(() -> change(target -> target.remove(id)));
+    }
+
+    /**
+     * build aggregates on startup, a failure leaves them empty instead of stopping the application
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            recompute();
+        } catch (RuntimeException e) {
+            log.error("failed to build employee aggregates", e);
+        }
+    }
+
+    /**
+     * build aggregates again from all employees in DB and replace the running ones,
+     * reads are served by the running ones meanwhile
+     *
+     * @return {@link List<String>} departments whose exact figures differed from the running ones,
+     * empty on the first build
+     */
+    public synchronized List<String> recompute() {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            writeLock.unlock();
+        }
+
+        final Aggregates recomputed = new Aggregates();
+        final List<String> drifted;
+        try {
+            new TransactionTemplate(transactionManager).execute(status -> {
+                try (Stream<Employee> employees = employeeRepository.streamAllByOrderByIdAsc()) {
+                    employees.forEach(employee ->
+                            recomputed.put(employee.getId(), new Row(employee.getDepartment(), employee.getSalary())));
+                }
+                return null;
+            });
+            writeLock.lock();
+            try {
+                pending.forEach(change -> change.accept(recomputed));
+                drifted = built ? aggregates.drifted(recomputed) : Collections.emptyList();
+                aggregates = recomputed;
+                built = true;
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            writeLock.lock();
+            try {
+                pending = null;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        if (!drifted.isEmpty()) {
+            log.warn("employee aggregates of departments {} had drifted from DB", drifted);
+        }
+        log.info("employee aggregates of {} employees in {} departments built",
+                recomputed.rows.size(), recomputed.departments.size());
+        return drifted;
+    }
+
+    /**
+     * employees changed by other nodes are loaded again
+     *
+     * @param event {@link RemoteInvalidationEvent}
+     */
+    @EventListener
+    public void onRemoteInvalidation(RemoteInvalidationEvent event) {
+        if (event.getMessage().getCleared().contains(CACHE_NAME)) {
+            recompute();
+            return;
+        }
+        final Set<Object> keys = event.getMessage().getKeys().get(CACHE_NAME);
+        if (keys == null) {
+            return;
+        }
+        final Set<Long> ids = keys.stream()
+                .filter(Long.class::isInstance)
+                .map(Long.class::cast)
+                .collect(Collectors.toSet());
+        final List<Employee> employees = employeeRepository.findAllById(ids);
+        final Set<Long> removed = new HashSet<>(ids);
+        employees.forEach(employee -> removed.remove(employee.getId()));
+        put(employees);
+        removed.forEach(this::remove);
+    }
+
+    private void change(Consumer<Aggregates> change) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            change.accept(aggregates);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * counted fields of one employee
+     */
+    private static class Row {
+        private final String department;
+        private final Integer salary;
+
+        Row(String department, Integer salary) {
+            this.department = department;
+            this.salary = salary;
+        }
+    }
+
+    /**
+     * figures of one department, or of all employees when merged
+     */
+    private static class Department {
+        private long headcount;
+        private long salaryCount;
+        private long salarySum;
+        private final NavigableMap<Integer, Integer> salaries = new TreeMap<>();
+        private final SalarySketch sketch = new SalarySketch();
+
+        void add(Integer salary) {
+            headcount++;
+            if (salary != null) {
+                salaryCount++;
+                salarySum += salary;
+                salaries.merge(salary, 1, Integer::sum);
+                sketch.add(salary);
+            }
+        }
+
+        void remove(Integer salary) {
+            headcount--;
+            if (salary != null) {
+                salaryCount--;
+                salarySum -= salary;
+                salaries.computeIfPresent(salary, (key, count) -> count == 1 ? null : count - 1);
+                sketch.remove(salary);
+            }
+        }
+
+        /**
+         * add counts, sums and sketch of other, salaries are not merged since only their ends matter here
+         */
+        void merge(Department other) {
+            headcount += other.headcount;
+            salaryCount += other.salaryCount;
+            salarySum += other.salarySum;
+            if (!other.salaries.isEmpty()) {
+                salaries.merge(other.salaries.firstKey(), 1, Integer::sum);
+                salaries.merge(other.salaries.lastKey(), 1, Integer::sum);
+            }
+            sketch.merge(other.sketch);
+        }
+
+        EmployeeStatistics toStatistics(String department) {
+            final Map<String, Long> percentiles = new LinkedHashMap<>();
+            for (int percentile : PERCENTILES) {
+                percentiles.put("p" + percentile, sketch.quantile(percentile / 100.0));
+            }
+            return new EmployeeStatistics(department, headcount, salaryCount, salarySum,
+                    salaries.isEmpty() ? null : salaries.firstKey(),
+                    salaries.isEmpty() ? null : salaries.lastKey(),
+                    percentiles);
+        }
+
+        boolean sameFigures(Department other) {
+            return headcount == other.headcount
+                    && salaryCount == other.salaryCount
+                    && salarySum == other.salarySum
+                    && salaries.equals(other.salaries);
+        }
+    }
+
+    /**
+     * the aggregates themselves, guarded by the lock
+     */
+    private static class Aggregates {
+        private final Map<Long, Row> rows = new HashMap<>();
+        private final Map<String, Department> departments = new HashMap<>();
+
+        void put(Long id, Row row) {
+            remove(id);
+            rows.put(id, row);
+            departments.computeIfAbsent(row.department, key -> new Department()).add(row.salary);
+        }
+
+        void patch(Long id, Row patch) {
+            final Row existing = rows.get(id);
+            if (existing == null) {
+                return;
+            }
+            put(id, new Row(
+                    patch.department != null ? patch.department : existing.department,
+                    patch.salary != null ? patch.salary : existing.salary));
+        }
+
+        void remove(Long id) {
+            final Row row = rows.remove(id);
+            if (row == null) {
+                return;
+            }
+            final Department department = departments.get(row.department);
+            department.remove(row.salary);
+            if (department.headcount == 0) {
+                departments.remove(row.department);
+            }
+        }
+
+        List<String> drifted(Aggregates actual) {
+            final Set<String> names = new HashSet<>(departments.keySet());
+            names.addAll(actual.departments.keySet());
+            return names.stream()
+                    .filter(name -> {
+                        final Department expected = departments.get(name);
+                        final Department recomputed = actual.departments.get(name);
+                        return expected == null || recomputed == null || !expected.sameFigures(recomputed);
+                    })
+                    .sorted(Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package jp.co.axa.apidemo.stats;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * headcount and salary figures of all employees or of one department
+ *
+ * sum, min, max and average are exact, percentiles are estimated by {@link SalarySketch}
+ * salary figures only cover employees having a salary, and are null if none has
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EmployeeStatistics {
+
+    private final String department;
+    private final long headcount;
+    private final long salaryCount;
+    private final Long salarySum;
+    private final Integer salaryMin;
+    private final Integer salaryMax;
+    private final Double salaryAverage;
+    private final Map<String, Long> salaryPercentiles;
+
+    /**
+     * @param department {@link String} null for all employees
+     * @param headcount {@link Long} number of employees
+     * @param salaryCount {@link Long} number of employees having a salary
+     * @param salarySum {@link Long}
+     * @param salaryMin {@link Integer}
+     * @param salaryMax {@link Integer}
+     * @param salaryPercentiles {@link Map} estimated salary by percentile name like p50
+     */
+    public EmployeeStatistics(String department, long headcount, long salaryCount, long salarySum,
+                              Integer salaryMin, Integer salaryMax, Map<String, Long> salaryPercentiles) {
+        this.department = department;
+        this.headcount = headcount;
+        this.salaryCount = salaryCount;
+        this.salarySum = salaryCount == 0 ? null : salarySum;
+        this.salaryMin = salaryMin;
+        this.salaryMax = salaryMax;
+        this.salaryAverage = salaryCount == 0 ? null : (double) salarySum / salaryCount;
+        this.salaryPercentiles = salaryCount == 0 ? null : salaryPercentiles;
+    }
+}
@@ -0,0 +1,147 @@
+package jp.co.axa.apidemo.stats;
+
+import java.util.Arrays;
+
+/**
+ * quantile sketch of salaries with relative error, values fall into buckets growing by a constant ratio
+ *
+ * a bucket only holds a count, so a value is removed by decrementing its bucket again,
+ * and sketches of several departments merge by adding their counts, which yields the same sketch
+ * as if all values had been added to one
+ * the estimate of a quantile is within {@value RELATIVE_ACCURACY} of the true value relatively
+ *
+ * not thread safe
+ */
+public class SalarySketch {
+
+    static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private final Buckets positive = new Buckets();
+    private final Buckets negative = new Buckets();
+    private long zeroCount;
+    private long count;
+
+    /**
+     * @param value {@link Integer} salary to add
+     */
+    public void add(int value) {
+        update(value, 1);
+    }
+
+    /**
+     * @param value {@link Integer} salary added before
+     */
+    public void remove(int value) {
+        update(value, -1);
+    }
+
+    /**
+     * @param other {@link SalarySketch} to add all values of
+     */
+    public void merge(SalarySketch other) {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    /**
+     * @return {@link Long} number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param quantile {@link Double} between 0 and 1
+     * @return {@link Long} estimated value at quantile, null if empty
+     */
+    public Long quantile(double quantile) {
+        if (count == 0) {
+            return null;
+        }
+        final long rank = (long) (quantile * (count - 1));
+        long seen = 0;
+        // most negative values first, they are in the highest buckets of negative
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0L;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    private void update(int value, int delta) {
+        if (value > 0) {
+            positive.add(index(value), delta);
+        } else if (value < 0) {
+            negative.add(index(-(long) value), delta);
+        } else {
+            zeroCount += delta;
+        }
+        count += delta;
+    }
+
+    private static int index(long value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    /**
+     * @return {@link Long} the value in the middle of bucket of index, by relative distance to both ends
+     */
+    private static long value(int index) {
+        return Math.round(2 * Math.pow(GAMMA, index) / (GAMMA + 1));
+    }
+
+    /**
+     * counts of contiguous bucket indexes from offset on, grown on demand
+     */
+    private static class Buckets {
+        private long[] counts = new long[0];
+        private int offset;
+
+        void add(int index, long delta) {
+            ensure(index);
+            counts[index - offset] += delta;
+        }
+
+        void merge(Buckets other) {
+            if (other.counts.length == 0) {
+                return;
+            }
+            ensure(other.offset);
+            ensure(other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+
+        private void ensure(int index) {
+            if (counts.length == 0) {
+                counts = new long[1];
+                offset = index;
+            } else if (index < offset) {
+                final long[] grown = new long[counts.length + offset - index];
+                System.arraycopy(counts, 0, grown, offset - index, counts.length);
+                counts = grown;
+                offset = index;
+            } else if (index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, index - offset + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package jp.co.axa.apidemo.writebehind;
+
+import jp.co.axa.apidemo.cache.EmployeeCodec;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.PreconditionFailedException;
+import jp.co.axa.apidemo.exception.ResourceNotFoundException;
+import jp.co.axa.apidemo.exception.ServiceUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * write-behind of inserts and updates of employees
+ *
+ * a write is acknowledged once its record is durable in the {@link WriteAheadLog} and kept as pending,
+ * pending writes are written to DB every flush interval, or as soon as max batch size of them are pending,
+ * in one transaction with JDBC batches, so that many writes share one commit
+ * several writes of the same employee are merged, only its latest state is written
+ *
+ * the same transaction records the sequence of the last record it covers in WRITE_BEHIND_CHECKPOINT,
+ * records after it are applied again on start, so a crash neither loses an acknowledged write nor applies one twice
+ *
+ * versions are checked against pending writes, or the row in DB if there are none, when a write is acknowledged
+ * a row changed in DB by others before the flush is only overwritten by writes without a version,
+ * a write with a version is dead-lettered instead
+ * if a batch violates a constraint, its writes are written one by one and the violating ones are dead-lettered,
+ * so one bad write never holds back the others
+ * dead letters are kept in WRITE_BEHIND_DEAD_LETTER, and employees whose acknowledged state is not the one in DB
+ * are announced as {@link StaleEmployeesEvent}
+ *
+ * at most max pending employees have pending writes, writes of others are refused until a flush catches up
+ */
+@Slf4j
+public class EmployeeWriteBehind implements DisposableBean, ApplicationEventPublisherAware {
+
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final int LOCK_STRIPES = 64;
+    private static final String STALE_VERSION_MSG = "id: %d is not at version %d";
+    private static final String NOT_FOUND_MSG = "id: %d does not exist";
+    private static final String TOO_MANY_PENDING_MSG = "%d employees have pending writes";
+    private static final int MAX_REASON_LENGTH = 1000;
+
+    private static final String INSERT_SQL = "insert into EMPLOYEE" +
+            " (EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION, ID) values (?, ?, ?, ?, ?)";
+    private static final String UPDATE_SQL = "update EMPLOYEE" +
+            " set EMPLOYEE_NAME = ?, EMPLOYEE_SALARY = ?, DEPARTMENT = ?, VERSION = ? where ID = ? and VERSION = ?";
+    private static final String OVERWRITE_SQL = "update EMPLOYEE" +
+            " set EMPLOYEE_NAME = ?, EMPLOYEE_SALARY = ?, DEPARTMENT = ?, VERSION = VERSION + 1 where ID = ?";
+    private static final String SELECT_VERSION_SQL = "select VERSION from EMPLOYEE where ID = ?";
+    private static final String INSERT_DEAD_LETTER_SQL = "insert into WRITE_BEHIND_DEAD_LETTER" +
+            " (LOG_NAME, EMPLOYEE_ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION, STORED_VERSION, REASON, DEAD_AT)" +
+            " values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_CHECKPOINT_SQL =
+            "select APPLIED_SEQUENCE from WRITE_BEHIND_CHECKPOINT where LOG_NAME = ?";
+    private static final String UPDATE_CHECKPOINT_SQL =
+            "update WRITE_BEHIND_CHECKPOINT set APPLIED_SEQUENCE = ? where LOG_NAME = ?";
+    private static final String INSERT_CHECKPOINT_SQL =
+            "insert into WRITE_BEHIND_CHECKPOINT (APPLIED_SEQUENCE, LOG_NAME) values (?, ?)";
+
+    private final WriteAheadLog writeAheadLog;
+    private final String logName;
+    private final int maxBatchSize;
+    private final int maxPending;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SessionFactoryImplementor sessionFactory;
+    private final EntityManager entityManager;
+    private final EmployeeCodec codec = new EmployeeCodec();
+    private final ScheduledExecutorService flusher;
+
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // acknowledging holds the read lock, taking a batch holds the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] stripes = new Object[LOCK_STRIPES];
+    private final Object flushLock = new Object();
+
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * apply records of writeAheadLog after the checkpoint of logName, then start flushing
+     *
+     * @param writeAheadLog {@link WriteAheadLog} of this node alone
+     * @param logName {@link String} name of the checkpoint of writeAheadLog
+     * @param dataSource {@link DataSource}
+     * @param transactionManager {@link PlatformTransactionManager}
+     * @param entityManagerFactory {@link EntityManagerFactory} to allocate ids and evict second-level cache
+     * @param flushMillis {@link Long} interval to write pending writes
+     * @param maxBatchSize {@link Integer} pending writes to write without waiting for the interval
+     * @param maxPending {@link Integer} employees with pending writes to refuse writes of other employees at
+     * @throws IOException if writeAheadLog could not be read
+     */
+    public EmployeeWriteBehind(WriteAheadLog writeAheadLog, String logName, DataSource dataSource,
+                               PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory,
+                               long flushMillis, int maxBatchSize, int maxPending) throws IOException {
+        this.writeAheadLog = writeAheadLog;
+        this.logName = logName;
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxPending;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // never joins the transaction of a caller, which may still roll back
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+
+        recover();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "employee-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * acknowledge an insert, the id is allocated from the same sequence as inserts through hibernate,
+     * so it has to be called in a transaction
+     *
+     * @param employee {@link Employee} to insert, its id and version are set
+     * @return {@link Employee} the given employee
+     * @throws {@link ServiceUnavailableException} if max pending employees have pending writes
+     */
+    public Employee insert(Employee employee) {
+        final SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        employee.setId((Long) identifierGenerator().generate(session, employee));
+        employee.setVersion(0L);
+        final Employee state = copy(employee);
+        write(state, INSERT);
+        return employee;
+    }
+
+    /**
+     * acknowledge an update replacing all fields, without pending writes the version is read from DB,
+     * in the caller's transaction, so it has to be called in a read-write transaction
+     *
+     * @param employee {@link Employee} to update, its new version is set
+     * @return {@link Employee} the given employee
+     * @throws {@link ResourceNotFoundException} if employee neither has pending writes nor exists in DB
+     * @throws {@link PreconditionFailedException} if version of employee is given and not the current one
+     * @throws {@link ServiceUnavailableException} if max pending employees have pending writes
+     */
+    public Employee update(Employee employee) {
+        final Employee state = copy(employee);
+        write(state, UPDATE);
+        employee.setVersion(state.getVersion());
+        return employee;
+    }
+
+    /**
+     * @param employeeId {@link Long}
+     * @return {@link Employee} latest state of pending writes of employee, null if none
+     */
+    public Employee pending(Long employeeId) {
+        final Pending current = pending.get(employeeId);
+        return current == null ? null : copy(current.employee);
+    }
+
+    /**
+     * @return {@link Set<Long>} ids of employees with pending writes, including ones not in DB yet
+     */
+    public Set<Long> pendingIds() {
+        return new HashSet<>(pending.keySet());
+    }
+
+    /**
+     * @return number of employees with pending writes
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * write pending writes to DB right now, in the caller's thread
+     *
+     * @throws RuntimeException if the transaction failed for other reasons than constraint violations,
+     * writes stay pending then
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final List<Pending> batch;
+            final long upTo;
+            final List<Path> segments;
+            lock.writeLock().lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                upTo = writeAheadLog.lastSequence();
+                segments = writeAheadLog.roll();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            final Outcome outcome = transactionTemplate.execute(status -> apply(batch, upTo));
+            try {
+                writeAheadLog.delete(segments);
+            } catch (IOException e) {
+                // applied records are skipped by the checkpoint anyway
+                log.warn("failed to delete applied segments of write-ahead log", e);
+            }
+            final List<Long> staleIds = new ArrayList<>();
+            for (Pending applied : batch) {
+                final Long id = applied.employee.getId();
+                synchronized (stripe(id)) {
+                    final Pending current = pending.get(id);
+                    if (current == applied) {
+                        pending.remove(id);
+                        if (outcome.stale.contains(id)) {
+                            staleIds.add(id);
+                        }
+                    } else if (current != null && !outcome.stale.contains(id)) {
+                        pending.put(id, current.storedAt(applied.employee.getVersion()));
+                    }
+                    // later writes of a stale employee keep the version they were based on, they are checked again
+                }
+                sessionFactory.getCache().evictEntityData(Employee.class, id);
+            }
+            sessionFactory.getCache().evictQueryRegions();
+            if (!staleIds.isEmpty() && eventPublisher != null) {
+                eventPublisher.publishEvent(new StaleEmployeesEvent(this, staleIds));
+            }
+        }
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        flusher.shutdown();
+        flushQuietly();
+        writeAheadLog.close();
+    }
+
+    private void write(Employee state, byte type) {
+        final Long id = state.getId();
+        final long sequence;
+        lock.readLock().lock();
+        try {
+            synchronized (stripe(id)) {
+                final Pending current = pending.get(id);
+                if (current == null && pending.size() >= maxPending) {
+                    flusher.execute(this::flushQuietly);
+                    throw new ServiceUnavailableException(String.format(TOO_MANY_PENDING_MSG, pending.size()));
+                }
+                final boolean conditional = state.getVersion() != null;
+                if (type == UPDATE) {
+                    final Long version = current != null ? current.employee.getVersion() : storedVersion(id);
+                    if (conditional && !state.getVersion().equals(version)) {
+                        throw new PreconditionFailedException(String.format(STALE_VERSION_MSG, id, state.getVersion()));
+                    }
+                    state.setVersion(version + 1);
+                }
+                sequence = writeAheadLog.append(encode(type, state));
+                pending.put(id, next(current, state, type, conditional));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            writeAheadLog.sync(sequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (pending.size() >= maxBatchSize) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private Outcome apply(List<Pending> batch, long upTo) {
+        final Outcome outcome = new Outcome();
+        try {
+            inSavepoint(() -> store(batch, outcome));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("failed to write a batch of {} writes, writing them one by one", batch.size(), e);
+            outcome.clear();
+            for (Pending write : batch) {
+                try {
+                    inSavepoint(() -> store(Collections.singletonList(write), outcome));
+                } catch (DataIntegrityViolationException poison) {
+                    outcome.deadLetter(write, poison.getMostSpecificCause().toString());
+                }
+            }
+        }
+
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(INSERT_DEAD_LETTER_SQL, new ArrayList<>(outcome.deadLetters.entrySet()), maxBatchSize,
+                (statement, deadLetter) -> {
+                    final Pending write = deadLetter.getKey();
+                    statement.setString(1, logName);
+                    statement.setLong(2, write.employee.getId());
+                    statement.setString(3, write.employee.getName());
+                    statement.setObject(4, write.employee.getSalary(), Types.INTEGER);
+                    statement.setString(5, write.employee.getDepartment());
+                    statement.setLong(6, write.employee.getVersion());
+                    statement.setObject(7, write.storedVersion, Types.BIGINT);
+                    statement.setString(8, deadLetter.getValue());
+                    statement.setTimestamp(9, now);
+                });
+
+        if (jdbcTemplate.update(UPDATE_CHECKPOINT_SQL, upTo, logName) == 0) {
+            jdbcTemplate.update(INSERT_CHECKPOINT_SQL, upTo, logName);
+        }
+        return outcome;
+    }
+
+    private void store(List<Pending> writes, Outcome outcome) {
+        final List<Pending> inserts = new ArrayList<>();
+        final List<Pending> updates = new ArrayList<>();
+        for (Pending write : writes) {
+            (write.storedVersion == null ? inserts : updates).add(write);
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, inserts, maxBatchSize, (statement, write) -> {
+            setFields(statement, write.employee);
+            statement.setLong(4, write.employee.getVersion());
+            statement.setLong(5, write.employee.getId());
+        });
+        final List<Pending> overwrites = new ArrayList<>();
+        forEachUnchanged(updates, jdbcTemplate.batchUpdate(UPDATE_SQL, updates, maxBatchSize, (statement, write) -> {
+            setFields(statement, write.employee);
+            statement.setLong(4, write.employee.getVersion());
+            statement.setLong(5, write.employee.getId());
+            statement.setLong(6, write.storedVersion);
+        }), conflict -> {
+            if (conflict.conditional) {
+                outcome.deadLetter(conflict, "not at version " + conflict.storedVersion + " any more");
+            } else {
+                overwrites.add(conflict);
+            }
+        });
+        // writes without a version replace whatever others wrote meanwhile, the version moves on from theirs
+        forEachUnchanged(overwrites, jdbcTemplate.batchUpdate(OVERWRITE_SQL, overwrites, maxBatchSize, (statement, write) -> {
+            setFields(statement, write.employee);
+            statement.setLong(4, write.employee.getId());
+        }), deleted -> outcome.deadLetter(deleted, "deleted"));
+        overwrites.forEach(overwrite -> outcome.stale.add(overwrite.employee.getId()));
+    }
+
+    private void inSavepoint(Runnable work) {
+        final Savepoint savepoint = jdbcTemplate.execute((ConnectionCallback<Savepoint>) Connection::setSavepoint);
+        try {
+            work.run();
+        } catch (DataIntegrityViolationException e) {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                connection.rollback(savepoint);
+                return null;
+            });
+            throw e;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            connection.releaseSavepoint(savepoint);
+            return null;
+        });
+    }
+
+    private Long storedVersion(Long id) {
+        final Long version = jdbcTemplate.query(SELECT_VERSION_SQL,
+                resultSet -> resultSet.next() ? resultSet.getLong(1) : null, id);
+        if (version == null) {
+            throw new ResourceNotFoundException(String.format(NOT_FOUND_MSG, id));
+        }
+        return version;
+    }
+
+    private void recover() throws IOException {
+        final long checkpoint = jdbcTemplate.query(SELECT_CHECKPOINT_SQL,
+                resultSet -> resultSet.next() ? resultSet.getLong(1) : 0L, logName);
+        writeAheadLog.skipTo(checkpoint);
+        final int records = writeAheadLog.replay((payload, sequence) -> {
+            if (sequence > checkpoint) {
+                final ByteBuffer buffer = ByteBuffer.wrap(payload);
+                final byte type = buffer.get();
+                final long version = buffer.getLong();
+                final byte[] employee = new byte[buffer.remaining()];
+                buffer.get(employee);
+                final Employee state = (Employee) codec.decode(employee);
+                state.setVersion(version);
+                // whether it had a version is not logged, so a replayed update is always checked
+                pending.put(state.getId(), next(pending.get(state.getId()), state, type, true));
+            }
+        });
+        if (pending.isEmpty()) {
+            writeAheadLog.delete(writeAheadLog.roll());
+            return;
+        }
+        log.info("applying {} writes of {} records after sequence {} of {}", pending.size(), records, checkpoint, logName);
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule, writes stay pending and are retried on next flush
+            log.warn("failed to write {} pending writes of employees", pending.size(), e);
+        }
+    }
+
+    private IdentifierGenerator identifierGenerator() {
+        return sessionFactory.getMetamodel().entityPersister(Employee.class).getIdentifierGenerator();
+    }
+
+    private Object stripe(Long id) {
+        return stripes[(int) (id & (LOCK_STRIPES - 1))];
+    }
+
+    private byte[] encode(byte type, Employee state) {
+        final byte[] employee = codec.encode(state);
+        return ByteBuffer.allocate(1 + Long.BYTES + employee.length)
+                .put(type)
+                .putLong(state.getVersion())
+                .put(employee)
+                .array();
+    }
+
+    private static Pending next(Pending current, Employee state, byte type, boolean conditional) {
+        if (current != null) {
+            return new Pending(state, current.storedVersion, current.conditional || conditional);
+        }
+        // an update is always one version ahead of the row it replaces
+        return new Pending(state, type == INSERT ? null : state.getVersion() - 1, conditional);
+    }
+
+    private static void forEachUnchanged(List<Pending> writes, int[][] counts, Consumer<Pending> action) {
+        int index = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                if (count == 0) {
+                    action.accept(writes.get(index));
+                }
+                index++;
+            }
+        }
+    }
+
+    private static void setFields(PreparedStatement statement, Employee employee) throws SQLException {
+        statement.setString(1, employee.getName());
+        if (employee.getSalary() == null) {
+            statement.setNull(2, Types.INTEGER);
+        } else {
+            statement.setInt(2, employee.getSalary());
+        }
+        statement.setString(3, employee.getDepartment());
+    }
+
+    private static Employee copy(Employee source) {
+        final Employee target = new Employee();
+        target.setId(source.getId());
+        target.setName(source.getName());
+        target.setSalary(source.getSalary());
+        target.setDepartment(source.getDepartment());
+        target.setVersion(source.getVersion());
+        return target;
+    }
+
+    /**
+     * latest state of an employee and the version of its row in DB, null if the row is not inserted yet
+     * conditional if any of its writes was based on a version, then it's not written over changes of others
+     */
+    private static final class Pending {
+
+        private final Employee employee;
+        private final Long storedVersion;
+        private final boolean conditional;
+
+        private Pending(Employee employee, Long storedVersion, boolean conditional) {
+            this.employee = employee;
+            this.storedVersion = storedVersion;
+            this.conditional = conditional;
+        }
+
+        private Pending storedAt(Long version) {
+            return new Pending(employee, version, conditional);
+        }
+    }
+
+    /**
+     * writes of a flush which could not be applied with their reasons,
+     * and ids of employees whose acknowledged state is not the one in DB
+     */
+    private static final class Outcome {
+
+        private final Map<Pending, String> deadLetters = new IdentityHashMap<>();
+        private final Set<Long> stale = new HashSet<>();
+
+        private void deadLetter(Pending write, String reason) {
+            log.warn("dead-lettered write of id: {} at version {}, {}",
+                    write.employee.getId(), write.employee.getVersion(), reason);
+            deadLetters.put(write, reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason);
+            stale.add(write.employee.getId());
+        }
+
+        private void clear() {
+            deadLetters.clear();
+            stale.clear();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package jp.co.axa.apidemo.writebehind;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+
+/**
+ * published after a flush of {@link EmployeeWriteBehind} for employees whose acknowledged state is not the one in DB,
+ * because their writes were dead-lettered or applied over a change by others,
+ * state derived from acknowledged writes has to be loaded again from DB
+ */
+public class StaleEmployeesEvent extends ApplicationEvent {
+
+    private final Collection<Long> ids;
+
+    /**
+     * @param source {@link EmployeeWriteBehind} which flushed
+     * @param ids {@link Collection<Long>} ids of stale employees without pending writes
+     */
+    public StaleEmployeesEvent(EmployeeWriteBehind source, Collection<Long> ids) {
+        super(source);
+        this.ids = ids;
+    }
+
+    /**
+     * @return {@link Collection<Long>} ids of stale employees without pending writes
+     */
+    public Collection<Long> getIds() {
+        return ids;
+    }
+}
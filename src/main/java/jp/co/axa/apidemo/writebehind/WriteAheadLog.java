@@ -0,0 +1,225 @@
+package jp.co.axa.apidemo.writebehind;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * append-only log of records in segment files under a directory
+ *
+ * every record gets the next sequence number and is written to the current segment by one write,
+ * {@link #sync(long)} makes it durable, forcing the segment once for all records appended so far,
+ * so concurrent writers share one force instead of paying one each
+ * {@link #roll()} closes the current segment, closed segments stay until {@link #delete(List)}
+ *
+ * a record torn by a crash fails its checksum, replay of the segment stops there
+ * a failed write closes its segment, so that no record is ever appended behind a torn one
+ *
+ * name of segment: segment-{sequence of its first record}.log, in 20 digits so that names sort by sequence
+ * layout of record: length(4) checksum(4) sequence(8) payload(length), checksum is CRC32 of sequence and payload
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int CHECKSUM_AT = Integer.BYTES;
+    private static final int SEQUENCE_AT = Integer.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final List<Path> closed = new ArrayList<>();
+    private final Object syncLock = new Object();
+
+    private FileChannel current;
+    private Path currentPath;
+    private long lastSequence;
+    private volatile long syncedSequence;
+
+    /**
+     * open the log in directory, segments already there are kept closed for {@link #replay(ObjLongConsumer)}
+     *
+     * @param directory {@link Path} directory of segments, would be created if absent
+     * @throws IOException if directory could not be listed
+     */
+    public WriteAheadLog(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            closed.addAll(files
+                    .filter(file -> file.getFileName().toString().startsWith(PREFIX))
+                    .sorted()
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * pass records of closed segments to consumer in order of sequence
+     * sequences of later appends continue from the last record passed
+     *
+     * @param consumer {@link ObjLongConsumer} of payload and sequence
+     * @return number of records passed
+     * @throws IOException if a segment could not be read
+     */
+    public synchronized int replay(ObjLongConsumer<byte[]> consumer) throws IOException {
+        int count = 0;
+        for (Path segment : closed) {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                final int start = buffer.position();
+                final int length = buffer.getInt(start);
+                if (length < 0 || length > buffer.remaining() - RECORD_HEADER_SIZE
+                        || buffer.getInt(start + CHECKSUM_AT) != checksum(buffer.array(), start, length)) {
+                    break;
+                }
+                final long sequence = buffer.getLong(start + SEQUENCE_AT);
+                final byte[] payload = new byte[length];
+                buffer.position(start + RECORD_HEADER_SIZE);
+                buffer.get(payload);
+                consumer.accept(payload, sequence);
+                lastSequence = Math.max(lastSequence, sequence);
+                count++;
+            }
+            if (buffer.hasRemaining()) {
+                log.warn("write-ahead log {} is torn at {} of {} bytes", segment, buffer.position(), buffer.limit());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * append a record to the current segment, it's not durable until {@link #sync(long)}
+     *
+     * @param payload bytes
+     * @return sequence of the record
+     * @throws IOException if the record could not be written, its segment is closed then
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        final long sequence = lastSequence + 1;
+        if (current == null) {
+            currentPath = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+            current = FileChannel.open(currentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt(0).putLong(sequence).put(payload);
+        buffer.putInt(CHECKSUM_AT, checksum(buffer.array(), 0, payload.length));
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                current.write(buffer);
+            }
+        } catch (IOException e) {
+            closeCurrent();
+            throw e;
+        }
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * make the record of sequence and all records before it durable
+     *
+     * @param sequence long returned by {@link #append(byte[])}
+     * @throws IOException if the segment could not be forced
+     */
+    public void sync(long sequence) throws IOException {
+        if (syncedSequence >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            final FileChannel channel;
+            final long upTo;
+            synchronized (this) {
+                channel = current;
+                upTo = lastSequence;
+            }
+            try {
+                if (channel != null) {
+                    channel.force(false);
+                }
+            } catch (ClosedChannelException e) {
+                // rolled meanwhile, which forced the segment before closing it
+            }
+            syncedSequence = upTo;
+        }
+    }
+
+    /**
+     * close the current segment, the next append starts a new one
+     *
+     * @return {@link List<Path>} all closed segments not deleted yet
+     * @throws IOException if the segment could not be forced
+     */
+    public synchronized List<Path> roll() throws IOException {
+        closeCurrent();
+        return new ArrayList<>(closed);
+    }
+
+    /**
+     * @param segments {@link List<Path>} closed segments whose records are not needed any more
+     * @throws IOException if a segment could not be deleted
+     */
+    public synchronized void delete(List<Path> segments) throws IOException {
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+            closed.remove(segment);
+        }
+    }
+
+    /**
+     * continue sequences after sequence, for records applied and deleted before the log was opened
+     *
+     * @param sequence long
+     */
+    public synchronized void skipTo(long sequence) {
+        lastSequence = Math.max(lastSequence, sequence);
+    }
+
+    /**
+     * @return sequence of the last record appended or replayed
+     */
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeCurrent();
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current == null) {
+            return;
+        }
+        try {
+            current.force(false);
+        } finally {
+            current.close();
+            closed.add(currentPath);
+            current = null;
+            currentPath = null;
+        }
+    }
+
+    private static int checksum(byte[] record, int start, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(record, start + SEQUENCE_AT, Long.BYTES + length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,13 @@
+-- table of employees as mapped by jp.co.axa.apidemo.entities.Employee
+-- ids are allocated from the sequence in blocks of Employee.ID_ALLOCATION_SIZE
+
+create sequence EMPLOYEE_SEQ start with 1 increment by 50;
+
+create table EMPLOYEE (
+    ID bigint not null,
+    EMPLOYEE_NAME varchar(255),
+    EMPLOYEE_SALARY integer,
+    DEPARTMENT varchar(255),
+    VERSION bigint,
+    primary key (ID)
+);
@@ -0,0 +1,7 @@
+-- secondary indexes for queries filtering employees, see jp.co.axa.apidemo.repositories.EmployeeRepository
+
+create index IDX_EMPLOYEE_DEPARTMENT on EMPLOYEE (DEPARTMENT);
+
+create index IDX_EMPLOYEE_DEPARTMENT_SALARY on EMPLOYEE (DEPARTMENT, EMPLOYEE_SALARY);
+
+create index IDX_EMPLOYEE_NAME on EMPLOYEE (EMPLOYEE_NAME);
@@ -0,0 +1,8 @@
+-- sequence of the last write-ahead log record applied to EMPLOYEE, one row per log,
+-- see jp.co.axa.apidemo.writebehind.EmployeeWriteBehind
+
+create table WRITE_BEHIND_CHECKPOINT (
+    LOG_NAME varchar(255) not null,
+    APPLIED_SEQUENCE bigint not null,
+    primary key (LOG_NAME)
+);
@@ -0,0 +1,16 @@
+-- acknowledged writes of employees which write-behind could not apply, kept for inspection and replay by hand,
+-- see jp.co.axa.apidemo.writebehind.EmployeeWriteBehind
+
+create table WRITE_BEHIND_DEAD_LETTER (
+    ID bigint generated by default as identity,
+    LOG_NAME varchar(255) not null,
+    EMPLOYEE_ID bigint not null,
+    EMPLOYEE_NAME varchar(255),
+    EMPLOYEE_SALARY integer,
+    DEPARTMENT varchar(255),
+    VERSION bigint not null,
+    STORED_VERSION bigint,
+    REASON varchar(1000) not null,
+    DEAD_AT timestamp not null,
+    primary key (ID)
+);
@@ -0,0 +1,67 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * test for binary form of employees
+ */
+public class EmployeeCodecTest {
+
+    private final EmployeeCodec target = new EmployeeCodec();
+
+    @Test
+    public void test_roundTrip() {
+        // arrange
+        final Employee employee = new Employee();
+        employee.setId(1L);
+        employee.setName("name");
+        employee.setSalary(1000);
+        employee.setDepartment("department");
+        employee.setVersion(3L);
+
+        // act
+        final Employee decoded = (Employee) target.decode(target.encode(employee));
+
+        // assert
+        assertThat(decoded).isEqualToComparingFieldByField(employee);
+    }
+
+    @Test
+    public void test_roundTrip_withoutOptionalFields() {
+        // arrange
+        final Employee employee = new Employee();
+        employee.setId(1L);
+
+        // act
+        final Employee decoded = (Employee) target.decode(target.encode(employee));
+
+        // assert
+        assertThat(decoded).isEqualToComparingFieldByField(employee);
+    }
+
+    @Test
+    public void test_decode_firstLayout() {
+        // arrange
+        final byte[] name = "name".getBytes(StandardCharsets.UTF_8);
+        final byte[] bytes = ByteBuffer.allocate(1 + Long.BYTES + Integer.BYTES + name.length)
+                .put((byte) 2)
+                .putLong(1L)
+                .putInt(name.length)
+                .put(name)
+                .array();
+
+        // act
+        final Employee decoded = (Employee) target.decode(bytes);
+
+        // assert
+        assertThat(decoded.getId()).isEqualTo(1L);
+        assertThat(decoded.getName()).isEqualTo("name");
+        assertThat(decoded.getVersion()).isNull();
+    }
+}
@@ -0,0 +1,206 @@
+package jp.co.axa.apidemo.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * test for invalidation of caches between two nodes sharing a loopback bus
+ */
+public class InvalidatingCacheManagerTest {
+
+    private final List<InvalidationMessage> messages = Collections.synchronizedList(new ArrayList<>());
+
+    private InvalidatingCacheManager first;
+    private InvalidatingCacheManager second;
+
+    @Before
+    public void setup() {
+        final LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+        bus.subscribe(message -> messages.add(InvalidationMessage.decode(message)));
+        first = new InvalidatingCacheManager(new CaffeineCacheManager(), bus, 1, 1000);
+        second = new InvalidatingCacheManager(new CaffeineCacheManager(), bus, 1, 1000);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        first.destroy();
+        second.destroy();
+    }
+
+    @Test
+    public void test_put_evictsOtherNode() throws InterruptedException {
+        // arrange
+        first.getCache("employees").put(1L, "old");
+        second.getCache("employees").put(1L, "old");
+        awaitFlushed();
+
+        // act
+        first.getCache("employees").put(1L, "new");
+
+        // assert
+        await(() -> second.getCache("employees").get(1L) == null);
+        assertThat(first.getCache("employees").get(1L).get()).isEqualTo("new");
+    }
+
+    @Test
+    public void test_evict_evictsOtherNode_notPublishedBack() throws InterruptedException {
+        // arrange
+        first.getCache("employees").put(1L, "first");
+        second.getCache("employees").put(1L, "second");
+        second.getCache("employees").put(2L, "second");
+        awaitFlushed();
+        messages.clear();
+
+        // act
+        first.getCache("employees").evict(1L);
+
+        // assert
+        await(() -> second.getCache("employees").get(1L) == null);
+        assertThat(second.getCache("employees").get(2L).get()).isEqualTo("second");
+        Thread.sleep(50);
+        assertThat(messages).hasSize(1);
+        assertThat(messages.get(0).getOrigin()).isEqualTo(first.getNodeId());
+    }
+
+    @Test
+    public void test_populate_notPublished() throws InterruptedException {
+        // arrange
+        second.getCache("employees").put(1L, "second");
+        awaitFlushed();
+        messages.clear();
+
+        // act
+        InvalidatingCache.populate(first.getCache("employees"), 1L, "first");
+
+        // assert
+        assertThat(first.getCache("employees").get(1L).get()).isEqualTo("first");
+        Thread.sleep(50);
+        assertThat(messages).isEmpty();
+        assertThat(second.getCache("employees").get(1L).get()).isEqualTo("second");
+    }
+
+    @Test
+    public void test_clear_clearsOtherNode() throws InterruptedException {
+        // arrange
+        second.getCache("employeeIds").put("all", "ids");
+
+        // act
+        first.getCache("employeeIds").clear();
+
+        // assert
+        await(() -> second.getCache("employeeIds").get("all") == null);
+    }
+
+    @Test
+    public void test_writes_coalescedIntoOneMessage() throws Exception {
+        // arrange
+        final LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+        bus.subscribe(message -> messages.add(InvalidationMessage.decode(message)));
+        final InvalidatingCacheManager target = new InvalidatingCacheManager(new CaffeineCacheManager(), bus, 60_000, 1000);
+        final Cache cache = target.getCache("employees");
+
+        // act
+        for (int i = 0; i < 10; i++) {
+            for (long id = 1; id <= 100; id++) {
+                cache.put(id, "value" + i);
+            }
+        }
+        target.getCache("employeeIds").evict("all");
+        target.flush();
+        target.destroy();
+
+        // assert
+        assertThat(messages).hasSize(1);
+        assertThat(messages.get(0).getKeys().get("employees")).hasSize(100);
+        assertThat(messages.get(0).getKeys().get("employeeIds")).containsExactly("all");
+        assertThat(((InvalidatingCache) cache).getSent().sum()).isEqualTo(100);
+    }
+
+    @Test
+    public void test_flush_splitIntoMessagesFittingInDatagram() throws Exception {
+        // arrange
+        final List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        final LoopbackInvalidationBus bus = new LoopbackInvalidationBus() {
+            @Override
+            public void publish(byte[] message) {
+                sizes.add(message.length);
+                super.publish(message);
+            }
+
+            @Override
+            public int maxMessageSize() {
+                return MulticastInvalidationBus.MAX_MESSAGE_SIZE;
+            }
+        };
+        bus.subscribe(message -> messages.add(InvalidationMessage.decode(message)));
+        final InvalidatingCacheManager target = new InvalidatingCacheManager(new CaffeineCacheManager(), bus, 60_000, 100_000);
+        final int ids = 5000;
+        for (long id = 1; id <= ids; id++) {
+            target.getCache("employees").put(id, "value");
+            for (String format : Arrays.asList("JSON", "SMILE", "CBOR", "PROTOBUF")) {
+                target.getCache("employeeResponses").put(format + ":" + id, "value");
+            }
+        }
+        target.getCache("employeeIds").clear();
+
+        // act
+        target.flush();
+        target.destroy();
+
+        // assert
+        assertThat(sizes.stream().mapToInt(Integer::intValue).sum()).isGreaterThan(MulticastInvalidationBus.MAX_MESSAGE_SIZE);
+        assertThat(sizes.size()).isGreaterThan(1);
+        assertThat(sizes).allMatch(size -> size <= MulticastInvalidationBus.MAX_MESSAGE_SIZE);
+        assertThat(messages.stream().mapToInt(message -> message.getKeys().getOrDefault("employees", Collections.emptySet()).size()).sum())
+                .isEqualTo(ids);
+        assertThat(messages.stream().mapToInt(message -> message.getKeys().getOrDefault("employeeResponses", Collections.emptySet()).size()).sum())
+                .isEqualTo(ids * 4);
+        assertThat(messages.stream().filter(message -> message.getCleared().contains("employeeIds"))).hasSize(1);
+    }
+
+    @Test
+    public void test_encodeAndDecode() {
+        // arrange
+        final UUID origin = UUID.randomUUID();
+        final Map<String, Set<Object>> keys = new HashMap<>();
+        keys.put("employees", new HashSet<>(Arrays.asList(1L, Long.MAX_VALUE)));
+        keys.put("others", new HashSet<>(Arrays.asList(7, "key")));
+        final Set<String> cleared = Collections.singleton("employeeIds");
+
+        // act
+        final InvalidationMessage actual = InvalidationMessage.decode(new InvalidationMessage(origin, keys, cleared).encode());
+
+        // assert
+        assertThat(actual.getOrigin()).isEqualTo(origin);
+        assertThat(actual.getKeys()).isEqualTo(keys);
+        assertThat(actual.getCleared()).isEqualTo(cleared);
+    }
+
+    private void awaitFlushed() throws InterruptedException {
+        Thread.sleep(20);
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 1000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
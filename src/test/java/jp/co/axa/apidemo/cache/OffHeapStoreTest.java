@@ -0,0 +1,134 @@
+package jp.co.axa.apidemo.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * test for off-heap store in memory-mapped files
+ */
+public class OffHeapStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int LAYOUT = 1;
+
+    private OffHeapStore target;
+
+    @Before
+    public void setup() throws IOException {
+        target = open(Duration.ofHours(1));
+    }
+
+    @After
+    public void teardown() {
+        target.close();
+    }
+
+    @Test
+    public void test_putAndGet() {
+        // act
+        target.put(1L, bytes("first"));
+        target.put(2L, bytes("second"));
+        target.put(1L, bytes("first update"));
+
+        // assert
+        assertThat(target.get(1L)).isEqualTo(bytes("first update"));
+        assertThat(target.get(2L)).isEqualTo(bytes("second"));
+        assertThat(target.get(3L)).isNull();
+        assertThat(target.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_remove() {
+        // arrange
+        target.put(1L, bytes("first"));
+        target.put(2L, bytes("second"));
+
+        // act
+        target.remove(1L);
+
+        // assert
+        assertThat(target.get(1L)).isNull();
+        assertThat(target.get(2L)).isEqualTo(bytes("second"));
+        assertThat(target.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_reopen() throws IOException {
+        // arrange
+        target.put(1L, bytes("first"));
+        target.put(2L, bytes("second"));
+        target.remove(2L);
+        target.close();
+
+        // act
+        target = open(Duration.ofHours(1));
+
+        // assert
+        assertThat(target.get(1L)).isEqualTo(bytes("first"));
+        assertThat(target.get(2L)).isNull();
+        assertThat(target.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_startOverWhenDataIsFull() {
+        // arrange
+        final byte[] value = new byte[200];
+
+        // act
+        for (long key = 0; key < 100; key++) {
+            target.put(key, value);
+        }
+
+        // assert
+        assertThat(target.get(99L)).isEqualTo(value);
+        assertThat(target.get(0L)).isNull();
+        assertThat(target.size()).isLessThan(100);
+    }
+
+    @Test
+    public void test_expired() throws IOException, InterruptedException {
+        // arrange
+        target.close();
+        target = open(Duration.ofMillis(1));
+        target.put(1L, bytes("first"));
+
+        // act
+        Thread.sleep(10);
+
+        // assert
+        assertThat(target.get(1L)).isNull();
+    }
+
+    @Test
+    public void test_reopenWithOtherLayout() throws IOException {
+        // arrange
+        target.put(1L, bytes("first"));
+        target.close();
+
+        // act
+        target = new OffHeapStore(folder.getRoot().toPath(), 64, 1024, 4, Duration.ofHours(1), LAYOUT + 1);
+
+        // assert
+        assertThat(target.get(1L)).isNull();
+        assertThat(target.size()).isZero();
+    }
+
+    private OffHeapStore open(Duration ttl) throws IOException {
+        return new OffHeapStore(folder.getRoot().toPath(), 64, 1024, 4, ttl, LAYOUT);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.ResourceNotFoundException;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * two nodes on one DB sharing a loopback bus, each with second-level cache and query cache of its own
+ * writes on one node must not be hidden by hibernate caches of the other,
+ * which would keep serving them until they expire, far longer than the awaited seconds
+ */
+public class SecondLevelCacheInvalidationIntegrationTest {
+
+    private final LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+
+    private ConfigurableApplicationContext first;
+    private ConfigurableApplicationContext second;
+
+    @Before
+    public void setup() {
+        first = start();
+        second = start();
+    }
+
+    @After
+    public void teardown() {
+        first.getBean(EmployeeRepository.class).deleteAllInBatch();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void test_updateOnOtherNode_visibleRightAway() throws InterruptedException {
+        // arrange
+        final Long id = first.getBean(EmployeeService.class).saveEmployee(createEmployee("old")).getId();
+        // fill the employees cache, the second-level cache and the query cache of the second node
+        assertThat(second.getBean(EmployeeService.class).getEmployee(id).getName()).isEqualTo("old");
+        assertThat(firstPage(second).get(0).getName()).isEqualTo("old");
+
+        // act
+        final Employee changes = createEmployee("new");
+        changes.setId(id);
+        first.getBean(EmployeeService.class).updateEmployee(changes);
+
+        // assert
+        await(() -> "new".equals(second.getBean(EmployeeService.class).getEmployee(id).getName()));
+        assertThat(firstPage(second).get(0).getName()).isEqualTo("new");
+    }
+
+    @Test
+    public void test_deleteOnOtherNode_visibleRightAway() throws InterruptedException {
+        // arrange
+        final Long id = first.getBean(EmployeeService.class).saveEmployee(createEmployee("deleted")).getId();
+        assertThat(second.getBean(EmployeeService.class).getEmployee(id).getName()).isEqualTo("deleted");
+
+        // act
+        first.getBean(EmployeeService.class).deleteEmployee(id);
+
+        // assert
+        await(() -> {
+            try {
+                second.getBean(EmployeeService.class).getEmployee(id);
+                return false;
+            } catch (ResourceNotFoundException e) {
+                return true;
+            }
+        });
+    }
+
+    @Test
+    public void test_insertOnOtherNode_visibleInCachedPages() throws InterruptedException {
+        // arrange
+        first.getBean(EmployeeService.class).saveEmployee(createEmployee("first"));
+        assertThat(firstPage(second)).hasSize(1);
+
+        // act
+        first.getBean(EmployeeService.class).saveEmployee(createEmployee("second"));
+
+        // assert
+        await(() -> firstPage(second).size() == 2);
+        assertThat(firstPage(second)).extracting(Employee::getName).containsExactly("first", "second");
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(ApiDemoApplication.class)
+                .initializers(context -> context.getBeanFactory().registerSingleton("cacheInvalidationBus", bus))
+                .run("--server.port=0",
+                        "--spring.jmx.enabled=false",
+                        "--spring.datasource.url=jdbc:h2:mem:second-level-invalidation;DB_CLOSE_DELAY=-1",
+                        "--customized.cache.invalidation.enabled=true");
+    }
+
+    private static List<Employee> firstPage(ConfigurableApplicationContext node) {
+        return node.getBean(EmployeeRepository.class).findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 10));
+    }
+
+    private static Employee createEmployee(String name) {
+        final Employee employee = new Employee();
+        employee.setName(name);
+        employee.setSalary(1000);
+        employee.setDepartment("department");
+        return employee;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package jp.co.axa.apidemo.cache;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.EmployeeServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration test for cache with off-heap tier
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "customized.cache.offHeap.enabled=true",
+        "customized.cache.offHeap.directory=target/offheap-test",
+        "customized.cache.offHeap.capacity=1024",
+        "customized.cache.offHeap.chunkSize=65536",
+        "customized.cache.offHeap.maxChunks=2"
+})
+public class TieredCacheIntegrationTest {
+
+    @Autowired
+    private CacheManager cacheManager;
+    @MockBean
+    private EmployeeRepository repository;
+    @Autowired
+    private EmployeeServiceImpl target;
+
+    @Before
+    @After
+    public void clearCaches() {
+        Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+        Objects.requireNonNull(cacheManager.getCache(EmployeeIdIndex.CACHE_NAME)).clear();
+    }
+
+    @Test
+    public void test_getEmployee_servedBySecondTier() {
+        // arrange
+        final Employee employee = createEmployee(1L, "first name", "first department", 1000);
+        when(repository.findById(eq(employee.getId()))).thenReturn(Optional.of(employee));
+
+        // act
+        target.getEmployee(employee.getId());
+        firstTier().clear();
+        final Employee actual = target.getEmployee(employee.getId());
+
+        // assert
+        assertThat(actual).isNotSameAs(employee);
+        assertEmployeeIsExpected(actual, employee);
+        assertThat(firstTier().get(employee.getId())).isNotNull();
+
+        verify(repository, times(1)).findById(eq(employee.getId()));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void test_retrieveEmployees_servedBySecondTier() {
+        // arrange
+        final Employee employeeFirst = createEmployee(1L, "first name", "first department", 1000);
+        final Employee employeeSecond = createEmployee(2L, "second name", null, null);
+        when(repository.findAllIds()).thenReturn(Arrays.asList(1L, 2L));
+        when(repository.findAllById(Arrays.asList(1L, 2L))).thenReturn(Arrays.asList(employeeFirst, employeeSecond));
+
+        // act
+        target.retrieveEmployees();
+        firstTier().clear();
+        final List<Employee> actual = target.retrieveEmployees();
+
+        // assert
+        assertThat(actual).hasSize(2);
+        assertEmployeeIsExpected(actual.get(0), employeeFirst);
+        assertEmployeeIsExpected(actual.get(1), employeeSecond);
+
+        verify(repository, times(1)).findAllIds();
+        verify(repository, times(1)).findAllById(Arrays.asList(1L, 2L));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void test_deleteEmployee_evictBothTiers() {
+        // arrange
+        final Employee employee = createEmployee(1L, "first name", "first department", 1000);
+        when(repository.findById(eq(employee.getId()))).thenReturn(Optional.of(employee));
+        target.getEmployee(employee.getId());
+
+        // act
+        target.deleteEmployee(employee.getId());
+
+        // assert
+        assertThat(cacheManager.getCache("employees").get(employee.getId())).isNull();
+        assertThat(((TieredCache) cacheManager.getCache("employees")).getSecond().get(employee.getId())).isNull();
+    }
+
+    @Test
+    public void test_secondTier_notOutlivingFirstTier() {
+        // act
+        final Duration ttl = ((TieredCache) cacheManager.getCache("employees")).getSecond().getTtl();
+
+        // assert
+        assertThat(ttl).isEqualTo(Duration.ofSeconds(60));
+    }
+
+    private org.springframework.cache.Cache firstTier() {
+        return ((TieredCache) Objects.requireNonNull(cacheManager.getCache("employees"))).getFirst();
+    }
+
+    private void assertEmployeeIsExpected(Employee actual, Employee expectedEmployee) {
+        assertThat(actual.getId()).isEqualTo(expectedEmployee.getId());
+        assertThat(actual.getName()).isEqualTo(expectedEmployee.getName());
+        assertThat(actual.getDepartment()).isEqualTo(expectedEmployee.getDepartment());
+        assertThat(actual.getSalary()).isEqualTo(expectedEmployee.getSalary());
+        assertThat(actual.getVersion()).isEqualTo(expectedEmployee.getVersion());
+    }
+
+    private Employee createEmployee(Long id, String name, String department, Integer salary) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName(name);
+        employee.setDepartment(department);
+        employee.setSalary(salary);
+        employee.setVersion(id + 1);
+
+        return employee;
+    }
+}
@@ -0,0 +1,90 @@
+package jp.co.axa.apidemo.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Policy;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration test for cache configuration and cache metrics
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CacheConfigIntegrationTest {
+
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @After
+    public void teardown() {
+        Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+    }
+
+    @Test
+    public void test_employeesCache_boundedByWeight() {
+        // act
+        final Cache<Object, Object> actual = nativeCache("employees");
+
+        // assert
+        final Policy.Eviction<Object, Object> eviction = actual.policy().eviction().orElse(null);
+        assertThat(eviction).isNotNull();
+        assertThat(eviction.isWeighted()).isTrue();
+        assertThat(eviction.getMaximum()).isEqualTo(67108864L);
+        assertThat(actual.policy().expireAfterWrite()).isPresent();
+        assertThat(actual.policy().refreshAfterWrite()).isPresent();
+        assertThat(actual).isInstanceOf(LoadingCache.class);
+    }
+
+    @Test
+    public void test_cacheWithoutSpec_boundedBySize() {
+        // act
+        final Cache<Object, Object> actual = nativeCache("without spec");
+
+        // assert
+        final Policy.Eviction<Object, Object> eviction = actual.policy().eviction().orElse(null);
+        assertThat(eviction).isNotNull();
+        assertThat(eviction.isWeighted()).isFalse();
+        assertThat(eviction.getMaximum()).isEqualTo(10000L);
+    }
+
+    @Test
+    public void test_employeesCache_recordStatsAsMetrics() {
+        // arrange
+        final Employee employee = new Employee();
+        employee.setId(1L);
+        employee.setName("first name");
+        final org.springframework.cache.Cache cache = Objects.requireNonNull(cacheManager.getCache("employees"));
+        cache.put(employee.getId(), employee);
+
+        // act
+        cache.get(employee.getId());
+        cache.get(employee.getId() + 1);
+
+        // assert
+        assertThat(nativeCache("employees").stats().hitCount()).isEqualTo(1);
+        assertThat(nativeCache("employees").stats().missCount()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "employees").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", "employees").functionCounter()).isNotNull();
+        assertThat(meterRegistry.get("cache.load.duration").tag("cache", "employees").timeGauge()).isNotNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<Object, Object> nativeCache(String name) {
+        return (Cache<Object, Object>) Objects.requireNonNull(cacheManager.getCache(name)).getNativeCache();
+    }
+}
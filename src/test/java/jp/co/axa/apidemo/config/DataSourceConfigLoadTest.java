@@ -0,0 +1,186 @@
+package jp.co.axa.apidemo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.restassured.http.ContentType;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * requests to {@link jp.co.axa.apidemo.controllers.EmployeeController} outnumbering connections of the pool
+ * wait for a connection in turn, and are only answered by 503 once the connection timeout passes
+ *
+ * waiting is observed through the hikaricp.connections.* metrics
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.hikari.maximum-pool-size=" + DataSourceConfigLoadTest.POOL_SIZE,
+        "spring.datasource.hikari.connection-timeout=2000"
+})
+public class DataSourceConfigLoadTest {
+
+    static final int POOL_SIZE = 2;
+
+    private static final String URL_AUTHORIZATION = "http://localhost:%d/oauth/token";
+    private static final String URL_EMPLOYEES = "http://localhost:%d/api/v1/employees";
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 400;
+
+    @Value("${customized.credential.clientId}")
+    private String clientId;
+    @Value("${customized.credential.clientSecret}")
+    private String clientSecret;
+    @Value("${customized.credential.username}")
+    private String username;
+    @Value("${customized.credential.password}")
+    private String password;
+
+    @Autowired
+    private HikariDataSource dataSource;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private EmployeeRepository repository;
+
+    @LocalServerPort
+    private int port;
+
+    private String accessToken;
+
+    @Before
+    public void setup() {
+        accessToken = given()
+                .auth()
+                .preemptive().basic(clientId, clientSecret)
+                .contentType("application/x-www-form-urlencoded")
+                .formParam("grant_type", "password")
+                .formParam("username", username)
+                .formParam("password", password)
+                .post(String.format(URL_AUTHORIZATION, port))
+                .then().statusCode(200)
+                .extract().jsonPath().get("access_token");
+    }
+
+    @After
+    public void teardown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    public void test_saturatedPool_requestsQueued() throws Exception {
+        // arrange
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicInteger maxPending = new AtomicInteger();
+        final Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                maxActive.accumulateAndGet((int) gauge("hikaricp.connections.active"), Math::max);
+                maxPending.accumulateAndGet((int) gauge("hikaricp.connections.pending"), Math::max);
+                LockSupport.parkNanos(100_000);
+            }
+        });
+        sampler.start();
+        final long acquired = acquireCount();
+        // the pool is held until a request is seen waiting, sampling alone may miss short waits
+        final List<Connection> held = new ArrayList<>();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            held.add(dataSource.getConnection());
+        }
+
+        // act
+        final long start = System.nanoTime();
+        final List<Future<Integer>> statuses = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            final int index = i;
+            statuses.add(executor.submit(() -> saveEmployee("name " + index)));
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (maxPending.get() == 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(100_000);
+        }
+        for (Connection connection : held) {
+            connection.close();
+        }
+        final List<Integer> actual = new ArrayList<>(REQUESTS);
+        for (Future<Integer> status : statuses) {
+            actual.add(status.get());
+        }
+        final long elapsedNanos = System.nanoTime() - start;
+        running.set(false);
+        sampler.join();
+        executor.shutdown();
+        log.info("{} requests with {} threads on {} connections: {} requests per second, at most {} waiting",
+                REQUESTS, THREADS, POOL_SIZE, REQUESTS * 1_000_000_000L / elapsedNanos, maxPending.get());
+
+        // assert
+        assertThat(actual).hasSize(REQUESTS).containsOnly(200);
+        assertThat(maxActive.get()).isLessThanOrEqualTo(POOL_SIZE);
+        assertThat(maxPending.get()).isPositive();
+        assertThat(acquireCount() - acquired).isGreaterThanOrEqualTo(REQUESTS);
+        assertThat(repository.count()).isEqualTo(REQUESTS);
+    }
+
+    @Test
+    public void test_exhaustedPool_serviceUnavailable() throws Exception {
+        // arrange
+        final List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                held.add(dataSource.getConnection());
+            }
+
+            // act
+            final int actual = saveEmployee("name");
+
+            // assert
+            assertThat(actual).isEqualTo(503);
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+        assertThat(saveEmployee("name")).isEqualTo(200);
+    }
+
+    private int saveEmployee(String name) {
+        return given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .body("{\"name\": \"" + name + "\", \"department\": \"department\", \"salary\": 1000}")
+                .post(String.format(URL_EMPLOYEES, port))
+                .statusCode();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("pool", dataSource.getPoolName()).gauge().value();
+    }
+
+    private long acquireCount() {
+        return meterRegistry.get("hikaricp.connections.acquire").tag("pool", dataSource.getPoolName()).timer().count();
+    }
+}
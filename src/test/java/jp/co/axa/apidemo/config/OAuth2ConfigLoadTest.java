@@ -0,0 +1,142 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.security.CachingPasswordEncoder;
+import jp.co.axa.apidemo.security.CachingTokenStore;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * throughput of the token endpoint, which used to run two bcrypt rounds per request
+ *
+ * tokens per second are only logged since they depend on machine,
+ * number of bcrypt verifications is asserted instead
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class OAuth2ConfigLoadTest {
+
+    private static final String URL_AUTHORIZATION = "http://localhost:%d/oauth/token";
+    private static final String URL_EMPLOYEES = "http://localhost:%d/api/v1/employees";
+    private static final int THREADS = 4;
+    private static final int REQUESTS = 400;
+
+    @Value("${customized.credential.clientId}")
+    private String clientId;
+    @Value("${customized.credential.clientSecret}")
+    private String clientSecret;
+    @Value("${customized.credential.username}")
+    private String username;
+    @Value("${customized.credential.password}")
+    private String password;
+
+    @Autowired
+    private CachingPasswordEncoder passwordEncoder;
+    @Autowired
+    private CachingTokenStore tokenStore;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void test_token_throughput() throws Exception {
+        // arrange
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final long delegateMatches = passwordEncoder.getDelegateMatches().sum();
+
+        // act
+        final long start = System.nanoTime();
+        final List<Future<Integer>> statuses = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            statuses.add(executor.submit(() -> requestToken(username, password)));
+        }
+        final List<Integer> actual = new ArrayList<>(REQUESTS);
+        for (Future<Integer> status : statuses) {
+            actual.add(status.get());
+        }
+        final long elapsedNanos = System.nanoTime() - start;
+        executor.shutdown();
+        log.info("{} tokens with {} threads: {} tokens per second", REQUESTS, THREADS, REQUESTS * 1_000_000_000L / elapsedNanos);
+
+        // assert
+        assertThat(actual).hasSize(REQUESTS).containsOnly(200);
+        // client secret and password, at most once per thread before the first verification is remembered
+        assertThat(passwordEncoder.getDelegateMatches().sum() - delegateMatches).isLessThanOrEqualTo(2L * THREADS);
+    }
+
+    @Test
+    public void test_token_wrongPassword_notRemembered() {
+        // arrange
+        requestToken(username, password);
+        final long delegateMatches = passwordEncoder.getDelegateMatches().sum();
+
+        // act
+        final int first = requestToken(username, "wrong");
+        final int second = requestToken(username, "wrong");
+
+        // assert
+        assertThat(first).isEqualTo(400);
+        assertThat(second).isEqualTo(400);
+        assertThat(passwordEncoder.getDelegateMatches().sum() - delegateMatches).isEqualTo(2);
+    }
+
+    @Test
+    public void test_token_unknownUser() {
+        // act
+        final int actual = requestToken("nobody", password);
+
+        // assert
+        assertThat(actual).isEqualTo(400);
+    }
+
+    @Test
+    public void test_resource_tokenVerifiedOnce() {
+        // arrange
+        final String token = given()
+                .auth()
+                .preemptive().basic(clientId, clientSecret)
+                .contentType("application/x-www-form-urlencoded")
+                .formParam("grant_type", "password")
+                .formParam("username", username)
+                .formParam("password", password)
+                .post(String.format(URL_AUTHORIZATION, port))
+                .then().statusCode(200)
+                .extract().jsonPath().get("access_token");
+        final long misses = tokenStore.getVerified().stats().missCount();
+
+        // act
+        for (int i = 0; i < 10; i++) {
+            given().auth().oauth2(token).get(String.format(URL_EMPLOYEES, port)).then().statusCode(200);
+        }
+
+        // assert
+        assertThat(tokenStore.getVerified().stats().missCount() - misses).isEqualTo(1);
+    }
+
+    private int requestToken(String username, String password) {
+        return given()
+                .auth()
+                .preemptive().basic(clientId, clientSecret)
+                .contentType("application/x-www-form-urlencoded")
+                .formParam("grant_type", "password")
+                .formParam("username", username)
+                .formParam("password", password)
+                .post(String.format(URL_AUTHORIZATION, port))
+                .statusCode();
+    }
+}
@@ -0,0 +1,152 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.flywaydb.core.Flyway;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * read-only transactions opting in are served by the replica and others by the primary,
+ * two separate in-memory databases stand for them, so rows written to one are never seen by the other
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "customized.datasource.replica.enabled=true",
+        "customized.datasource.replica.url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1"
+})
+public class ReadWriteRoutingIntegrationTest {
+
+    private static final long REPLICA_ONLY_ID = 1_000_000L;
+
+    @Autowired
+    private EmployeeService employeeService;
+    @Autowired
+    private EmployeeRepository repository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+
+    @Before
+    public void setup() {
+        // a real replica would receive the schema from the primary
+        Flyway.configure().dataSource(replicaDataSource).load().migrate();
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        // pools never auto-commit, so plain JDBC has to commit by itself
+        inTransaction(replicaDataSource, () -> replica.update(
+                "insert into EMPLOYEE (ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION)" +
+                " values (?, 'replica name', 1000, 'replica department', 0)", REPLICA_ONLY_ID));
+    }
+
+    @After
+    public void teardown() {
+        inTransaction(primaryDataSource, () -> primary.update("delete from EMPLOYEE"));
+        inTransaction(replicaDataSource, () -> replica.update("delete from EMPLOYEE"));
+        entityManagerFactory.getCache().evictAll();
+        Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+        Objects.requireNonNull(cacheManager.getCache(EmployeeIdIndex.CACHE_NAME)).clear();
+    }
+
+    @Test
+    public void test_cachedReads_servedByPrimary() {
+        // arrange
+        inTransaction(primaryDataSource, () -> primary.update(
+                "insert into EMPLOYEE (ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION)" +
+                " values (?, 'primary name', 1000, 'primary department', 1)", REPLICA_ONLY_ID));
+
+        // act
+        final Employee actual = employeeService.getEmployee(REPLICA_ONLY_ID);
+
+        // assert
+        assertThat(actual.getName()).isEqualTo("primary name");
+        assertThat(employeeService.retrieveEmployees(null, 10)).extracting(Employee::getName).containsExactly("primary name");
+        assertThat(employeeService.retrieveEmployees()).extracting(Employee::getName).containsExactly("primary name");
+    }
+
+    @Test
+    public void test_export_servedByReplica() {
+        // act
+        final List<Employee> actual = new ArrayList<>();
+        employeeService.exportEmployees(actual::add);
+
+        // assert
+        assertThat(actual).extracting(Employee::getName).containsExactly("replica name");
+        assertThat(entityManagerFactory.getCache().contains(Employee.class, REPLICA_ONLY_ID)).isFalse();
+    }
+
+    @Test
+    public void test_writes_servedByPrimary() {
+        // arrange
+        final Employee employee = new Employee();
+        employee.setName("primary name");
+        employee.setDepartment("primary department");
+        employee.setSalary(2000);
+
+        // act
+        final Long id = employeeService.saveEmployee(employee).getId();
+
+        // assert
+        assertThat(primary.queryForObject("select EMPLOYEE_NAME from EMPLOYEE where ID = ?", String.class, id))
+                .isEqualTo("primary name");
+        assertThat(replica.queryForObject("select count(*) from EMPLOYEE where ID = ?", Long.class, id)).isZero();
+    }
+
+    @Test
+    public void test_readOnlyTransaction_notFlushed() {
+        // arrange
+        final TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        // act
+        ReadWriteRoutingDataSource.onReplica(() -> readOnly.execute(status -> {
+            repository.findById(REPLICA_ONLY_ID).get().setName("changed name");
+            return null;
+        }));
+
+        // assert
+        assertThat(replica.queryForObject("select EMPLOYEE_NAME from EMPLOYEE where ID = ?", String.class, REPLICA_ONLY_ID))
+                .isEqualTo("replica name");
+    }
+
+    private void inTransaction(DataSource dataSource, Runnable runnable) {
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            runnable.run();
+            return null;
+        });
+    }
+}
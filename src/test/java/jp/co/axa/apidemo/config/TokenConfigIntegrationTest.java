@@ -0,0 +1,104 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.controllers.JwkSetController;
+import jp.co.axa.apidemo.security.SigningKeys;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.jwk.JwkTokenStore;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * test for tokens signed by rotated keys, verified by this node and by a JWK set consumer
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class TokenConfigIntegrationTest {
+
+    private static final String URL_AUTHORIZATION = "http://localhost:%d/oauth/token";
+    private static final String URL_JWK_SET = "http://localhost:%d" + JwkSetController.PATH;
+    private static final String URL_EMPLOYEES = "http://localhost:%d/api/v1/employees";
+
+    @Value("${customized.credential.clientId}")
+    private String clientId;
+    @Value("${customized.credential.clientSecret}")
+    private String clientSecret;
+    @Value("${customized.credential.username}")
+    private String username;
+    @Value("${customized.credential.password}")
+    private String password;
+
+    @Autowired
+    private SigningKeys signingKeys;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void test_token_verifiedByJwkSet() {
+        // arrange
+        final String token = getToken();
+        final JwkTokenStore validator = new JwkTokenStore(String.format(URL_JWK_SET, port));
+
+        // act
+        final OAuth2Authentication actual = validator.readAuthentication(token);
+
+        // assert
+        assertThat(JwtHelper.headers(token)).containsEntry("alg", "RS256").containsEntry("kid", signingKeys.current().getKid());
+        assertThat(actual.getName()).isEqualTo(username);
+    }
+
+    @Test
+    public void test_rotate_tokenInFlightStillAccepted() {
+        // arrange
+        final String previous = getToken();
+
+        // act
+        signingKeys.rotate();
+        final String current = getToken();
+
+        // assert
+        final List<String> kids = given().get(String.format(URL_JWK_SET, port))
+                .then().statusCode(200)
+                .extract().jsonPath().getList("keys.kid", String.class);
+        assertThat(kids).contains(JwtHelper.headers(previous).get("kid"), JwtHelper.headers(current).get("kid"));
+        assertThat(JwtHelper.headers(current).get("kid")).isNotEqualTo(JwtHelper.headers(previous).get("kid"));
+        given().auth().oauth2(previous).get(String.format(URL_EMPLOYEES, port)).then().statusCode(200);
+        given().auth().oauth2(current).get(String.format(URL_EMPLOYEES, port)).then().statusCode(200);
+        assertThat(new JwkTokenStore(String.format(URL_JWK_SET, port)).readAuthentication(previous).getName()).isEqualTo(username);
+    }
+
+    @Test
+    public void test_tokenKey_public() {
+        // act
+        final String actual = given().get(String.format("http://localhost:%d/oauth/token_key", port))
+                .then().statusCode(200)
+                .extract().jsonPath().getString("value");
+
+        // assert
+        assertThat(actual).startsWith("-----BEGIN PUBLIC KEY-----");
+    }
+
+    private String getToken() {
+        return given()
+                .auth()
+                .preemptive().basic(clientId, clientSecret)
+                .contentType("application/x-www-form-urlencoded")
+                .formParam("grant_type", "password")
+                .formParam("username", username)
+                .formParam("password", password)
+                .post(String.format(URL_AUTHORIZATION, port))
+                .then().statusCode(200)
+                .extract().jsonPath().get("access_token");
+    }
+}
@@ -0,0 +1,317 @@
+package jp.co.axa.apidemo.controllers;
+
+import io.restassured.response.Response;
+import jp.co.axa.apidemo.cache.EmployeeChangeCounter;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import jp.co.axa.apidemo.services.EmployeeService;
+import jp.co.axa.apidemo.services.EmployeeServiceExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.isEmptyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * slow calls of {@link EmployeeService} hold as many servlet threads as requests on {@link EmployeeController},
+ * but none on {@link AsyncEmployeeController}, where they only hold threads of {@link EmployeeServiceExecutor}
+ *
+ * the container has fewer threads than the pool has connections, so only async requests can use all connections
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.max-threads=" + AsyncEmployeeControllerLoadTest.SERVLET_THREADS,
+        "server.tomcat.min-spare-threads=" + AsyncEmployeeControllerLoadTest.SERVLET_THREADS,
+        "spring.datasource.hikari.maximum-pool-size=" + AsyncEmployeeControllerLoadTest.POOL_SIZE,
+        "customized.async.queueCapacity=" + AsyncEmployeeControllerLoadTest.QUEUE_CAPACITY,
+        "customized.async.timeoutMillis=" + AsyncEmployeeControllerLoadTest.TIMEOUT_MILLIS
+})
+public class AsyncEmployeeControllerLoadTest {
+
+    static final int SERVLET_THREADS = 2;
+    static final int POOL_SIZE = 8;
+    // as many as concurrent clients, tasks submitted faster than idle threads take them never overflow the queue
+    static final int QUEUE_CAPACITY = POOL_SIZE;
+    static final int TIMEOUT_MILLIS = 1000;
+
+    private static final String URL_AUTHORIZATION = "http://localhost:%d/oauth/token";
+    private static final String URL_EMPLOYEE = "http://localhost:%d/api/v1/employees/%d";
+    private static final String URL_ASYNC_EMPLOYEE = "http://localhost:%d/api/v1/async/employees/%d";
+    private static final String URL_ASYNC_EMPLOYEES = "http://localhost:%d/api/v1/async/employees";
+    private static final long EMPLOYEE_ID = 1L;
+    private static final int CALL_MILLIS = 200;
+    private static final int REQUESTS = POOL_SIZE * 4;
+
+    @Value("${customized.credential.clientId}")
+    private String clientId;
+    @Value("${customized.credential.clientSecret}")
+    private String clientSecret;
+    @Value("${customized.credential.username}")
+    private String username;
+    @Value("${customized.credential.password}")
+    private String password;
+
+    @MockBean
+    private EmployeeService employeeService;
+    @Autowired
+    private EmployeeServiceExecutor employeeServiceExecutor;
+    @Autowired
+    private EmployeeChangeCounter employeeChangeCounter;
+
+    @LocalServerPort
+    private int port;
+
+    private String accessToken;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private volatile long callMillis = CALL_MILLIS;
+
+    @Before
+    public void setup() {
+        accessToken = given()
+                .auth()
+                .preemptive().basic(clientId, clientSecret)
+                .contentType("application/x-www-form-urlencoded")
+                .formParam("grant_type", "password")
+                .formParam("username", username)
+                .formParam("password", password)
+                .post(String.format(URL_AUTHORIZATION, port))
+                .then().statusCode(200)
+                .extract().jsonPath().get("access_token");
+
+        final Employee employee = new Employee();
+        employee.setId(EMPLOYEE_ID);
+        employee.setName("name");
+        employee.setDepartment("department");
+        employee.setSalary(1000);
+        employee.setVersion(0L);
+
+        // stands for a slow query, counting calls running at the same time
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(callMillis);
+                return employee;
+            } finally {
+                running.decrementAndGet();
+            }
+        }).when(employeeService).getEmployee(anyLong());
+    }
+
+    @After
+    public void teardown() {
+        // calls timed out keep running, the next test starts with all threads free
+        final ThreadPoolExecutor executor = employeeServiceExecutor.getExecutor();
+        while (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    @Test
+    public void test_slowCalls_notBoundByServletThreads() throws Exception {
+        // act
+        final List<Integer> synchronous = getConcurrently(URL_EMPLOYEE);
+        final int synchronousRunning = maxRunning.getAndSet(0);
+        final List<Integer> asynchronous = getConcurrently(URL_ASYNC_EMPLOYEE);
+        final int asynchronousRunning = maxRunning.get();
+
+        // assert
+        assertThat(synchronous).hasSize(REQUESTS).containsOnly(200);
+        assertThat(asynchronous).hasSize(REQUESTS).containsOnly(200);
+        assertThat(synchronousRunning).isLessThanOrEqualTo(SERVLET_THREADS);
+        assertThat(asynchronousRunning).isGreaterThan(SERVLET_THREADS).isLessThanOrEqualTo(POOL_SIZE);
+    }
+
+    @Test
+    public void test_fullQueue_serviceUnavailable() {
+        // arrange
+        final ThreadPoolExecutor executor = employeeServiceExecutor.getExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            // one by one into threads, tasks offered faster than threads take them would overflow the queue
+            for (int i = 0; i < POOL_SIZE; i++) {
+                executor.execute(blocked);
+                while (executor.getActiveCount() <= i) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+            for (int i = 0; i < QUEUE_CAPACITY; i++) {
+                executor.execute(blocked);
+            }
+
+            // act
+            final long start = System.nanoTime();
+            final Response actual = getEmployee(URL_ASYNC_EMPLOYEE);
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // assert
+            assertThat(actual.statusCode()).isEqualTo(503);
+            assertThat(actual.header(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+            assertThat(elapsedMillis).isLessThan(TIMEOUT_MILLIS);
+        } finally {
+            release.countDown();
+        }
+        assertThat(getEmployee(URL_ASYNC_EMPLOYEE).statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    public void test_slowCall_timedOut() {
+        // arrange
+        callMillis = TIMEOUT_MILLIS * 2;
+
+        // act
+        final Response actual = getEmployee(URL_ASYNC_EMPLOYEE);
+
+        // assert
+        // the call started, so it may have been applied and must not be retried blindly
+        assertThat(actual.statusCode()).isEqualTo(504);
+        assertThat(actual.header(HttpHeaders.RETRY_AFTER)).isNull();
+    }
+
+    @Test
+    public void test_queuedCall_timedOut() {
+        // arrange
+        final ThreadPoolExecutor executor = employeeServiceExecutor.getExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                while (executor.getActiveCount() <= i) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+
+            // act
+            final Response actual = getEmployee(URL_ASYNC_EMPLOYEE);
+
+            // assert
+            assertThat(actual.statusCode()).isEqualTo(503);
+            assertThat(actual.header(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        } finally {
+            release.countDown();
+        }
+        while (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        verify(employeeService, never()).getEmployee(anyLong());
+    }
+
+    @Test
+    public void test_getEmployees_notModified() {
+        // arrange
+        when(employeeService.retrieveEmployees(any(), anyInt())).thenReturn(Collections.emptyList());
+
+        // act
+        final String eTag = given()
+                .header("Authorization", "bearer " + accessToken)
+                .get(String.format(URL_ASYNC_EMPLOYEES, port)).then()
+                .statusCode(200)
+                .extract().header(HttpHeaders.ETAG);
+
+        // assert
+        assertThat(eTag).isEqualTo("\"" + employeeChangeCounter.current() + "\"");
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .get(String.format(URL_ASYNC_EMPLOYEES, port)).then()
+                .statusCode(304);
+        verify(employeeService, times(1)).retrieveEmployees(any(), anyInt());
+    }
+
+    @Test
+    public void test_getEmployee_notModified() {
+        // arrange
+        callMillis = 0;
+
+        // act
+        final String eTag = getEmployee(URL_ASYNC_EMPLOYEE).then()
+                .statusCode(200)
+                .extract().header(HttpHeaders.ETAG);
+
+        // assert
+        assertThat(eTag).isEqualTo("\"0\"");
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .get(String.format(URL_ASYNC_EMPLOYEE, port, EMPLOYEE_ID)).then()
+                .statusCode(304)
+                .header(HttpHeaders.ETAG, eTag)
+                .body(isEmptyString());
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header(HttpHeaders.ACCEPT, EmployeeFormat.SMILE.getMediaType().toString())
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .get(String.format(URL_ASYNC_EMPLOYEE, port, EMPLOYEE_ID)).then()
+                .statusCode(200)
+                .header(HttpHeaders.ETAG, "\"0-smile\"");
+    }
+
+    private List<Integer> getConcurrently(String url) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE);
+        final long start = System.nanoTime();
+        final List<Future<Integer>> statuses = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            statuses.add(executor.submit(() -> getEmployee(url).statusCode()));
+        }
+        final List<Integer> actual = new ArrayList<>(REQUESTS);
+        for (Future<Integer> status : statuses) {
+            actual.add(status.get());
+        }
+        final long elapsedNanos = System.nanoTime() - start;
+        executor.shutdown();
+        log.info("{} requests of {} ms with {} servlet threads: {} requests per second, at most {} running",
+                REQUESTS, callMillis, SERVLET_THREADS, REQUESTS * 1_000_000_000L / elapsedNanos, maxRunning.get());
+        return actual;
+    }
+
+    private Response getEmployee(String url) {
+        return given()
+                .header("Authorization", "bearer " + accessToken)
+                .get(String.format(url, port, EMPLOYEE_ID));
+    }
+}
@@ -1,7 +1,14 @@
 package jp.co.axa.apidemo.controllers;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
 import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
+import jp.co.axa.apidemo.cache.EmployeeResponseCache;
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.format.EmployeeFormat;
+import jp.co.axa.apidemo.format.EmployeeFormats;
 import jp.co.axa.apidemo.repositories.EmployeeRepository;
 import org.junit.After;
 import org.junit.Test;
@@ -14,11 +21,17 @@ import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
 
 import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 
 /**
  * e2e test for RESTful API
@@ -43,6 +56,8 @@ public class EmployeeControllerE2ETest {
     private EmployeeRepository repository;
     @Autowired
     private CacheManager cacheManager;
+    @Autowired
+    private EmployeeFormats employeeFormats;
 
     @LocalServerPort
     private int port;
@@ -51,6 +66,10 @@ public class EmployeeControllerE2ETest {
     public void teardown() {
         repository.deleteAll();
         cacheManager.getCache("employees").clear();
+        cacheManager.getCache(EmployeeIdIndex.CACHE_NAME).clear();
+        // rows are written by repository here, which does not evict encoded responses
+        cacheManager.getCache(EmployeeResponseCache.CACHE_NAME).clear();
+        cacheManager.getCache(EmployeeResponseCache.PAGES_CACHE_NAME).clear();
     }
 
     @Test
@@ -78,6 +97,69 @@ public class EmployeeControllerE2ETest {
                 );
     }
 
+    @Test
+    public void test_getEmployees_paginated() {
+        // arrange
+        final Employee savedEmployeeFirst = repository.save(createEmployee("first name", "first department", 1000));
+        final Employee savedEmployeeSecond = repository.save(createEmployee("second name", "second department", 2000));
+        final Employee savedEmployeeThird = repository.save(createEmployee("third name", "third department", 3000));
+
+        final String accessToken = getCredentials();
+
+        // act && assert
+        final String cursor = given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=2")).then()
+                .statusCode(200)
+                .header(EmployeeController.HEADER_NEXT_CURSOR, equalTo(savedEmployeeSecond.getId().toString()))
+                .body("id", contains(savedEmployeeFirst.getId().intValue(), savedEmployeeSecond.getId().intValue()))
+                .extract().header(EmployeeController.HEADER_NEXT_CURSOR);
+
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=2&after=" + cursor)).then()
+                .statusCode(200)
+                .header(EmployeeController.HEADER_NEXT_CURSOR, nullValue())
+                .body("id", contains(savedEmployeeThird.getId().intValue()));
+    }
+
+    @Test
+    public void test_getEmployees_invalidLimit() {
+        // arrange
+        final String accessToken = getCredentials();
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=0")).then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void test_exportEmployees() {
+        // arrange
+        final Employee savedEmployeeFirst = repository.save(createEmployee("first name", "first department", 1000));
+        final Employee savedEmployeeSecond = repository.save(createEmployee("second name", "second department", 2000));
+
+        final String accessToken = getCredentials();
+
+        // act
+        final String body = given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/export")).then()
+                .statusCode(200)
+                .contentType(startsWith(EmployeeController.APPLICATION_NDJSON_VALUE))
+                .extract().asString();
+
+        // assert
+        final String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(JsonPath.from(lines[0]).getLong("id")).isEqualTo(savedEmployeeFirst.getId());
+        assertThat(JsonPath.from(lines[0]).getString("name")).isEqualTo("first name");
+        assertThat(JsonPath.from(lines[1]).getLong("id")).isEqualTo(savedEmployeeSecond.getId());
+        assertThat(JsonPath.from(lines[1]).getString("name")).isEqualTo("second name");
+    }
+
     @Test
     public void test_getEmployee() {
         // arrange
@@ -130,6 +212,137 @@ public class EmployeeControllerE2ETest {
 
     }
 
+    @Test
+    public void test_saveEmployees() {
+        // arrange
+        final String accessToken = getCredentials();
+        final String requestBody =
+                "[" +
+                "  {\"name\": \"first name\", \"department\": \"first department\", \"salary\": 1000}," +
+                "  {\"name\": \"second name\", \"department\": \"second department\", \"salary\": 2000}" +
+                "]";
+
+        // act && assert
+        final List<Long> ids = given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .body(requestBody).when()
+                .post(String.format(URL_RESOURCE, port, "/employees/batch")).then()
+                .statusCode(200)
+                .extract().jsonPath().getList("", Long.class);
+
+        assertThat(ids).hasSize(2);
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/")).then()
+                .statusCode(200)
+                .body(
+                        "id", hasItems(ids.get(0).intValue(), ids.get(1).intValue()),
+                        "name", hasItems("first name", "second name"),
+                        "department", hasItems("first department", "second department"),
+                        "salary", hasItems(1000, 2000)
+                );
+    }
+
+    @Test
+    public void test_searchEmployees() {
+        // arrange
+        final String accessToken = getCredentials();
+        final String requestBody =
+                "[" +
+                "  {\"name\": \"Taro Searchable\", \"department\": \"Sales\", \"salary\": 1000}," +
+                "  {\"name\": \"Hanako Searchable\", \"department\": \"Sales\", \"salary\": 2000}," +
+                "  {\"name\": \"Jiro Searchable\", \"department\": \"Engineering\", \"salary\": 3000}" +
+                "]";
+        final List<Long> ids = given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .body(requestBody).when()
+                .post(String.format(URL_RESOURCE, port, "/employees/batch")).then()
+                .statusCode(200)
+                .extract().jsonPath().getList("", Long.class);
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/search?q=searchable&department=Sales&minSalary=1500")).then()
+                .statusCode(200)
+                .body(
+                        "id", contains(ids.get(1).intValue()),
+                        "name", contains("Hanako Searchable")
+                );
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/search?q=SEARCHABLE&limit=2")).then()
+                .statusCode(200)
+                .header(EmployeeController.HEADER_NEXT_CURSOR, String.valueOf(ids.get(1)))
+                .body("id", contains(ids.get(0).intValue(), ids.get(1).intValue()));
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .body("{\"department\": \"Sales\"}").when()
+                .patch(String.format(URL_RESOURCE, port, "/employees/" + ids.get(2))).then()
+                .statusCode(200);
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/search?q=searchable&department=Sales")).then()
+                .statusCode(200)
+                .body("id", contains(ids.get(0).intValue(), ids.get(1).intValue(), ids.get(2).intValue()));
+    }
+
+    @Test
+    public void test_searchEmployees_reversedSalaryRange() {
+        // arrange
+        final String accessToken = getCredentials();
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/search?minSalary=2000&maxSalary=1000")).then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void test_getStatistics() {
+        // arrange
+        final String accessToken = getCredentials();
+        final String requestBody =
+                "[" +
+                "  {\"name\": \"first name\", \"department\": \"Statistics\", \"salary\": 1000}," +
+                "  {\"name\": \"second name\", \"department\": \"Statistics\", \"salary\": 3000}" +
+                "]";
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .body(requestBody).when()
+                .post(String.format(URL_RESOURCE, port, "/employees/batch")).then()
+                .statusCode(200);
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/stats/by-department")).then()
+                .statusCode(200)
+                .body(
+                        "find { it.department == 'Statistics' }.headcount", equalTo(2),
+                        "find { it.department == 'Statistics' }.salarySum", equalTo(4000),
+                        "find { it.department == 'Statistics' }.salaryMin", equalTo(1000),
+                        "find { it.department == 'Statistics' }.salaryMax", equalTo(3000),
+                        "find { it.department == 'Statistics' }.salaryAverage", equalTo(2000.0f)
+                );
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/stats")).then()
+                .statusCode(200)
+                .body("headcount", greaterThanOrEqualTo(2), "department", nullValue());
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .post(String.format(URL_RESOURCE, port, "/employees/stats/recompute")).then()
+                .statusCode(200)
+                .body("$", not(hasItem("Statistics")));
+    }
+
     @Test
     public void test_deleteEmployee() {
         // arrange
@@ -184,6 +397,303 @@ public class EmployeeControllerE2ETest {
 
     }
 
+    @Test
+    public void test_patchEmployee() {
+        // arrange
+        final Employee savedEmployee = repository.save(createEmployee("first name", "first department", 1000));
+        final String accessToken = getCredentials();
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("If-Match", "\"0\"")
+                .contentType(ContentType.JSON)
+                .body("{\"salary\": 2000}").when()
+                .patch(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                .statusCode(200)
+                .header("ETag", equalTo("\"1\""));
+
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                .statusCode(200)
+                .body(
+                        "name", equalTo("first name"),
+                        "department", equalTo("first department"),
+                        "salary", equalTo(2000),
+                        "version", equalTo(1)
+                );
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .body("{\"salary\": 3000}").when()
+                .patch(String.format(URL_RESOURCE, port, "/employees/" + (savedEmployee.getId() + 1000))).then()
+                .statusCode(404);
+    }
+
+    @Test
+    public void test_getEmployee_notModified() {
+        // arrange
+        final Employee savedEmployee = repository.save(createEmployee("first name", "first department", 1000));
+        final String accessToken = getCredentials();
+
+        // act && assert
+        final String eTag = given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                .statusCode(200)
+                .header("ETag", equalTo("\"0\""))
+                .extract().header("ETag");
+        // a cold response cache, the conditional GET must not encode a body only to answer 304
+        cacheManager.getCache(EmployeeResponseCache.CACHE_NAME).clear();
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("If-None-Match", eTag).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                .statusCode(304)
+                .header("ETag", equalTo(eTag))
+                .body(equalTo(""));
+        assertThat(cacheManager.getCache(EmployeeResponseCache.CACHE_NAME).get("JSON:" + savedEmployee.getId())).isNull();
+    }
+
+    @Test
+    public void test_getEmployees_notModifiedUntilWrite() {
+        // arrange
+        final Employee savedEmployee = repository.save(createEmployee("first name", "first department", 1000));
+        final String accessToken = getCredentials();
+
+        final String eTag = given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=10")).then()
+                .statusCode(200)
+                .extract().header("ETag");
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("If-None-Match", eTag).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=10")).then()
+                .statusCode(304);
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .body("{\"name\": \"first name update\"}").when()
+                .put(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                .statusCode(200);
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("If-None-Match", eTag).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=10")).then()
+                .statusCode(200)
+                .header("ETag", not(equalTo(eTag)))
+                .body("name", contains("first name update"));
+    }
+
+    @Test
+    public void test_getEmployees_gzipEncoded() {
+        // arrange
+        for (int i = 0; i < 50; i++) {
+            repository.save(createEmployee("name " + i, "department " + i, 1000 + i));
+        }
+        final String accessToken = getCredentials();
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("Accept-Encoding", "gzip").when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=100")).then()
+                .statusCode(200)
+                .header("Content-Encoding", equalTo("gzip"))
+                .header("Vary", equalTo("Accept, Accept-Encoding"))
+                .body("size()", equalTo(50));
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("Accept-Encoding", "gzip;q=0, identity").when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=100")).then()
+                .statusCode(200)
+                .header("Content-Encoding", nullValue())
+                .body("size()", equalTo(50));
+    }
+
+    @Test
+    public void test_eTags_differByRepresentation() {
+        // arrange
+        Employee savedEmployee = null;
+        for (int i = 0; i < 50; i++) {
+            savedEmployee = repository.save(createEmployee("name " + i, "department " + i, 1000 + i));
+        }
+        final String accessToken = getCredentials();
+        final String url = String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId());
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .accept(EmployeeFormat.PROTOBUF.getMediaType().toString())
+                .header("If-None-Match", "\"0\"").when()
+                .get(url).then()
+                .statusCode(200)
+                .header("ETag", equalTo("\"0-protobuf\""));
+
+        final String gzipETag = given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("Accept-Encoding", "gzip").when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=100")).then()
+                .statusCode(200)
+                .header("ETag", endsWith("-gzip\""))
+                .extract().header("ETag");
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("Accept-Encoding", "gzip;q=0, identity")
+                .header("If-None-Match", gzipETag).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=100")).then()
+                .statusCode(200)
+                .header("Content-Encoding", nullValue())
+                .header("ETag", equalTo(gzipETag.replace("-gzip", "")));
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("Accept-Encoding", "gzip")
+                .header("If-None-Match", gzipETag).when()
+                .get(String.format(URL_RESOURCE, port, "/employees?limit=100")).then()
+                .statusCode(304)
+                .header("ETag", equalTo(gzipETag));
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(ContentType.JSON)
+                .header("If-Match", "\"0-protobuf\"")
+                .body("{\"name\": \"name update\"}").when()
+                .put(url).then()
+                .statusCode(200)
+                .header("ETag", equalTo("\"1\""));
+    }
+
+    @Test
+    public void test_getEmployee_binaryFormats() throws Exception {
+        // arrange
+        final Employee savedEmployee = repository.save(createEmployee("first name", "first department", 1000));
+        final String accessToken = getCredentials();
+        final JavaType type = TypeFactory.defaultInstance().constructType(Employee.class);
+
+        for (EmployeeFormat format : new EmployeeFormat[]{ EmployeeFormat.SMILE, EmployeeFormat.CBOR, EmployeeFormat.PROTOBUF }) {
+            // act
+            final byte[] body = given()
+                    .header("Authorization", "bearer " + accessToken)
+                    .accept(format.getMediaType().toString()).when()
+                    .get(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                    .statusCode(200)
+                    .contentType(equalTo(format.getMediaType().toString()))
+                    .header("Vary", equalTo("Accept"))
+                    .extract().asByteArray();
+
+            // assert
+            final Employee employee = (Employee) read(body, type, format);
+            assertThat(employee.getId()).isEqualTo(savedEmployee.getId());
+            assertThat(employee.getName()).isEqualTo("first name");
+            assertThat(employee.getDepartment()).isEqualTo("first department");
+            assertThat(employee.getSalary()).isEqualTo(1000);
+            assertThat(employee.getVersion()).isEqualTo(savedEmployee.getVersion());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_getEmployees_protobuf() throws Exception {
+        // arrange
+        final Employee savedEmployeeFirst = repository.save(createEmployee("first name", "first department", 1000));
+        final Employee savedEmployeeSecond = repository.save(createEmployee("second name", "second department", 2000));
+        final String accessToken = getCredentials();
+        final JavaType type = TypeFactory.defaultInstance().constructCollectionType(List.class, Employee.class);
+
+        // act
+        final byte[] body = given()
+                .header("Authorization", "bearer " + accessToken)
+                .accept(EmployeeFormat.PROTOBUF.getMediaType().toString()).when()
+                .get(String.format(URL_RESOURCE, port, "/employees")).then()
+                .statusCode(200)
+                .contentType(equalTo(EmployeeFormat.PROTOBUF.getMediaType().toString()))
+                .extract().asByteArray();
+
+        // assert
+        final List<Employee> employees = (List<Employee>) read(body, type, EmployeeFormat.PROTOBUF);
+        assertThat(employees).extracting(Employee::getId)
+                .containsExactly(savedEmployeeFirst.getId(), savedEmployeeSecond.getId());
+        assertThat(employees).extracting(Employee::getName).containsExactly("first name", "second name");
+    }
+
+    @Test
+    public void test_saveEmployee_protobuf() {
+        // arrange
+        final String accessToken = getCredentials();
+        final byte[] requestBody = employeeFormats.write(
+                createEmployee("first name", "first department", 1000), EmployeeFormat.PROTOBUF);
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .contentType(EmployeeFormat.PROTOBUF.getMediaType().toString())
+                .body(requestBody).when()
+                .post(String.format(URL_RESOURCE, port, "/employees")).then()
+                .statusCode(200);
+
+        given()
+                .header("Authorization", "bearer " + accessToken).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/")).then()
+                .statusCode(200)
+                .body(
+                        "name", hasItems("first name"),
+                        "department", hasItems("first department"),
+                        "salary", hasItems(1000)
+                );
+    }
+
+    @Test
+    public void test_getStatistics_protobufNotAcceptable() {
+        // arrange
+        final String accessToken = getCredentials();
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .accept(EmployeeFormat.PROTOBUF.getMediaType().toString()).when()
+                .get(String.format(URL_RESOURCE, port, "/employees/stats")).then()
+                .statusCode(406);
+    }
+
+    @Test
+    public void test_updateEmployee_staleIfMatch() {
+        // arrange
+        final Employee savedEmployee = repository.save(createEmployee("first name", "first department", 1000));
+        final String accessToken = getCredentials();
+        final String requestBody = "{\"name\": \"first name update\", \"salary\": 2000}";
+
+        // act && assert
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("If-Match", "\"0\"")
+                .contentType(ContentType.JSON)
+                .body(requestBody).when()
+                .put(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                .statusCode(200)
+                .header("ETag", equalTo("\"1\""));
+
+        given()
+                .header("Authorization", "bearer " + accessToken)
+                .header("If-Match", "\"0\"")
+                .contentType(ContentType.JSON)
+                .body(requestBody).when()
+                .put(String.format(URL_RESOURCE, port, "/employees/" + savedEmployee.getId())).then()
+                .statusCode(412);
+
+        assertThat(repository.findById(savedEmployee.getId()).get().getVersion()).isEqualTo(1L);
+    }
+
     private String getCredentials() {
         final String authorization = Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
         return given()
@@ -199,6 +709,13 @@ public class EmployeeControllerE2ETest {
     }
 
 
+    private Object read(byte[] body, JavaType type, EmployeeFormat format) throws IOException {
+        if (format == EmployeeFormat.PROTOBUF) {
+            return employeeFormats.readProtobuf(type, new ByteArrayInputStream(body));
+        }
+        return employeeFormats.mapper(format).readValue(body, type);
+    }
+
     private Employee createEmployee(String name, String department, Integer salary) {
         final Employee employee = new Employee();
         employee.setName(name);
@@ -0,0 +1,183 @@
+package jp.co.axa.apidemo.controllers;
+
+import io.restassured.response.Response;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.ResourceNotFoundException;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * concurrent identical reads on {@link EmployeeController} cost one call of {@link EmployeeService}, one DB hit,
+ * and are answered by the same body
+ *
+ * each call stands for a slow query, which only returns once all other requests have joined it
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class EmployeeResponseCoalescerLoadTest {
+
+    private static final String URL_AUTHORIZATION = "http://localhost:%d/oauth/token";
+    private static final String URL_EMPLOYEE = "http://localhost:%d/api/v1/employees/1";
+    private static final String URL_EMPLOYEES = "http://localhost:%d/api/v1/employees?limit=2";
+    private static final int REQUESTS = 16;
+    private static final long JOIN_TIMEOUT_MILLIS = 5000;
+
+    @Value("${customized.credential.clientId}")
+    private String clientId;
+    @Value("${customized.credential.clientSecret}")
+    private String clientSecret;
+    @Value("${customized.credential.username}")
+    private String username;
+    @Value("${customized.credential.password}")
+    private String password;
+
+    @MockBean
+    private EmployeeService employeeService;
+    @Autowired
+    private EmployeeResponseCoalescer employeeResponseCoalescer;
+
+    @LocalServerPort
+    private int port;
+
+    private String accessToken;
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile boolean found = true;
+
+    @Before
+    public void setup() {
+        accessToken = given()
+                .auth()
+                .preemptive().basic(clientId, clientSecret)
+                .contentType("application/x-www-form-urlencoded")
+                .formParam("grant_type", "password")
+                .formParam("username", username)
+                .formParam("password", password)
+                .post(String.format(URL_AUTHORIZATION, port))
+                .then().statusCode(200)
+                .extract().jsonPath().get("access_token");
+
+        final long joins = employeeResponseCoalescer.joins();
+        doAnswer(invocation -> {
+            calls.incrementAndGet();
+            awaitJoins(joins);
+            if (!found) {
+                throw new ResourceNotFoundException("id: 1 is not found");
+            }
+            return employee(1L);
+        }).when(employeeService).getEmployee(anyLong());
+        doAnswer(invocation -> {
+            calls.incrementAndGet();
+            awaitJoins(joins);
+            return Arrays.asList(employee(1L), employee(2L));
+        }).when(employeeService).retrieveEmployees(any(), anyInt());
+    }
+
+    @Test
+    public void test_concurrentGetsOfEmployee_oneRead() throws Exception {
+        // act
+        final List<Response> actual = getConcurrently(URL_EMPLOYEE);
+
+        // assert
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(actual).extracting(Response::statusCode).containsOnly(200);
+        assertThat(actual).extracting(Response::asString).containsOnly(actual.get(0).asString());
+        assertThat(actual).extracting(response -> response.header("ETag")).containsOnly("\"0\"");
+    }
+
+    @Test
+    public void test_concurrentGetsOfPage_oneRead() throws Exception {
+        // act
+        final List<Response> actual = getConcurrently(URL_EMPLOYEES);
+
+        // assert
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(actual).extracting(Response::statusCode).containsOnly(200);
+        assertThat(actual).extracting(response -> response.jsonPath().getList("id", Long.class))
+                .containsOnly(Arrays.asList(1L, 2L));
+        assertThat(actual).extracting(response -> response.header(EmployeeController.HEADER_NEXT_CURSOR))
+                .containsOnly("2");
+    }
+
+    @Test
+    public void test_concurrentGetsOfMissingEmployee_oneReadWhileInFlight() throws Exception {
+        // arrange
+        found = false;
+
+        // act
+        final List<Response> actual = getConcurrently(URL_EMPLOYEE);
+
+        // assert
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(actual).extracting(Response::statusCode).containsOnly(404);
+
+        // the failure is not kept once the flight is over
+        found = true;
+        assertThat(get(URL_EMPLOYEE).statusCode()).isEqualTo(200);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    private void awaitJoins(long joins) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(JOIN_TIMEOUT_MILLIS);
+        while (employeeResponseCoalescer.joins() - joins < REQUESTS - 1 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private List<Response> getConcurrently(String url) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        try {
+            final List<Future<Response>> futures = new ArrayList<>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++) {
+                futures.add(executor.submit(() -> get(url)));
+            }
+            final List<Response> actual = new ArrayList<>(REQUESTS);
+            for (Future<Response> future : futures) {
+                actual.add(future.get());
+            }
+            return actual;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Response get(String url) {
+        return given()
+                .header("Authorization", "bearer " + accessToken)
+                .get(String.format(url, port));
+    }
+
+    private static Employee employee(Long id) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName("name");
+        employee.setDepartment("department");
+        employee.setSalary(1000);
+        employee.setVersion(0L);
+        return employee;
+    }
+}
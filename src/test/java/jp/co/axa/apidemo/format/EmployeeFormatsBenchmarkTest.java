@@ -0,0 +1,87 @@
+package jp.co.axa.apidemo.format;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * compare bytes on the wire of a list of employees in every format, and check their round trips
+ *
+ * encode / decode time depends on machine, it's measured by EmployeeFormatsBenchmark of the benchmarks module
+ */
+public class EmployeeFormatsBenchmarkTest {
+
+    private static final int ROWS = 10_000;
+    private static final JavaType EMPLOYEES = TypeFactory.defaultInstance()
+            .constructCollectionType(List.class, Employee.class);
+
+    private EmployeeFormats target;
+
+    @Before
+    public void setup() throws IOException {
+        target = new EmployeeFormats(new ObjectMapper(), Jackson2ObjectMapperBuilder.json());
+    }
+
+    @Test
+    public void test_write_comparedWithJson() throws IOException {
+        // arrange
+        final List<Employee> employees = createEmployees(ROWS);
+
+        // act
+        final Map<EmployeeFormat, byte[]> bodies = new EnumMap<>(EmployeeFormat.class);
+        for (EmployeeFormat format : EmployeeFormat.values()) {
+            final byte[] body = target.write(employees, format);
+            final List<Employee> decoded = read(body, format);
+            bodies.put(format, body);
+
+            // assert
+            assertThat(decoded).hasSize(ROWS);
+            for (int i = 0; i < ROWS; i += ROWS / 10) {
+                assertThat(decoded.get(i)).isEqualToComparingFieldByField(employees.get(i));
+            }
+        }
+
+        // assert
+        final int json = bodies.get(EmployeeFormat.JSON).length;
+        assertThat(bodies.get(EmployeeFormat.SMILE).length).isLessThan(json);
+        assertThat(bodies.get(EmployeeFormat.CBOR).length).isLessThan(json);
+        assertThat(bodies.get(EmployeeFormat.PROTOBUF).length)
+                .isLessThan(bodies.get(EmployeeFormat.SMILE).length)
+                .isLessThan(bodies.get(EmployeeFormat.CBOR).length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Employee> read(byte[] body, EmployeeFormat format) throws IOException {
+        if (format == EmployeeFormat.PROTOBUF) {
+            return (List<Employee>) target.readProtobuf(EMPLOYEES, new ByteArrayInputStream(body));
+        }
+        return target.mapper(format).readValue(body, EMPLOYEES);
+    }
+
+    private static List<Employee> createEmployees(int size) {
+        final List<Employee> employees = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Employee employee = new Employee();
+            employee.setId(100_000L + i);
+            employee.setName("name " + i);
+            employee.setDepartment("department " + i % 20);
+            employee.setSalary(1000 + i);
+            employee.setVersion((long) i % 5);
+            employees.add(employee);
+        }
+        return employees;
+    }
+}
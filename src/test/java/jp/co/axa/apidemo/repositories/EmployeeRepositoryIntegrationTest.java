@@ -2,15 +2,24 @@ package jp.co.axa.apidemo.repositories;
 
 
 import jp.co.axa.apidemo.entities.Employee;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -18,11 +27,19 @@ import static org.assertj.core.api.Assertions.assertThat;
  * Integration test for DB
  */
 @RunWith(SpringRunner.class)
-@SpringBootTest
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "jp.co.axa.apidemo.repositories.EmployeeRepositoryIntegrationTest$StatementRecorder"
+})
 public class EmployeeRepositoryIntegrationTest {
 
     @Autowired
     private EmployeeRepository target;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     @After
     public void teardown() {
@@ -108,6 +125,8 @@ public class EmployeeRepositoryIntegrationTest {
         final Employee updateEmployee = createEmployee("first name update", "first department update", 2000);
         final Employee savedEmployee = target.save(expectedEmployee);
         updateEmployee.setId(savedEmployee.getId());
+        // a detached employee without version would be taken as a new one
+        updateEmployee.setVersion(savedEmployee.getVersion());
 
         // act
         target.save(updateEmployee);
@@ -118,6 +137,234 @@ public class EmployeeRepositoryIntegrationTest {
         assertEmployeeIsExpected(actual.get(), updateEmployee);
     }
 
+    @Test
+    public void test_updateById() {
+        // arrange
+        final Employee savedEmployee = target.save(createEmployee("first name", "first department", 1000));
+
+        // act
+        final int updated = target.updateById(savedEmployee.getId(), null, "first name update", null, "first department");
+        final int stale = target.updateById(savedEmployee.getId(), 0L, "stale name", 3000, "stale department");
+        final int missing = target.updateById(savedEmployee.getId() + 1000, null, "missing name", 3000, "missing department");
+
+        // assert
+        assertThat(updated).isEqualTo(1);
+        assertThat(stale).isZero();
+        assertThat(missing).isZero();
+        final Employee actual = target.findById(savedEmployee.getId()).get();
+        assertThat(actual.getName()).isEqualTo("first name update");
+        assertThat(actual.getSalary()).isNull();
+        assertThat(actual.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    public void test_updatePartially_onlyGivenColumns() {
+        // arrange
+        final Employee savedEmployee = target.save(createEmployee("first name", "first department", 1000));
+        final Employee changes = new Employee();
+        changes.setId(savedEmployee.getId());
+        changes.setVersion(savedEmployee.getVersion());
+        changes.setSalary(2000);
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // act
+        final int updated = target.updatePartially(changes);
+        final int stale = target.updatePartially(changes);
+
+        // assert
+        assertThat(updated).isEqualTo(1);
+        assertThat(stale).isZero();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        final Employee actual = target.findById(savedEmployee.getId()).get();
+        assertThat(actual.getName()).isEqualTo("first name");
+        assertThat(actual.getDepartment()).isEqualTo("first department");
+        assertThat(actual.getSalary()).isEqualTo(2000);
+        assertThat(actual.getVersion()).isEqualTo(savedEmployee.getVersion() + 1);
+    }
+
+    @Test
+    public void test_findByIdGreaterThan_walkAllPages() {
+        // arrange
+        final List<Employee> expected = target.saveAll(createEmployees(25));
+
+        // act
+        final List<Employee> actual = new ArrayList<>();
+        Long cursor = 0L;
+        List<Employee> page;
+        do {
+            page = target.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, 10));
+            assertThat(page.size()).isLessThanOrEqualTo(10);
+            actual.addAll(page);
+            cursor = page.isEmpty() ? cursor : page.get(page.size() - 1).getId();
+        } while (page.size() == 10);
+
+        // assert
+        assertThat(actual.stream().map(Employee::getId).collect(Collectors.toList()))
+                .isSorted()
+                .containsExactlyElementsOf(expected.stream().map(Employee::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test_findByIdGreaterThan_loadedRowsDoNotGrowWithTable() {
+        // arrange
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        target.saveAll(createEmployees(100));
+
+        // act
+        statistics.clear();
+        target.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 10));
+        final long loadedFromSmallTable = statistics.getEntityLoadCount();
+
+        target.saveAll(createEmployees(5000));
+        statistics.clear();
+        target.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 10));
+        final long loadedFromLargeTable = statistics.getEntityLoadCount();
+
+        // assert
+        assertThat(loadedFromSmallTable).isEqualTo(10);
+        assertThat(loadedFromLargeTable).isEqualTo(loadedFromSmallTable);
+    }
+
+    @Test
+    public void test_findById_repeatedWithoutQuery() {
+        // arrange
+        final Employee savedEmployee = target.save(createEmployee("first name", "first department", 1000));
+        entityManagerFactory.getCache().evictAll();
+        target.findById(savedEmployee.getId());
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // act
+        final Employee actual = target.findById(savedEmployee.getId()).get();
+
+        // assert
+        assertEmployeeIsExpected(actual, savedEmployee);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_findById_afterUpdateById() {
+        // arrange
+        final Employee savedEmployee = target.save(createEmployee("first name", "first department", 1000));
+        target.findById(savedEmployee.getId());
+
+        // act
+        target.updateById(savedEmployee.getId(), savedEmployee.getVersion(), "second name", 2000, "second department");
+        final Employee actual = target.findById(savedEmployee.getId()).get();
+
+        // assert
+        assertThat(actual.getName()).isEqualTo("second name");
+        assertThat(actual.getVersion()).isEqualTo(savedEmployee.getVersion() + 1);
+    }
+
+    @Test
+    public void test_cacheableQueries_repeatedWithoutQuery() {
+        // arrange
+        target.saveAll(createEmployees(30));
+        final List<Long> expectedIds = target.findAllIds();
+        final List<Employee> expectedPage = target.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 10));
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // act
+        final List<Long> actualIds = target.findAllIds();
+        final List<Employee> actualPage = target.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 10));
+
+        // assert
+        assertThat(actualIds).isEqualTo(expectedIds);
+        assertThat(actualPage.stream().map(Employee::getId).collect(Collectors.toList()))
+                .isEqualTo(expectedPage.stream().map(Employee::getId).collect(Collectors.toList()));
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_findAllIds_afterSave() {
+        // arrange
+        target.saveAll(createEmployees(3));
+        target.findAllIds();
+
+        // act
+        final Employee savedEmployee = target.save(createEmployee("first name", "first department", 1000));
+        final List<Long> actual = target.findAllIds();
+
+        // assert
+        assertThat(actual).hasSize(4).contains(savedEmployee.getId());
+    }
+
+    @Test
+    public void test_departmentAndNameQueries() {
+        // arrange
+        target.saveAll(createEmployees(100));
+
+        // act
+        final List<Employee> firstPage = target.findByDepartmentAndIdGreaterThanOrderByIdAsc(
+                "department 3", 0L, PageRequest.of(0, 4));
+        final List<Employee> secondPage = target.findByDepartmentAndIdGreaterThanOrderByIdAsc(
+                "department 3", firstPage.get(3).getId(), PageRequest.of(0, 100));
+        final List<Employee> salaries = target.findByDepartmentAndSalaryBetweenOrderBySalaryAsc("department 3", 1020, 1060);
+        final List<Employee> names = target.findByNameStartingWithOrderByNameAsc("name 1", PageRequest.of(0, 100));
+
+        // assert
+        assertThat(firstPage).extracting(Employee::getName).containsExactly("name 3", "name 13", "name 23", "name 33");
+        assertThat(secondPage).hasSize(6);
+        assertThat(salaries).extracting(Employee::getSalary).containsExactly(1023, 1033, 1043, 1053);
+        assertThat(names).hasSize(11).allMatch(employee -> employee.getName().startsWith("name 1"));
+        assertThat(target.countByDepartment("department 3")).isEqualTo(10);
+    }
+
+    @Test
+    public void test_departmentAndNameQueries_useIndexes() {
+        // arrange
+        target.saveAll(createEmployees(100));
+
+        // act && assert
+        // statements generated by hibernate are explained, with the arguments they were run with
+        assertThat(explain(() -> target.findByDepartmentAndIdGreaterThanOrderByIdAsc("department 3", 0L, PageRequest.of(0, 4)),
+                "department 3", 0L, 4))
+                .contains("IDX_EMPLOYEE_DEPARTMENT: DEPARTMENT = ?1");
+        assertThat(explain(() -> target.findByDepartmentAndSalaryBetweenOrderBySalaryAsc("department 3", 1020, 1060),
+                "department 3", 1020, 1060))
+                .contains("IDX_EMPLOYEE_DEPARTMENT_SALARY: DEPARTMENT = ?1")
+                .contains("AND EMPLOYEE_SALARY >= ?2");
+        assertThat(explain(() -> target.findByNameStartingWithOrderByNameAsc("name 1", PageRequest.of(0, 100)),
+                "name 1%", "\\", 100))
+                .contains("IDX_EMPLOYEE_NAME: EMPLOYEE_NAME >= 'name 1'");
+        assertThat(explain(() -> target.countByDepartment("department 3"), "department 3"))
+                .contains("IDX_EMPLOYEE_DEPARTMENT: DEPARTMENT = ?1");
+    }
+
+    /**
+     * @param query {@link Runnable} running one SELECT through hibernate
+     * @param args {@link Object} arguments the SELECT was run with
+     * @return {@link String} plan of the SELECT
+     */
+    private String explain(Runnable query, Object... args) {
+        StatementRecorder.STATEMENTS.clear();
+        query.run();
+        final List<String> selects = StatementRecorder.STATEMENTS.stream()
+                .filter(sql -> sql.startsWith("select"))
+                .collect(Collectors.toList());
+        assertThat(selects).hasSize(1);
+        return jdbcTemplate.queryForObject("explain " + selects.get(0), String.class, args);
+    }
+
+    /**
+     * records SQL of every statement prepared by hibernate, see hibernate.session_factory.statement_inspector
+     */
+    public static class StatementRecorder implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
     private void assertEmployeeIsExpected(Employee actual, Employee expectedEmployee) {
         assertThat(actual.getName()).isEqualTo(expectedEmployee.getName());
         assertThat(actual.getDepartment()).isEqualTo(expectedEmployee.getDepartment());
@@ -132,4 +379,12 @@ public class EmployeeRepositoryIntegrationTest {
 
         return employee;
     }
+
+    private List<Employee> createEmployees(int count) {
+        final List<Employee> employees = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            employees.add(createEmployee("name " + i, "department " + i % 10, 1000 + i));
+        }
+        return employees;
+    }
 }
\ No newline at end of file
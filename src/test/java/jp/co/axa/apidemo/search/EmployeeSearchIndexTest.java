@@ -0,0 +1,152 @@
+package jp.co.axa.apidemo.search;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * test for queries and incremental maintenance of the search index
+ */
+public class EmployeeSearchIndexTest {
+
+    private EmployeeRepository repository;
+    private EmployeeSearchIndex target;
+
+    @Before
+    public void setup() {
+        repository = mock(EmployeeRepository.class);
+        target = new EmployeeSearchIndex(repository, mock(PlatformTransactionManager.class));
+        target.put(Arrays.asList(
+                createEmployee(1L, "Taro Yamada", "Sales", 1000),
+                createEmployee(2L, "Hanako Yamada", "Engineering", 2000),
+                createEmployee(3L, "Jiro Suzuki", "Sales", 3000),
+                createEmployee(4L, "Saburo Tanaka", "Sales Support", 4000)));
+    }
+
+    @Test
+    public void test_search_words() {
+        // act && assert
+        assertThat(search("yamada", null, null, null)).containsExactly(1L, 2L);
+        assertThat(search("YAMADA taro", null, null, null)).containsExactly(1L);
+        assertThat(search("sales", null, null, null)).containsExactly(1L, 3L, 4L);
+        assertThat(search("nobody", null, null, null)).isEmpty();
+    }
+
+    @Test
+    public void test_search_filters() {
+        // act && assert
+        assertThat(search(null, "Sales", null, null)).containsExactly(1L, 3L);
+        assertThat(search(null, null, 2000, 3000)).containsExactly(2L, 3L);
+        assertThat(search(null, null, 3000, null)).containsExactly(3L, 4L);
+        assertThat(search("sales", "Sales", null, 2000)).containsExactly(1L);
+        assertThat(search(null, null, null, null)).containsExactly(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    public void test_search_paged() {
+        // act
+        final List<Long> first = target.search(new EmployeeQuery("sales", null, null, null, null, 2));
+        final List<Long> second = target.search(new EmployeeQuery("sales", null, null, null, first.get(1), 2));
+
+        // assert
+        assertThat(first).containsExactly(1L, 3L);
+        assertThat(second).containsExactly(4L);
+    }
+
+    @Test
+    public void test_putPatchRemove() {
+        // arrange
+        final Employee changes = new Employee();
+        changes.setId(1L);
+        changes.setSalary(5000);
+
+        // act
+        target.put(Collections.singleton(createEmployee(2L, "Hanako Sato", "Engineering", 2000)));
+        target.patch(changes);
+        target.remove(3L);
+
+        // assert
+        assertThat(search("yamada", null, null, null)).containsExactly(1L);
+        assertThat(search("sato", null, null, null)).containsExactly(2L);
+        assertThat(search("taro", "Sales", 5000, 5000)).containsExactly(1L);
+        assertThat(search(null, null, 1000, 1000)).isEmpty();
+        assertThat(search("jiro", null, null, null)).isEmpty();
+    }
+
+    @Test
+    public void test_rebuild() {
+        // arrange
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(
+                createEmployee(5L, "Shiro Ito", "Sales", 1000)));
+
+        // act
+        target.rebuild();
+
+        // assert
+        assertThat(search(null, null, null, null)).containsExactly(5L);
+        assertThat(search("ito", "Sales", 1000, null)).containsExactly(5L);
+    }
+
+    @Test
+    public void test_search_millionEmployees() {
+        // arrange
+        final List<Employee> employees = new ArrayList<>();
+        for (long id = 1; id <= 1_000_000; id++) {
+            employees.add(createEmployee(id, "name " + id, "department " + id % 100, (int) (id % 100_000)));
+        }
+        target.put(employees);
+
+        // act && assert
+        // narrow range is walked by salary, wide one by department
+        assertPagesMatch(employees, 50_000, 50_100);
+        assertPagesMatch(employees, 10_000, 90_000);
+    }
+
+    /**
+     * walk a few pages and compare them with a scan of all employees
+     */
+    private void assertPagesMatch(List<Employee> employees, int minSalary, int maxSalary) {
+        final List<Long> expected = employees.stream()
+                .filter(employee -> "department 7".equals(employee.getDepartment())
+                        && employee.getSalary() >= minSalary && employee.getSalary() <= maxSalary)
+                .map(Employee::getId)
+                .limit(300)
+                .collect(Collectors.toList());
+        final List<Long> actual = new ArrayList<>();
+        Long after = null;
+        for (int page = 0; page < 3; page++) {
+            final List<Long> ids = target.search(
+                    new EmployeeQuery("department", "department 7", minSalary, maxSalary, after, 100));
+            actual.addAll(ids);
+            after = ids.isEmpty() ? after : ids.get(ids.size() - 1);
+        }
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    private List<Long> search(String q, String department, Integer minSalary, Integer maxSalary) {
+        return target.search(new EmployeeQuery(q, department, minSalary, maxSalary, null, 100));
+    }
+
+    private Employee createEmployee(Long id, String name, String department, Integer salary) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName(name);
+        employee.setDepartment(department);
+        employee.setSalary(salary);
+
+        return employee;
+    }
+}
@@ -0,0 +1,91 @@
+package jp.co.axa.apidemo.security;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * test for remembering tokens verified by a JWT token store
+ */
+public class CachingTokenStoreTest {
+
+    private JwtAccessTokenConverter converter;
+    private CachingTokenStore target;
+
+    @Before
+    public void setup() throws Exception {
+        converter = new JwtAccessTokenConverter();
+        converter.setSigningKey("key");
+        converter.afterPropertiesSet();
+        target = new CachingTokenStore(new JwtTokenStore(converter), Duration.ofHours(1), 100);
+    }
+
+    @Test
+    public void test_readAuthentication_verifiedOnce() {
+        // arrange
+        final String token = createToken(60_000).getValue();
+
+        // act
+        final OAuth2Authentication first = target.readAuthentication(target.readAccessToken(token));
+        final OAuth2Authentication second = target.readAuthentication(target.readAccessToken(token));
+
+        // assert
+        assertThat(first.getName()).isEqualTo("user");
+        assertThat(second.getName()).isEqualTo("user");
+        assertThat(second).isNotSameAs(first);
+        assertThat(target.getVerified().stats().missCount()).isEqualTo(1);
+        assertThat(target.getVerified().stats().hitCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_readAccessToken_tamperedNotRemembered() {
+        // arrange
+        final String token = createToken(60_000).getValue();
+        final String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        // act && assert
+        assertThatThrownBy(() -> target.readAccessToken(tampered)).isInstanceOf(InvalidTokenException.class);
+        assertThatThrownBy(() -> target.readAccessToken(tampered)).isInstanceOf(InvalidTokenException.class);
+        assertThat(target.getVerified().estimatedSize()).isZero();
+    }
+
+    @Test
+    public void test_readAccessToken_expiredNotRemembered() {
+        // arrange
+        final String token = createToken(-1_000).getValue();
+
+        // act
+        final OAuth2AccessToken actual = target.readAccessToken(token);
+
+        // assert
+        assertThat(actual.isExpired()).isTrue();
+        target.getVerified().cleanUp();
+        assertThat(target.getVerified().estimatedSize()).isZero();
+    }
+
+    private OAuth2AccessToken createToken(long validMillis) {
+        final DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + validMillis));
+        final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "client", null, true,
+                Collections.singleton("read"), null, null, null, null);
+        final UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken("user", null,
+                AuthorityUtils.commaSeparatedStringToAuthorityList("user"));
+        return converter.enhance(token, new OAuth2Authentication(request, user));
+    }
+}
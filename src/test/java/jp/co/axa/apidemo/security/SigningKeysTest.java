@@ -0,0 +1,116 @@
+package jp.co.axa.apidemo.security;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * test for signing tokens by rotated keys and verifying them until the retention of replaced keys
+ */
+public class SigningKeysTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    private SigningKeys signingKeys;
+    private JwtTokenStore tokenStore;
+    private RotatingJwtAccessTokenConverter converter;
+
+    @Before
+    public void setup() throws Exception {
+        signingKeys = new SigningKeys(1024, Duration.ZERO, Duration.ofSeconds(60), clock);
+        converter = new RotatingJwtAccessTokenConverter(signingKeys);
+        converter.afterPropertiesSet();
+        tokenStore = new JwtTokenStore(converter);
+    }
+
+    @After
+    public void teardown() {
+        signingKeys.destroy();
+    }
+
+    @Test
+    public void test_rotate_previousTokenValidUntilRetention() {
+        // arrange
+        final String token = createToken();
+        final String previousKid = signingKeys.current().getKid();
+
+        // act
+        signingKeys.rotate();
+
+        // assert
+        assertThat(signingKeys.current().getKid()).isNotEqualTo(previousKid);
+        assertThat(signingKeys.all()).hasSize(2);
+        assertThat(tokenStore.readAuthentication(token).getName()).isEqualTo("user");
+        assertThat(tokenStore.readAuthentication(createToken()).getName()).isEqualTo("user");
+
+        clock.now = clock.now.plusSeconds(60);
+        assertThat(signingKeys.all()).hasSize(1);
+        assertThatThrownBy(() -> tokenStore.readAuthentication(token)).isInstanceOf(InvalidTokenException.class);
+    }
+
+    @Test
+    public void test_readAuthentication_unknownKid() throws Exception {
+        // arrange
+        final SigningKeys others = new SigningKeys(1024, Duration.ZERO, Duration.ofSeconds(60), clock);
+        final RotatingJwtAccessTokenConverter otherConverter = new RotatingJwtAccessTokenConverter(others);
+        otherConverter.afterPropertiesSet();
+
+        final String token = createToken(otherConverter);
+
+        // act && assert
+        assertThatThrownBy(() -> tokenStore.readAuthentication(token)).isInstanceOf(InvalidTokenException.class);
+        others.destroy();
+    }
+
+    private String createToken() {
+        return createToken(converter);
+    }
+
+    private String createToken(RotatingJwtAccessTokenConverter converter) {
+        final DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 60_000));
+        final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "client", null, true,
+                Collections.singleton("read"), null, null, null, null);
+        final OAuth2Authentication authentication = new OAuth2Authentication(request,
+                new UsernamePasswordAuthenticationToken("user", null, Collections.emptyList()));
+        return converter.enhance(token, authentication).getValue();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.ResourceNotFoundException;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * compare single-row path and batch path of persisting employees against the embedded DB
+ *
+ * throughput is only logged since it depends on machine,
+ * number of prepared statements is asserted instead since it shows whether JDBC batching works
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class EmployeeServiceImplBatchBenchmarkTest {
+
+    private static final int ROWS = 2000;
+
+    @Autowired
+    private EmployeeServiceImpl target;
+    @Autowired
+    private EmployeeRepository repository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // warm up both paths
+        createEmployees(200).forEach(target::saveEmployee);
+        target.saveEmployees(createEmployees(200));
+        repository.deleteAllInBatch();
+    }
+
+    @After
+    public void teardown() {
+        repository.deleteAllInBatch();
+        Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+        Objects.requireNonNull(cacheManager.getCache(EmployeeIdIndex.CACHE_NAME)).clear();
+    }
+
+    @Test
+    public void test_saveEmployees_comparedWithSaveEmployee() {
+        // arrange
+        final List<Employee> singleRows = createEmployees(ROWS);
+        final List<Employee> batchRows = createEmployees(ROWS);
+
+        // act
+        statistics.clear();
+        long start = System.nanoTime();
+        singleRows.forEach(target::saveEmployee);
+        final long singleNanos = System.nanoTime() - start;
+        final long singleStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        start = System.nanoTime();
+        target.saveEmployees(batchRows);
+        final long batchNanos = System.nanoTime() - start;
+        final long batchStatements = statistics.getPrepareStatementCount();
+
+        log.info("single-row path: {} rows/sec, {} statements", ROWS * 1_000_000_000L / singleNanos, singleStatements);
+        log.info("batch path: {} rows/sec, {} statements", ROWS * 1_000_000_000L / batchNanos, batchStatements);
+
+        // assert
+        assertThat(repository.count()).isEqualTo(ROWS * 2);
+        assertThat(batchStatements).isLessThan(singleStatements / 10);
+    }
+
+    @Test
+    public void test_saveEmployees_update() {
+        // arrange
+        final List<Employee> saved = target.saveEmployees(createEmployees(3));
+        saved.forEach(employee -> employee.setSalary(employee.getSalary() + 1));
+        final Employee inserted = createEmployee("inserted name", "inserted department", 9000);
+        final List<Employee> employees = new ArrayList<>(saved);
+        employees.add(inserted);
+
+        // act
+        final List<Employee> actual = target.saveEmployees(employees);
+
+        // assert
+        assertThat(actual).hasSize(4);
+        assertThat(repository.count()).isEqualTo(4);
+        saved.forEach(employee -> assertThat(repository.findById(employee.getId()).get().getSalary())
+                .isEqualTo(employee.getSalary()));
+    }
+
+    @Test
+    public void test_saveEmployees_updateNotExisting() {
+        // arrange
+        final Employee existing = target.saveEmployee(createEmployee("first name", "first department", 1000));
+        final Employee notExisting = createEmployee("second name", "second department", 2000);
+        notExisting.setId(existing.getId() + 1000);
+
+        // act && assert
+        assertThatThrownBy(() -> target.saveEmployees(Arrays.asList(createEmployee("third name", "third department", 3000), notExisting)))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThat(repository.count()).isEqualTo(1);
+    }
+
+    private List<Employee> createEmployees(int count) {
+        final List<Employee> employees = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            employees.add(createEmployee("name " + i, "department " + i % 10, 1000 + i));
+        }
+        return employees;
+    }
+
+    private Employee createEmployee(String name, String department, Integer salary) {
+        final Employee employee = new Employee();
+        employee.setName(name);
+        employee.setDepartment(department);
+        employee.setSalary(salary);
+
+        return employee;
+    }
+}
@@ -1,8 +1,13 @@
 package jp.co.axa.apidemo.services;
 
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.PreconditionFailedException;
+import jp.co.axa.apidemo.exception.ResourceNotFoundException;
 import jp.co.axa.apidemo.repositories.EmployeeRepository;
 import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,9 +18,15 @@ import org.springframework.cache.CacheManager;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 /**
@@ -32,30 +43,90 @@ public class EmployeeServiceImplIntegrationTest {
     @Autowired
     private EmployeeServiceImpl target;
 
+    @Before
+    public void setup() {
+        // the search index reads all employees once the context is ready
+        clearInvocations(repository);
+    }
+
     @After
     public void teardown() {
         Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+        Objects.requireNonNull(cacheManager.getCache(EmployeeIdIndex.CACHE_NAME)).clear();
     }
 
     @Test
     public void test_retrieveEmployees() {
         // arrange
         final Employee employeeFirst = createEmployee("first name", "first department", 1000);
+        employeeFirst.setId(1L);
         final Employee employeeSecond = createEmployee("second name", "second department", 2000);
-        when(repository.findAll()).thenReturn(Arrays.asList(employeeFirst, employeeSecond));
+        employeeSecond.setId(2L);
+        when(repository.findAllIds()).thenReturn(Arrays.asList(1L, 2L));
+        when(repository.findAllById(Arrays.asList(1L, 2L))).thenReturn(Arrays.asList(employeeSecond, employeeFirst));
 
         // act
         target.retrieveEmployees();
-        target.retrieveEmployees();
+        final List<Employee> actual = target.retrieveEmployees();
 
         // assert
-        final Cache.ValueWrapper actual = getCache("all");
-        assertThat(actual).isNotNull();
-        assertThat(actual.get()).isInstanceOf(List.class);
-        assertEmployeeIsExpected((Employee) ((List) actual.get()).get(0), employeeFirst);
-        assertEmployeeIsExpected((Employee) ((List) actual.get()).get(1), employeeSecond);
+        assertThat(actual).hasSize(2);
+        assertEmployeeIsExpected(actual.get(0), employeeFirst);
+        assertEmployeeIsExpected(actual.get(1), employeeSecond);
+
+        assertThat(getCache("all")).isNull();
+        assertEmployeeIsExpected((Employee) getCache(1L).get(), employeeFirst);
+        assertEmployeeIsExpected((Employee) getCache(2L).get(), employeeSecond);
+
+        verify(repository, times(1)).findAllIds();
+        verify(repository, times(1)).findAllById(Arrays.asList(1L, 2L));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void test_retrieveEmployees_onlyLoadMissingOnes() {
+        // arrange
+        final Employee employeeFirst = createEmployee("first name", "first department", 1000);
+        employeeFirst.setId(1L);
+        final Employee employeeSecond = createEmployee("second name", "second department", 2000);
+        employeeSecond.setId(2L);
+        when(repository.findById(eq(1L))).thenReturn(Optional.of(employeeFirst));
+        when(repository.findAllIds()).thenReturn(Arrays.asList(1L, 2L));
+        when(repository.findAllById(Collections.singletonList(2L))).thenReturn(Collections.singletonList(employeeSecond));
+
+        // act
+        target.getEmployee(1L);
+        final List<Employee> actual = target.retrieveEmployees();
+
+        // assert
+        assertThat(actual).hasSize(2);
+        assertEmployeeIsExpected(actual.get(0), employeeFirst);
+        assertEmployeeIsExpected(actual.get(1), employeeSecond);
+
+        verify(repository, times(1)).findById(eq(1L));
+        verify(repository, times(1)).findAllIds();
+        verify(repository, times(1)).findAllById(Collections.singletonList(2L));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void test_exportEmployees() {
+        // arrange
+        final Employee employeeFirst = createEmployee("first name", "first department", 1000);
+        employeeFirst.setId(1L);
+        final Employee employeeSecond = createEmployee("second name", "second department", 2000);
+        employeeSecond.setId(2L);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(employeeFirst, employeeSecond));
+
+        // act
+        final List<Employee> actual = new ArrayList<>();
+        target.exportEmployees(actual::add);
+
+        // assert
+        assertThat(actual).containsExactly(employeeFirst, employeeSecond);
+        assertThat(getCache("all")).isNull();
 
-        verify(repository, times(1)).findAll();
+        verify(repository, times(1)).streamAllByOrderByIdAsc();
         verifyNoMoreInteractions(repository);
     }
 
@@ -80,26 +151,95 @@ public class EmployeeServiceImplIntegrationTest {
         verifyNoMoreInteractions(repository);
     }
 
+    @Test
+    public void test_getEmployee_concurrentMissesLoadOnce() throws Exception {
+        // arrange
+        final Employee employee = createEmployee("first name", "first department", 1000);
+        employee.setId(1L);
+        when(repository.findById(eq(employee.getId()))).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return Optional.of(employee);
+        });
+
+        final int threads = 16;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Employee>> futures = new ArrayList<>();
+
+        // act
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return target.getEmployee(employee.getId());
+            }));
+        }
+        start.countDown();
+
+        // assert
+        for (Future<Employee> future : futures) {
+            assertEmployeeIsExpected(future.get(5, TimeUnit.SECONDS), employee);
+        }
+        executor.shutdown();
+
+        verify(repository, times(1)).findById(eq(employee.getId()));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_getEmployee_refreshAhead() throws Exception {
+        // arrange
+        final Employee employee = createEmployee("first name", "first department", 1000);
+        employee.setId(1L);
+        final Employee refreshedEmployee = createEmployee("refreshed name", "refreshed department", 2000);
+        refreshedEmployee.setId(1L);
+        when(repository.findById(eq(employee.getId())))
+                .thenReturn(Optional.of(employee))
+                .thenReturn(Optional.of(refreshedEmployee));
+        target.getEmployee(employee.getId());
+
+        // act
+        final LoadingCache<Object, Object> nativeCache =
+                (LoadingCache<Object, Object>) cacheManager.getCache("employees").getNativeCache();
+        nativeCache.refresh(employee.getId());
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (getCache(employee.getId()).get() != refreshedEmployee && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // assert
+        assertEmployeeIsExpected(target.getEmployee(employee.getId()), refreshedEmployee);
+
+        verify(repository, times(2)).findById(eq(employee.getId()));
+        verifyNoMoreInteractions(repository);
+    }
+
     @Test
     public void test_saveEmployee() {
         // arrange
         final Employee employeeFirst = createEmployee("first name", "first department", 1000);
         final Employee employeeSecond = createEmployee("second name", "second department", 2000);
         final Employee employeeCache = createEmployee("cache name", "cache department", 3000);
+        employeeCache.setId(3L);
 
         final Employee savedEmployeeFirst = createEmployee("first name", "first department", 1000);
         savedEmployeeFirst.setId(1L);
+        savedEmployeeFirst.setVersion(0L);
         final Employee savedEmployeeSecond = createEmployee("second name", "second department", 2000);
         savedEmployeeSecond.setId(2L);
+        savedEmployeeSecond.setVersion(0L);
 
         when(repository.save(eq(employeeFirst))).thenReturn(savedEmployeeFirst);
         when(repository.save(employeeSecond)).thenReturn(savedEmployeeSecond);
-        when(repository.findAll()).thenReturn(Collections.singletonList(employeeCache));
+        when(repository.findAllIds()).thenReturn(Collections.singletonList(employeeCache.getId()));
+        when(repository.findAllById(Collections.singletonList(employeeCache.getId())))
+                .thenReturn(Collections.singletonList(employeeCache));
 
         // act
         target.retrieveEmployees();
         target.saveEmployee(employeeFirst);
         target.saveEmployee(employeeSecond);
+        final List<Employee> actualAll = target.retrieveEmployees();
 
 
         // assert
@@ -113,9 +253,13 @@ public class EmployeeServiceImplIntegrationTest {
         assertThat(actualSecond.get()).isInstanceOf(Employee.class);
         assertEmployeeIsExpected((Employee) actualSecond.get(), employeeSecond);
 
-        assertThat(getCache("all")).isNull();
+        assertThat(actualAll).hasSize(3);
+        assertEmployeeIsExpected(actualAll.get(0), employeeFirst);
+        assertEmployeeIsExpected(actualAll.get(1), employeeSecond);
+        assertEmployeeIsExpected(actualAll.get(2), employeeCache);
 
-        verify(repository, times(1)).findAll();
+        verify(repository, times(1)).findAllIds();
+        verify(repository, times(1)).findAllById(Collections.singletonList(employeeCache.getId()));
         verify(repository, times(1)).save(eq(employeeFirst));
         verify(repository, times(1)).save(eq(employeeSecond));
         verifyNoMoreInteractions(repository);
@@ -127,20 +271,26 @@ public class EmployeeServiceImplIntegrationTest {
         final Employee employeeFirst = createEmployee("first name", "first department", 1000);
         employeeFirst.setId(1L);
         final Employee employeeSecond = createEmployee("second name", "second department", 2000);
+        employeeSecond.setId(2L);
 
         when(repository.findById(eq(employeeFirst.getId()))).thenReturn(Optional.of(employeeFirst));
-        when(repository.findAll()).thenReturn(Collections.singletonList(employeeSecond));
+        when(repository.findAllIds()).thenReturn(Arrays.asList(employeeFirst.getId(), employeeSecond.getId()));
+        when(repository.findAllById(Collections.singletonList(employeeSecond.getId())))
+                .thenReturn(Collections.singletonList(employeeSecond));
 
         // act
-        target.retrieveEmployees();
         target.getEmployee(employeeFirst.getId());
+        target.retrieveEmployees();
         target.deleteEmployee(employeeFirst.getId());
+        final List<Employee> actualAll = target.retrieveEmployees();
 
         // assert
-        assertThat(getCache("all")).isNull();
         assertThat(getCache(employeeFirst.getId())).isNull();
+        assertThat(actualAll).hasSize(1);
+        assertEmployeeIsExpected(actualAll.get(0), employeeSecond);
 
-        verify(repository, times(1)).findAll();
+        verify(repository, times(1)).findAllIds();
+        verify(repository, times(1)).findAllById(Collections.singletonList(employeeSecond.getId()));
         verify(repository, times(1)).findById(employeeFirst.getId());
         verify(repository, times(1)).deleteById(employeeFirst.getId());
         verifyNoMoreInteractions(repository);
@@ -151,31 +301,67 @@ public class EmployeeServiceImplIntegrationTest {
         // arrange
         final Employee employee = createEmployee("first name", "first department", 1000);
         employee.setId(1L);
-        final Employee updatedEmployeeFirst = createEmployee("update first name", "update first department", 2000);
-        updatedEmployeeFirst.setId(1L);
-        final Employee updatedEmployeeSecond = createEmployee("update second name", "update second department", 3000);
-        updatedEmployeeSecond.setId(1L);
+        final Employee updatedEmployee = createEmployee("update name", "update department", 2000);
+        updatedEmployee.setId(1L);
 
         when(repository.findById(eq(employee.getId()))).thenReturn(Optional.of(employee));
-        when(repository.findAll()).thenReturn(Collections.singletonList(employee));
-        when(repository.save(any(Employee.class))).then(returnsFirstArg());
+        when(repository.findAllIds()).thenReturn(Collections.singletonList(employee.getId()));
+        when(repository.updateById(1L, null, "update name", 2000, "update department")).thenReturn(1);
+        when(repository.findAllById(Collections.singletonList(employee.getId())))
+                .thenReturn(Collections.singletonList(updatedEmployee));
 
         // act
-        target.retrieveEmployees();
         target.getEmployee(employee.getId());
-        target.updateEmployee(updatedEmployeeFirst);
-        target.updateEmployee(updatedEmployeeSecond);
+        target.retrieveEmployees();
+        target.updateEmployee(updatedEmployee);
+        final Cache.ValueWrapper actual = getCache(employee.getId());
+        final List<Employee> actualAll = target.retrieveEmployees();
 
         // assert
-        final Cache.ValueWrapper actual = getCache(employee.getId());
-        assertThat(actual).isNotNull();
-        assertThat(actual.get()).isInstanceOf(Employee.class);
-        assertEmployeeIsExpected((Employee) actual.get(), updatedEmployeeSecond);
+        assertThat(actual).isNull();
+        assertThat(actualAll).hasSize(1);
+        assertEmployeeIsExpected(actualAll.get(0), updatedEmployee);
+
+        verify(repository, times(1)).findById(eq(employee.getId()));
+        verify(repository, times(1)).findAllIds();
+        verify(repository, times(1)).updateById(1L, null, "update name", 2000, "update department");
+        verify(repository, times(1)).findAllById(Collections.singletonList(employee.getId()));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void test_updateEmployee_staleVersion() {
+        // arrange
+        final Employee updatedEmployee = createEmployee("update name", "update department", 2000);
+        updatedEmployee.setId(1L);
+        updatedEmployee.setVersion(1L);
+
+        when(repository.updateById(1L, 1L, "update name", 2000, "update department")).thenReturn(0);
+        when(repository.existsById(1L)).thenReturn(true);
+
+        // act && assert
+        assertThatThrownBy(() -> target.updateEmployee(updatedEmployee))
+                .isInstanceOf(PreconditionFailedException.class);
+
+        verify(repository, times(1)).updateById(1L, 1L, "update name", 2000, "update department");
+        verify(repository, times(1)).existsById(1L);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void test_patchEmployee_notFound() {
+        // arrange
+        final Employee changes = new Employee();
+        changes.setId(1L);
+        changes.setSalary(2000);
+
+        when(repository.updatePartially(changes)).thenReturn(0);
+
+        // act && assert
+        assertThatThrownBy(() -> target.patchEmployee(changes))
+                .isInstanceOf(ResourceNotFoundException.class);
 
-        verify(repository, times(3)).findById(eq(employee.getId()));
-        verify(repository, times(1)).findAll();
-        verify(repository, times(1)).save(eq(updatedEmployeeFirst));
-        verify(repository, times(1)).save(eq(updatedEmployeeSecond));
+        verify(repository, times(1)).updatePartially(changes);
         verifyNoMoreInteractions(repository);
     }
 
@@ -0,0 +1,181 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.ResourceNotFoundException;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * compare load-then-save update with single conditional UPDATE against the embedded DB
+ *
+ * latency is only logged since it depends on machine,
+ * number of prepared statements per update is asserted instead
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class EmployeeServiceImplUpdateBenchmarkTest {
+
+    private static final int ROWS = 100;
+    private static final int UPDATES = 2000;
+
+    @Autowired
+    private EmployeeServiceImpl target;
+    @Autowired
+    private EmployeeRepository repository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+    private List<Employee> employees;
+
+    @Before
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        final List<Employee> created = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            created.add(createEmployee("name " + i, "department " + i % 10, 1000 + i));
+        }
+        employees = target.saveEmployees(created);
+
+        // warm up both paths
+        measure(this::loadThenSave, UPDATES / 10);
+        measure(target::updateEmployee, UPDATES / 10);
+    }
+
+    @After
+    public void teardown() {
+        repository.deleteAllInBatch();
+        Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+        Objects.requireNonNull(cacheManager.getCache(EmployeeIdIndex.CACHE_NAME)).clear();
+    }
+
+    @Test
+    public void test_updateEmployee_comparedWithLoadThenSave() {
+        // act
+        statistics.clear();
+        final long[] loadThenSaveNanos = measure(this::loadThenSave, UPDATES);
+        final long loadThenSaveStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        final long[] updateNanos = measure(target::updateEmployee, UPDATES);
+        final long updateStatements = statistics.getPrepareStatementCount();
+
+        log.info("load-then-save: {} statements per update, p50 {} us, p99 {} us",
+                (double) loadThenSaveStatements / UPDATES, percentile(loadThenSaveNanos, 50), percentile(loadThenSaveNanos, 99));
+        log.info("conditional update: {} statements per update, p50 {} us, p99 {} us",
+                (double) updateStatements / UPDATES, percentile(updateNanos, 50), percentile(updateNanos, 99));
+
+        // assert
+        assertThat(updateStatements).isEqualTo(UPDATES);
+        // the SELECT of load-then-save is served by the second-level cache, the UPDATE is not,
+        // except the first SELECT of each employee, evicted by conditional updates of warm up
+        assertThat(loadThenSaveStatements).isEqualTo(UPDATES + ROWS);
+        final Employee last = repository.findById(employees.get((UPDATES - 1) % ROWS).getId()).get();
+        assertThat(last.getName()).isEqualTo("updated " + (UPDATES - 1));
+    }
+
+    @Test
+    public void test_updateEmployee_keepsOthersInSecondLevelCache() {
+        // arrange
+        // the first half is updated while the second half is read
+        final List<Employee> updated = employees.subList(0, ROWS / 2);
+        final List<Employee> read = employees.subList(ROWS / 2, ROWS);
+        read.forEach(employee -> repository.findById(employee.getId()));
+
+        // act
+        statistics.clear();
+        for (int i = 0; i < UPDATES; i++) {
+            final Employee source = updated.get(i % updated.size());
+            final Employee employee = createEmployee("updated " + i, source.getDepartment(), source.getSalary());
+            employee.setId(source.getId());
+            target.updateEmployee(employee);
+            target.patchEmployee(employee);
+            repository.findById(read.get(i % read.size()).getId());
+        }
+
+        // assert
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(UPDATES);
+        assertThat(statistics.getSecondLevelCacheMissCount()).isZero();
+    }
+
+    @Test
+    public void test_patchEmployee_notExisting() {
+        // arrange
+        final Employee changes = new Employee();
+        changes.setId(employees.get(ROWS - 1).getId() + 1000);
+        changes.setSalary(1);
+
+        // act && assert
+        assertThatThrownBy(() -> target.patchEmployee(changes)).isInstanceOf(ResourceNotFoundException.class);
+        assertThat(repository.findAllById(Arrays.asList(changes.getId()))).isEmpty();
+    }
+
+    /**
+     * the way updateEmployee used to work: check existence by loading the row, then save
+     */
+    private void loadThenSave(Employee employee) {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            final Employee existing = repository.findById(employee.getId()).orElseThrow(ResourceNotFoundException::new);
+            existing.setName(employee.getName());
+            existing.setSalary(employee.getSalary());
+            existing.setDepartment(employee.getDepartment());
+            return repository.save(existing);
+        });
+    }
+
+    private long[] measure(Consumer<Employee> update, int count) {
+        final long[] nanos = new long[count];
+        for (int i = 0; i < count; i++) {
+            final Employee source = employees.get(i % ROWS);
+            final Employee employee = createEmployee("updated " + i, source.getDepartment(), source.getSalary() + i);
+            employee.setId(source.getId());
+            final long start = System.nanoTime();
+            update.accept(employee);
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private long percentile(long[] nanos, int percentile) {
+        final long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1000;
+    }
+
+    private Employee createEmployee(String name, String department, Integer salary) {
+        final Employee employee = new Employee();
+        employee.setName(name);
+        employee.setDepartment(department);
+        employee.setSalary(salary);
+
+        return employee;
+    }
+}
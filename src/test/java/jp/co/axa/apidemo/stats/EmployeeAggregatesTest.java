@@ -0,0 +1,146 @@
+package jp.co.axa.apidemo.stats;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * test for incremental maintenance and recomputation of employee aggregates
+ */
+public class EmployeeAggregatesTest {
+
+    private EmployeeRepository repository;
+    private EmployeeAggregates target;
+
+    @Before
+    public void setup() {
+        repository = mock(EmployeeRepository.class);
+        target = new EmployeeAggregates(repository, mock(PlatformTransactionManager.class));
+        target.put(Arrays.asList(
+                createEmployee(1L, "Sales", 1000),
+                createEmployee(2L, "Sales", 3000),
+                createEmployee(3L, "Engineering", 2000),
+                createEmployee(4L, "Engineering", null),
+                createEmployee(5L, null, 4000)));
+    }
+
+    @Test
+    public void test_total() {
+        // act
+        final EmployeeStatistics actual = target.total();
+
+        // assert
+        assertThat(actual.getDepartment()).isNull();
+        assertThat(actual.getHeadcount()).isEqualTo(5);
+        assertThat(actual.getSalaryCount()).isEqualTo(4);
+        assertThat(actual.getSalarySum()).isEqualTo(10000);
+        assertThat(actual.getSalaryMin()).isEqualTo(1000);
+        assertThat(actual.getSalaryMax()).isEqualTo(4000);
+        assertThat(actual.getSalaryAverage()).isEqualTo(2500.0);
+        assertThat(actual.getSalaryPercentiles()).containsOnlyKeys("p50", "p90", "p95", "p99");
+        assertThat(actual.getSalaryPercentiles().get("p50")).isBetween(1980L, 2020L);
+    }
+
+    @Test
+    public void test_byDepartment() {
+        // act
+        final List<EmployeeStatistics> actual = target.byDepartment();
+
+        // assert
+        assertThat(actual).extracting(EmployeeStatistics::getDepartment).containsExactly(null, "Engineering", "Sales");
+        assertThat(actual).extracting(EmployeeStatistics::getHeadcount).containsExactly(1L, 2L, 2L);
+        assertThat(actual).extracting(EmployeeStatistics::getSalarySum).containsExactly(4000L, 2000L, 4000L);
+        assertThat(actual.get(2).getSalaryMin()).isEqualTo(1000);
+        assertThat(actual.get(2).getSalaryMax()).isEqualTo(3000);
+    }
+
+    @Test
+    public void test_putPatchRemove() {
+        // arrange
+        final Employee changes = new Employee();
+        changes.setId(3L);
+        changes.setDepartment("Sales");
+
+        // act
+        target.put(Collections.singleton(createEmployee(1L, "Sales", 5000)));
+        target.patch(changes);
+        target.remove(5L);
+        target.remove(4L);
+
+        // assert
+        final List<EmployeeStatistics> actual = target.byDepartment();
+        assertThat(actual).extracting(EmployeeStatistics::getDepartment).containsExactly("Sales");
+        assertThat(actual.get(0).getHeadcount()).isEqualTo(3);
+        assertThat(actual.get(0).getSalarySum()).isEqualTo(10000);
+        assertThat(actual.get(0).getSalaryMin()).isEqualTo(2000);
+        assertThat(actual.get(0).getSalaryMax()).isEqualTo(5000);
+        assertThat(target.total().getSalaryMax()).isEqualTo(5000);
+    }
+
+    @Test
+    public void test_recompute_reportsDrift() {
+        // arrange
+        when(repository.streamAllByOrderByIdAsc())
+                .thenReturn(Stream.of(
+                        createEmployee(1L, "Sales", 1000),
+                        createEmployee(2L, "Sales", 3000)))
+                .thenReturn(Stream.of(
+                        createEmployee(1L, "Sales", 1000),
+                        createEmployee(2L, "Sales", 3000)));
+
+        // act
+        final List<String> first = target.recompute();
+        final List<String> second = target.recompute();
+
+        // assert
+        assertThat(first).isEmpty();
+        assertThat(second).isEmpty();
+        assertThat(target.total().getHeadcount()).isEqualTo(2);
+
+        // arrange
+        target.put(Collections.singleton(createEmployee(3L, "Engineering", 2000)));
+        target.remove(1L);
+        when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(createEmployee(2L, "Sales", 3000)));
+
+        // act && assert
+        assertThat(target.recompute()).containsExactly("Engineering");
+        assertThat(target.total().getHeadcount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_empty() {
+        // arrange
+        target = new EmployeeAggregates(repository, mock(PlatformTransactionManager.class));
+
+        // act
+        final EmployeeStatistics actual = target.total();
+
+        // assert
+        assertThat(actual.getHeadcount()).isZero();
+        assertThat(actual.getSalarySum()).isNull();
+        assertThat(actual.getSalaryAverage()).isNull();
+        assertThat(actual.getSalaryPercentiles()).isNull();
+        assertThat(target.byDepartment()).isEmpty();
+    }
+
+    private Employee createEmployee(Long id, String department, Integer salary) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName("name " + id);
+        employee.setDepartment(department);
+        employee.setSalary(salary);
+
+        return employee;
+    }
+}
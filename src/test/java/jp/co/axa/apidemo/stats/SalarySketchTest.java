@@ -0,0 +1,60 @@
+package jp.co.axa.apidemo.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * test for accuracy, removal and merge of the salary sketch
+ */
+public class SalarySketchTest {
+
+    @Test
+    public void test_quantile_withinRelativeAccuracy() {
+        // arrange
+        final Random random = new Random(7);
+        final int[] values = new int[100_000];
+        final SalarySketch target = new SalarySketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + random.nextInt(1_000_000);
+            target.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        // act && assert
+        for (double quantile : new double[]{0, 0.5, 0.9, 0.99, 1}) {
+            final int expected = values[(int) (quantile * (values.length - 1))];
+            assertThat((double) target.quantile(quantile))
+                    .isCloseTo(expected, within(expected * SalarySketch.RELATIVE_ACCURACY));
+        }
+    }
+
+    @Test
+    public void test_remove_and_merge() {
+        // arrange
+        final SalarySketch first = new SalarySketch();
+        final SalarySketch second = new SalarySketch();
+        final SalarySketch all = new SalarySketch();
+        for (int value = -100; value <= 1000; value++) {
+            (value % 2 == 0 ? first : second).add(value);
+            all.add(value);
+        }
+        first.add(1_000_000);
+
+        // act
+        first.remove(1_000_000);
+        first.merge(second);
+
+        // assert
+        assertThat(first.getCount()).isEqualTo(all.getCount());
+        for (double quantile : new double[]{0, 0.1, 0.5, 0.9, 1}) {
+            assertThat(first.quantile(quantile)).isEqualTo(all.quantile(quantile));
+        }
+        assertThat(first.quantile(0)).isBetween(-101L, -99L);
+        assertThat(new SalarySketch().quantile(0.5)).isNull();
+    }
+}
@@ -0,0 +1,269 @@
+package jp.co.axa.apidemo.writebehind;
+
+import jp.co.axa.apidemo.cache.EmployeeIdIndex;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exception.PreconditionFailedException;
+import jp.co.axa.apidemo.exception.ResourceNotFoundException;
+import jp.co.axa.apidemo.exception.ServiceUnavailableException;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * writes are visible before they are in DB, survive a writer killed before they are written,
+ * and never hold back each other when some of them could not be applied
+ *
+ * pending writes of the writer of the context are only flushed by tests themselves,
+ * writers killed and restarted are created by tests on logs of their own
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "customized.writeBehind.enabled=true",
+        "customized.writeBehind.directory=target/write-behind/${random.uuid}",
+        "customized.writeBehind.flushMillis=" + EmployeeWriteBehindIntegrationTest.NEVER,
+        "customized.writeBehind.maxBatchSize=1000"
+})
+public class EmployeeWriteBehindIntegrationTest {
+
+    static final long NEVER = 3_600_000L;
+
+    private static final String LOG_NAME = "killed";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private EmployeeService employeeService;
+    @Autowired
+    private EmployeeWriteBehind employeeWriteBehind;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private CacheManager cacheManager;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @After
+    public void teardown() {
+        employeeWriteBehind.flush();
+        inTransaction(() -> {
+            jdbcTemplate.update("delete from EMPLOYEE");
+            jdbcTemplate.update("delete from WRITE_BEHIND_DEAD_LETTER");
+            return jdbcTemplate.update("delete from WRITE_BEHIND_CHECKPOINT");
+        });
+        entityManagerFactory.getCache().evictAll();
+        Objects.requireNonNull(cacheManager.getCache("employees")).clear();
+        Objects.requireNonNull(cacheManager.getCache(EmployeeIdIndex.CACHE_NAME)).clear();
+    }
+
+    @Test
+    public void test_pendingWrites_visibleBeforeFlush() {
+        // arrange
+        final Long id = employeeService.saveEmployee(employee(null, "name", null)).getId();
+
+        // act
+        employeeService.updateEmployee(employee(id, "updated name", 0L));
+
+        // assert
+        assertThat(employeeService.getEmployee(id).getName()).isEqualTo("updated name");
+        assertThat(employeeService.retrieveEmployees()).extracting(Employee::getId).containsExactly(id);
+        assertThat(stored()).isEmpty();
+        assertThatThrownBy(() -> employeeService.updateEmployee(employee(id, "stale name", 0L)))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> employeeService.updateEmployee(employee(id + 1, "missing name", null)))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        employeeWriteBehind.flush();
+        assertThat(stored()).containsOnly(entry(id, "updated name", 1L));
+        assertThat(employeeWriteBehind.pendingCount()).isZero();
+        assertThat(employeeService.getEmployee(id).getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    public void test_writerKilled_replayedOnStart() throws IOException {
+        // arrange
+        final Path directory = folder.getRoot().toPath();
+        final EmployeeWriteBehind killed = open(directory, 1000);
+        final Employee first = inTransaction(() -> killed.insert(employee(null, "first", null)));
+        final Employee second = inTransaction(() -> killed.insert(employee(null, "second", null)));
+        killed.update(employee(first.getId(), "first updated", 0L));
+        // killed while appending one more record
+        try (Stream<Path> segments = Files.list(directory)) {
+            final Path last = segments.sorted().reduce((a, b) -> b).orElseThrow(IllegalStateException::new);
+            Files.write(last, ByteBuffer.allocate(6).putInt(100).array(), StandardOpenOption.APPEND);
+        }
+        assertThat(stored()).isEmpty();
+
+        // act
+        final EmployeeWriteBehind restarted = open(directory, 1000);
+
+        // assert
+        final Map<Long, String> expected = Stream.of(
+                entry(first.getId(), "first updated", 1L),
+                entry(second.getId(), "second", 0L)
+        ).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        assertThat(stored()).isEqualTo(expected);
+        assertThat(restarted.pendingCount()).isZero();
+        try (Stream<Path> segments = Files.list(directory)) {
+            assertThat(segments).isEmpty();
+        }
+
+        restarted.destroy();
+        open(directory, 1000).destroy();
+        assertThat(stored()).isEqualTo(expected);
+    }
+
+    @Test
+    public void test_poisonWrite_deadLetteredWithoutHoldingBackOthers() throws IOException {
+        // arrange
+        final EmployeeWriteBehind writer = open(folder.getRoot().toPath(), 1000);
+        final Employee first = inTransaction(() -> writer.insert(employee(null, "first", null)));
+        final Employee second = inTransaction(() -> writer.insert(employee(null, "second", null)));
+        // a row taken by someone else makes the batch fail after some of its statements
+        inTransaction(() -> jdbcTemplate.update(
+                "insert into EMPLOYEE (ID, EMPLOYEE_NAME, VERSION) values (?, 'taken', 0)", second.getId()));
+
+        // act
+        writer.flush();
+
+        // assert
+        assertThat(stored()).containsOnly(entry(first.getId(), "first", 0L), entry(second.getId(), "taken", 0L));
+        assertThat(deadLetters()).containsExactly(second.getId());
+        assertThat(writer.pendingCount()).isZero();
+
+        final Employee third = inTransaction(() -> writer.insert(employee(null, "third", null)));
+        writer.flush();
+        assertThat(stored()).containsKey(third.getId());
+        writer.destroy();
+    }
+
+    @Test
+    public void test_changedByOthers_checkedOnAcknowledgeAndFlush() {
+        // arrange
+        final Long id = employeeService.saveEmployee(employee(null, "name", null)).getId();
+        employeeWriteBehind.flush();
+        assertThat(employeeService.getEmployee(id).getVersion()).isZero();
+        changeByOthers(id, 1L);
+
+        // act && assert
+        // the cached employee is stale, the version is checked against DB
+        assertThatThrownBy(() -> employeeService.updateEmployee(employee(id, "stale name", 0L)))
+                .isInstanceOf(PreconditionFailedException.class);
+
+        employeeService.updateEmployee(employee(id, "conditional name", 1L));
+        changeByOthers(id, 2L);
+        employeeWriteBehind.flush();
+        assertThat(stored()).containsOnly(entry(id, "theirs", 2L));
+        assertThat(deadLetters()).containsExactly(id);
+        assertThat(employeeService.getEmployee(id).getName()).isEqualTo("theirs");
+
+        employeeService.updateEmployee(employee(id, "unconditional name", null));
+        changeByOthers(id, 4L);
+        employeeWriteBehind.flush();
+        assertThat(stored()).containsOnly(entry(id, "unconditional name", 5L));
+        assertThat(deadLetters()).containsExactly(id);
+        assertThat(employeeService.getEmployee(id).getVersion()).isEqualTo(5L);
+    }
+
+    @Test
+    public void test_maxPending_refusesWritesOfOthers() throws IOException {
+        // arrange
+        final EmployeeWriteBehind writer = open(folder.getRoot().toPath(), 2);
+        final Employee first = inTransaction(() -> writer.insert(employee(null, "first", null)));
+        inTransaction(() -> writer.insert(employee(null, "second", null)));
+
+        // act && assert
+        assertThatThrownBy(() -> inTransaction(() -> writer.insert(employee(null, "third", null))))
+                .isInstanceOf(ServiceUnavailableException.class);
+        // refusing triggers a flush in background, pending writes could be stored any time from here
+        writer.update(employee(first.getId(), "first updated", 0L));
+
+        writer.flush();
+        inTransaction(() -> writer.insert(employee(null, "third", null)));
+        writer.destroy();
+        assertThat(stored()).hasSize(3);
+    }
+
+    private void changeByOthers(Long id, Long version) {
+        inTransaction(() -> jdbcTemplate.update(
+                "update EMPLOYEE set EMPLOYEE_NAME = 'theirs', VERSION = ? where ID = ?", version, id));
+    }
+
+    private List<Long> deadLetters() {
+        return jdbcTemplate.queryForList("select EMPLOYEE_ID from WRITE_BEHIND_DEAD_LETTER order by ID", Long.class);
+    }
+
+    private EmployeeWriteBehind open(Path directory, int maxPending) throws IOException {
+        return new EmployeeWriteBehind(new WriteAheadLog(directory), LOG_NAME,
+                dataSource, transactionManager, entityManagerFactory, NEVER, 1000, maxPending);
+    }
+
+    private Map<Long, String> stored() {
+        return jdbcTemplate.query("select ID, EMPLOYEE_NAME, VERSION from EMPLOYEE", resultSet -> {
+            final Map<Long, String> rows = new HashMap<>();
+            while (resultSet.next()) {
+                rows.put(resultSet.getLong(1), resultSet.getString(2) + "@" + resultSet.getLong(3));
+            }
+            return rows;
+        });
+    }
+
+    private <T> T inTransaction(Supplier<T> supplier) {
+        return transactionTemplate.execute(status -> supplier.get());
+    }
+
+    private static Map.Entry<Long, String> entry(Long id, String name, Long version) {
+        return new AbstractMap.SimpleEntry<>(id, name + "@" + version);
+    }
+
+    private static Employee employee(Long id, String name, Long version) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName(name);
+        employee.setDepartment("department");
+        employee.setSalary(1000);
+        employee.setVersion(version);
+        return employee;
+    }
+}
@@ -0,0 +1,116 @@
+package jp.co.axa.apidemo.writebehind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * test for write-ahead log in segment files
+ */
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WriteAheadLog target;
+
+    @Before
+    public void setup() throws IOException {
+        target = new WriteAheadLog(folder.getRoot().toPath());
+    }
+
+    @After
+    public void teardown() throws IOException {
+        target.close();
+    }
+
+    @Test
+    public void test_appendAndReplay() throws IOException {
+        // arrange
+        target.append(bytes("first"));
+        target.roll();
+        target.sync(target.append(bytes("second")));
+        target.close();
+
+        // act
+        target = new WriteAheadLog(folder.getRoot().toPath());
+        final List<String> actual = replay();
+
+        // assert
+        assertThat(actual).containsExactly("1:first", "2:second");
+        assertThat(target.append(bytes("third"))).isEqualTo(3L);
+    }
+
+    @Test
+    public void test_tornRecord_replayStops() throws IOException {
+        // arrange
+        target.append(bytes("first"));
+        target.append(bytes("second"));
+        target.close();
+        final Path segment = segments().get(0);
+        final byte[] bytes = Files.readAllBytes(segment);
+        // a byte of the second record flipped, and a third one torn after writing its length only
+        bytes[bytes.length - 4] ^= 1;
+        Files.write(segment, bytes);
+        Files.write(segment, ByteBuffer.allocate(Integer.BYTES).putInt(100).array(), StandardOpenOption.APPEND);
+
+        // act
+        target = new WriteAheadLog(folder.getRoot().toPath());
+        final List<String> actual = replay();
+
+        // assert
+        assertThat(actual).containsExactly("1:first");
+        assertThat(target.append(bytes("third"))).isEqualTo(2L);
+        assertThat(segments()).hasSize(2);
+    }
+
+    @Test
+    public void test_deleteAndSkip() throws IOException {
+        // arrange
+        target.append(bytes("first"));
+        final List<Path> applied = target.roll();
+        target.append(bytes("second"));
+        target.delete(applied);
+        target.close();
+
+        // act
+        target = new WriteAheadLog(folder.getRoot().toPath());
+        target.skipTo(10L);
+        final List<String> actual = replay();
+
+        // assert
+        assertThat(actual).containsExactly("2:second");
+        assertThat(target.append(bytes("third"))).isEqualTo(11L);
+    }
+
+    private List<String> replay() throws IOException {
+        final List<String> records = new ArrayList<>();
+        target.replay((payload, sequence) -> records.add(sequence + ":" + new String(payload, StandardCharsets.UTF_8)));
+        return records;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}